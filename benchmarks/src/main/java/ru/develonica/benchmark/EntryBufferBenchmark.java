@@ -0,0 +1,144 @@
+package ru.develonica.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.develonica.model.EntryBuffer;
+import ru.develonica.model.EntryStore;
+import ru.develonica.model.FileInfo;
+import ru.develonica.model.FileType;
+
+/**
+ * Добавление объектов потоками заполнения: пара добавления объекта
+ * и установки его размера, как в <code>Node.addEntry</code>
+ * и <code>Node.setEntrySize</code>. <code>EntryBuffer</code> сравнивается
+ * с одним <code>EntryStore</code> под блокировкой при 1, 8 и 32 потоках.
+ * Буфер заменяется новым после <code>LIMIT</code> объектов, чтобы память
+ * не росла за время измерения.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EntryBufferBenchmark {
+
+    /** Количество объектов, после которого буфер заменяется новым. */
+    private static final int LIMIT = 1 << 20;
+
+    /** Количество разных объектов, которые добавляются по кругу. */
+    private static final int SAMPLES = 1024;
+
+    /** Объекты для добавления. */
+    private final FileInfo[] samples = new FileInfo[SAMPLES];
+
+    /** Буфер без общей блокировки. */
+    private volatile EntryBuffer buffer;
+
+    /** Хранилище под блокировкой. */
+    private volatile EntryStore locked;
+
+    @Setup
+    public void createSamples() {
+        for (int i = 0; i < SAMPLES; i++) {
+            FileInfo fileInfo = new FileInfo();
+            fileInfo.setName("entry-" + i + ".txt");
+            fileInfo.setType(i % 8 == 0 ? FileType.DIR : FileType.TEXT);
+            fileInfo.setFileSize(i % 8 == 0 ? FileInfo.UNKNOWN_SIZE : i * 512L);
+            fileInfo.setLastModified(i);
+            fileInfo.setInode(i);
+            fileInfo.setAttribute(new Boolean[]{true, true, false});
+            samples[i] = fileInfo;
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void reset() {
+        buffer = new EntryBuffer();
+        locked = new EntryStore();
+    }
+
+    /**
+     * Номер следующего объекта каждого потока.
+     */
+    @State(Scope.Thread)
+    public static class Position {
+        private int next;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long buffer1(Position position) {
+        return appendToBuffer(position);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public long buffer8(Position position) {
+        return appendToBuffer(position);
+    }
+
+    @Benchmark
+    @Threads(32)
+    public long buffer32(Position position) {
+        return appendToBuffer(position);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public long locked1(Position position) {
+        return appendLocked(position);
+    }
+
+    @Benchmark
+    @Threads(8)
+    public long locked8(Position position) {
+        return appendLocked(position);
+    }
+
+    @Benchmark
+    @Threads(32)
+    public long locked32(Position position) {
+        return appendLocked(position);
+    }
+
+    private long appendToBuffer(Position position) {
+        EntryBuffer current = buffer;
+        FileInfo fileInfo = samples[position.next++ & SAMPLES - 1];
+
+        long reference = current.append(fileInfo);
+        current.setFileSize(reference, reference);
+        if (reference >= LIMIT) {
+            // потоки, которые еще пишут в прежний буфер, перейдут на новый со следующим объектом
+            buffer = new EntryBuffer();
+        }
+
+        return reference;
+    }
+
+    private long appendLocked(Position position) {
+        EntryStore current = locked;
+        FileInfo fileInfo = samples[position.next++ & SAMPLES - 1];
+
+        int index;
+        synchronized (current) {
+            index = current.append(fileInfo);
+        }
+        synchronized (current) {
+            current.setFileSize(index, index);
+        }
+        if (index >= LIMIT) {
+            locked = new EntryStore();
+        }
+
+        return index;
+    }
+}
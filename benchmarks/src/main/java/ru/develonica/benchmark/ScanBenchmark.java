@@ -0,0 +1,89 @@
+package ru.develonica.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.develonica.model.ExtensionClassifier;
+import ru.develonica.model.SizeCache;
+import ru.develonica.model.TypeClassifier;
+import ru.develonica.thread.SizeCalculator;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import static java.lang.Runtime.getRuntime;
+
+/**
+ * Обход синтетических деревьев: рекурсивный подсчет размера без кэша
+ * и с заполненным кэшем. Заполнение директории измеряет
+ * <code>ListingBenchmark</code>. Запуск с <code>-prof gc</code>
+ * показывает и скорость выделения памяти.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ScanBenchmark {
+
+    /** Форма дерева. */
+    @Param({"WIDE", "DEEP", "SMALL_FILES", "HUGE_FILES"})
+    private TreeShape shape;
+
+    /** Масштаб дерева. */
+    @Param({"10"})
+    private int scale;
+
+    /** Корень дерева. */
+    private Path root;
+
+    /** Кэш данных директорий, который очищается для подсчета без кэша. */
+    private SizeCache sizeCache;
+
+    /** Подсчет размера. */
+    private SizeCalculator sizeCalculator;
+
+    /** Определение типа файлов. */
+    private final TypeClassifier typeClassifier = new ExtensionClassifier();
+
+    @Setup(Level.Trial)
+    public void createTree() throws IOException {
+        int threads = getRuntime().availableProcessors();
+        root = shape.create(scale);
+        sizeCache = new SizeCache(64L * 1024 * 1024, null);
+        sizeCalculator = new SizeCalculator(threads, sizeCache, null, typeClassifier, null);
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteTree() throws IOException {
+        TreeShape.delete(root);
+    }
+
+    /**
+     * Подсчет размера дерева с чтением всех директорий.
+     */
+    @Benchmark
+    public long sizeCold() {
+        sizeCache.clear();
+
+        return sizeCalculator.calculate(root).getSize();
+    }
+
+    /**
+     * Подсчет размера дерева, все директории которого есть в кэше:
+     * читаются только аттрибуты директорий.
+     */
+    @Benchmark
+    public long sizeWarm() {
+        return sizeCalculator.calculate(root).getSize();
+    }
+}
@@ -0,0 +1,74 @@
+package ru.develonica.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.develonica.model.EntryStore;
+import ru.develonica.model.FileInfo;
+import ru.develonica.model.FileType;
+import ru.develonica.view.FileInfoView;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+
+/**
+ * Форматирование таблицы объектов директории. Вывод направляется
+ * в поток, который ничего не записывает, поэтому измеряется только
+ * построение строк таблицы.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TableBenchmark {
+
+    /** Количество строк таблицы. */
+    @Param({"100", "10000"})
+    private int rows;
+
+    /** Объекты директории. */
+    private EntryStore entries;
+
+    /** Таблица объектов. */
+    private FileInfoView fileInfoView;
+
+    /** Стандартный вывод, который восстанавливается после бенчмарка. */
+    private PrintStream stdout;
+
+    @Setup
+    public void createEntries() {
+        entries = new EntryStore();
+        for (int i = 0; i < rows; i++) {
+            FileInfo fileInfo = new FileInfo();
+            fileInfo.setName("file" + i + (i % 10 == 0 ? "" : ".txt"));
+            fileInfo.setType(i % 10 == 0 ? FileType.DIR : FileType.TEXT);
+            fileInfo.setFileSize(1L << (i % 40));
+            fileInfo.setAttribute(new Boolean[]{true, i % 2 == 0, i % 3 == 0});
+            entries.append(fileInfo);
+        }
+
+        // таблица запоминает поток вывода при создании
+        stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        fileInfoView = new FileInfoView();
+    }
+
+    @TearDown
+    public void restoreOutput() {
+        System.setOut(stdout);
+    }
+
+    @Benchmark
+    public void displayAllDocuments() {
+        fileInfoView.displayAllDocuments(entries);
+    }
+}
@@ -0,0 +1,60 @@
+package ru.develonica.benchmark;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.develonica.model.FileTree;
+
+import static java.io.File.separator;
+
+/**
+ * Переходы по файловому дереву без обращения к диску: спуск
+ * на заданную глубину с добавлением директорий и возврат наверх,
+ * а затем повторный спуск по уже добавленным директориям.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TreeBenchmark {
+
+    /** Глубина спуска. */
+    @Param({"10", "100"})
+    private int depth;
+
+    /** Пути директорий на каждом уровне. */
+    private String[] folders;
+
+    @Setup
+    public void createPaths() {
+        folders = new String[depth + 1];
+        StringBuilder path = new StringBuilder(separator + "benchmark");
+        for (int i = 0; i <= depth; i++) {
+            folders[i] = path.toString();
+            path.append(separator).append("level").append(i);
+        }
+    }
+
+    @Benchmark
+    public FileTree navigate() {
+        FileTree fileTree = new FileTree();
+        for (int pass = 0; pass < 2; pass++) {
+            for (String folder : folders) {
+                fileTree.addNode(folder, folder);
+            }
+            for (int i = 0; i < depth; i++) {
+                fileTree.getBack();
+            }
+        }
+
+        return fileTree;
+    }
+}
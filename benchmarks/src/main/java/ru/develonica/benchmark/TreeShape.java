@@ -0,0 +1,114 @@
+package ru.develonica.benchmark;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Форма синтетического дерева директорий для бенчмарков. Масштаб
+ * увеличивает количество объектов, а форма определяет, как они
+ * распределены по директориям. Большие файлы создаются разреженными,
+ * поэтому не занимают место на диске.
+ */
+public enum TreeShape {
+
+    /** Одна директория с множеством файлов и неглубоких поддиректорий. */
+    WIDE {
+        @Override
+        void fill(Path root, int scale) throws IOException {
+            files(root, 100 * scale, 1024);
+            for (int i = 0; i < 10 * scale; i++) {
+                files(Files.createDirectory(root.resolve("dir" + i)), 10, 1024);
+            }
+        }
+    },
+
+    /** Цепочка вложенных директорий с несколькими файлами в каждой. */
+    DEEP {
+        @Override
+        void fill(Path root, int scale) throws IOException {
+            Path folder = root;
+            for (int i = 0; i < 10 * scale; i++) {
+                files(folder, 5, 4096);
+                folder = Files.createDirectory(folder.resolve("level" + i));
+            }
+        }
+    },
+
+    /** Сто директорий с множеством маленьких файлов. */
+    SMALL_FILES {
+        @Override
+        void fill(Path root, int scale) throws IOException {
+            for (int i = 0; i < 10; i++) {
+                Path folder = Files.createDirectory(root.resolve("group" + i));
+                for (int j = 0; j < 10; j++) {
+                    files(Files.createDirectory(folder.resolve("dir" + j)), 10 * scale, 100);
+                }
+            }
+        }
+    },
+
+    /** Несколько очень больших файлов. */
+    HUGE_FILES {
+        @Override
+        void fill(Path root, int scale) throws IOException {
+            files(root, scale, 1L << 30);
+        }
+    };
+
+    /**
+     * Заполнение корня дерева объектами.
+     *
+     * @param root  пустая директория
+     * @param scale масштаб дерева
+     * @throws IOException если не удалось создать объект
+     */
+    abstract void fill(Path root, int scale) throws IOException;
+
+    /**
+     * Создание дерева во временной директории.
+     *
+     * @param scale масштаб дерева
+     * @return корень дерева
+     * @throws IOException если не удалось создать объект
+     */
+    public Path create(int scale) throws IOException {
+        Path root = Files.createTempDirectory("filemanager-" + name().toLowerCase());
+        fill(root, scale);
+
+        return root;
+    }
+
+    /**
+     * Удаление дерева со всем содержимым.
+     *
+     * @param root корень дерева
+     * @throws IOException если не удалось удалить объект
+     */
+    public static void delete(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    /**
+     * Создание файлов заданного размера.
+     *
+     * @param folder директория
+     * @param count  количество файлов
+     * @param size   размер каждого файла в байтах
+     * @throws IOException если не удалось создать файл
+     */
+    private static void files(Path folder, int count, long size) throws IOException {
+        for (int i = 0; i < count; i++) {
+            try (RandomAccessFile file = new RandomAccessFile(folder.resolve("file" + i + ".txt").toFile(), "rw")) {
+                file.setLength(size);
+            }
+        }
+    }
+}
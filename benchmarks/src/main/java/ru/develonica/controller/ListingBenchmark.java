@@ -0,0 +1,85 @@
+package ru.develonica.controller;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import ru.develonica.benchmark.TreeShape;
+import ru.develonica.model.FileTree;
+import ru.develonica.model.exception.IncorrectDirectoryException;
+import ru.develonica.model.exception.PermissionsException;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Заполнение директории тем же путем, что и при запуске программы:
+ * <code>MenuController.createRoot</code> передает объекты пулу потоков
+ * через <code>listAllFiles</code>, а они собираются в <code>EntryBuffer</code>.
+ * Бенчмарк лежит в пакете контроллера, чтобы создать контроллер
+ * конструктором без доступа к <code>System.in</code>. Снимок, кэш
+ * содержимого, отслеживание изменений и предварительное чтение
+ * отключены, чтобы каждый вызов читал директорию заново, а размеры
+ * поддиректорий после первого вызова берутся из кэша размеров.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {
+        "-Dfilemanager.snapshot=",
+        "-Dfilemanager.listingCache.maxBytes=0",
+        "-Dfilemanager.watch=false",
+        "-Dfilemanager.prefetch.directories=0"})
+public class ListingBenchmark {
+
+    /** Форма дерева. */
+    @Param({"WIDE", "DEEP", "SMALL_FILES", "HUGE_FILES"})
+    private TreeShape shape;
+
+    /** Масштаб дерева. */
+    @Param({"10"})
+    private int scale;
+
+    /** Корень дерева. */
+    private Path root;
+
+    /** Контроллер с пулом потоков заполнения. */
+    private MenuController menuController;
+
+    /** Файловое дерево последнего заполнения. */
+    private FileTree fileTree;
+
+    @Setup(Level.Trial)
+    public void createTree() throws IOException {
+        root = shape.create(scale);
+        menuController = new MenuController();
+        fileTree = new FileTree();
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteTree() throws IOException {
+        menuController.stopJobs(fileTree);
+        TreeShape.delete(root);
+    }
+
+    /**
+     * Заполнение корня дерева в новом файловом дереве.
+     */
+    @Benchmark
+    public int listing() throws PermissionsException, IncorrectDirectoryException {
+        fileTree = new FileTree();
+        menuController.createRoot(root.toString(), fileTree, root.toString());
+        fileTree.getScan().join();
+
+        return fileTree.getSize();
+    }
+}
@@ -2,19 +2,25 @@ package ru.develonica.controller;
 
 import ru.develonica.model.exception.IncorrectCommandException;
 import ru.develonica.model.exception.IncorrectDirectoryException;
+import ru.develonica.model.exception.ObjectExistsException;
 import ru.develonica.model.exception.PermissionsException;
 import ru.develonica.model.FileTree;
 import ru.develonica.model.UserCommand;
 import ru.develonica.view.FileManagerView;
 import ru.develonica.view.MenuView;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Scanner;
 
 import static java.lang.System.getProperty;
 import static java.lang.System.in;
+import static ru.develonica.model.Item.DUPES;
 import static ru.develonica.model.Item.EXIT;
+import static ru.develonica.model.Item.JOBS;
 import static ru.develonica.model.Item.LS;
 import static ru.develonica.model.Item.REFRESH;
+import static ru.develonica.model.Item.TOP;
 import static ru.develonica.model.Item.valueOf;
 
 /**
@@ -31,6 +37,12 @@ public class FileManagerController {
      */
     private static final String ROOT = getProperty("user.home");
 
+    /** Кавычка, в которую заключается путь с пробелами. */
+    private static final char QUOTE = '"';
+
+    /** Параметр полного обновления директории. */
+    private static final String FULL_REFRESH = "-f";
+
     /** Контроллер выполняющий пункты меню. */
     private final MenuController menuController;
 
@@ -71,13 +83,19 @@ public class FileManagerController {
                 executeCommand(userCommand, scanner);
             } catch (IncorrectCommandException
                      | PermissionsException
-                     | IncorrectDirectoryException e) {
+                     | IncorrectDirectoryException
+                     | ObjectExistsException e) {
                 fileManagerView.errorMessage(e.getMessage());
             }
 
             // отобразить меню с командами.
             menuView.showInfo(fileTree.getCurrentFolder());
         }
+
+        // остановить фоновые задачи и сохранить снимок,
+        // чтобы следующий запуск не читал директории заново
+        menuController.stopJobs(fileTree);
+        menuController.saveSnapshot(fileTree);
     }
 
     /**
@@ -104,15 +122,20 @@ public class FileManagerController {
      * @throws PermissionsException         если произошла ошибка ввода/вывода
      * @throws IncorrectDirectoryException  если пользователь ввел некорректную
      *                                      директорию
+     * @throws ObjectExistsException        если объект копии уже существует
      */
     private void executeCommand(UserCommand userCommand, Scanner scanner)
-            throws IncorrectCommandException, PermissionsException, IncorrectDirectoryException {
+            throws IncorrectCommandException, PermissionsException, IncorrectDirectoryException,
+            ObjectExistsException {
 
         String command = userCommand.getCommand();
         String parameter = userCommand.getParameter();
 
         if (!command.toUpperCase().equals(LS.name())
                 && !command.toUpperCase().equals(REFRESH.name())
+                && !command.toUpperCase().equals(JOBS.name())
+                && !command.toUpperCase().equals(DUPES.name())
+                && !command.toUpperCase().equals(TOP.name())
                 && (parameter == null || parameter.length() == 0)) {
             throw new IncorrectCommandException();
         }
@@ -124,28 +147,101 @@ public class FileManagerController {
                     break;
                 case TOUCH:
                     menuController.createFile(parameter, fileTree.getCurrentFolder());
+                    break;
                 case MKDIR:
                     menuController.createDirectory(parameter, fileTree.getCurrentFolder());
+                    break;
                 case RM:
                     fileManagerView.confirmDelete(parameter);
                     if (getConfirm(scanner)) {
                         menuController.deleteFile(parameter, fileTree.getCurrentFolder());
                     }
+                    break;
                 case RMDIR:
                     fileManagerView.confirmDelete(parameter);
                     if (getConfirm(scanner)) {
-                        menuController.deleteDirectory(parameter, fileTree.getCurrentFolder());
+                        menuController.deleteDirectory(parameter, fileTree);
                     }
+                    break;
+                case CP:
+                    String[] copyPaths = splitPaths(parameter);
+                    menuController.copy(copyPaths[0], copyPaths[1], fileTree);
+                    break;
+                case MV:
+                    String[] movePaths = splitPaths(parameter);
+                    menuController.move(movePaths[0], movePaths[1], fileTree);
+                    break;
+                case FIND:
+                    menuController.find(parameter, fileTree);
+                    break;
+                case DUPES:
+                    menuController.findDuplicates(parameter, fileTree);
+                    break;
+                case TOP:
+                    menuController.top(parameter, fileTree);
+                    break;
                 case CD:
                     menuController.changeDirectory(parameter, fileTree);
+                    break;
                 case REFRESH:
-                    menuController.refreshData(fileTree);
+                    if (parameter != null && !parameter.equals(FULL_REFRESH)) {
+                        throw new IncorrectCommandException();
+                    }
+                    menuController.refreshData(fileTree, FULL_REFRESH.equals(parameter));
+                    break;
+                case JOBS:
+                    menuController.showJobs();
+                    break;
+                case CANCEL:
+                    menuController.cancelJob(parameter);
+                    break;
             }
         } catch (IllegalArgumentException e) {
             throw new IncorrectCommandException();
         }
     }
 
+    /**
+     * Разбор исходного и целевого пути команд копирования/перемещения.
+     * Пути разделяются любым количеством пробелов, а путь с пробелами
+     * заключается в двойные кавычки: <code>cp "my file.txt" dir/</code>.
+     *
+     * @param parameter параметр команды
+     * @return исходный и целевой путь
+     * @throws IncorrectCommandException если путей не два или кавычка не закрыта
+     */
+    private String[] splitPaths(String parameter) throws IncorrectCommandException {
+        List<String> paths = new ArrayList<>(2);
+        StringBuilder path = new StringBuilder();
+        boolean inPath = false;
+        boolean quoted = false;
+        for (int i = 0; i < parameter.length(); i++) {
+            char c = parameter.charAt(i);
+            if (c == QUOTE) {
+                // пустые кавычки тоже задают путь
+                quoted = !quoted;
+                inPath = true;
+            } else if (!quoted && Character.isWhitespace(c)) {
+                if (inPath) {
+                    paths.add(path.toString());
+                    path.setLength(0);
+                    inPath = false;
+                }
+            } else {
+                path.append(c);
+                inPath = true;
+            }
+        }
+        if (inPath) {
+            paths.add(path.toString());
+        }
+        if (quoted || paths.size() != 2) {
+            throw new IncorrectCommandException();
+        }
+
+        return paths.toArray(new String[0]);
+    }
+
     /**
      * Запрос подтверждения удаления файла или папки.
      *
@@ -1,34 +1,99 @@
 package ru.develonica.controller;
 
+import ru.develonica.model.exception.IncorrectCommandException;
 import ru.develonica.model.exception.IncorrectDirectoryException;
+import ru.develonica.model.exception.ObjectExistsException;
 import ru.develonica.model.exception.PermissionsException;
+import ru.develonica.model.CancellationToken;
+import ru.develonica.model.ChangeReport;
+import ru.develonica.model.DirectorySize;
+import ru.develonica.model.DuplicateGroup;
+import ru.develonica.model.EntryAttributes;
+import ru.develonica.model.EntryStore;
+import ru.develonica.model.ExtensionClassifier;
 import ru.develonica.model.FileInfo;
 import ru.develonica.model.FileTree;
 import ru.develonica.model.FileType;
+import ru.develonica.model.FindQuery;
+import ru.develonica.model.FindResults;
+import ru.develonica.model.ListingCache;
+import ru.develonica.model.MagicClassifier;
+import ru.develonica.model.Node;
+import ru.develonica.model.ScanChannel;
+import ru.develonica.model.SizeCache;
+import ru.develonica.model.TopEntries;
+import ru.develonica.model.TreeSnapshot;
+import ru.develonica.model.TypeClassifier;
 import ru.develonica.thread.CustomThreadPool;
+import ru.develonica.thread.DirectoryDeleter;
+import ru.develonica.thread.DirectoryWatcher;
+import ru.develonica.thread.DuplicateFinder;
+import ru.develonica.thread.FileSearcher;
+import ru.develonica.thread.Job;
+import ru.develonica.thread.JobManager;
+import ru.develonica.thread.Prefetcher;
+import ru.develonica.thread.Progress;
+import ru.develonica.thread.ScanExecutor;
+import ru.develonica.thread.IoPermits;
+import ru.develonica.thread.ScannerBackend;
+import ru.develonica.thread.SizeCalculator;
+import ru.develonica.thread.TreeCopier;
+import ru.develonica.thread.TimedAttributeReader;
+import ru.develonica.thread.TopCollector;
+import ru.develonica.thread.VirtualThreadExecutor;
+import ru.develonica.view.DupesView;
 import ru.develonica.view.FileChangeView;
 import ru.develonica.view.FileInfoView;
+import ru.develonica.view.FindView;
+import ru.develonica.view.JobView;
+import ru.develonica.view.TopView;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
-import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.WatchEvent;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.io.File.separator;
+import static java.lang.Boolean.getBoolean;
+import static java.lang.Boolean.parseBoolean;
+import static java.lang.Integer.getInteger;
+import static java.lang.Long.getLong;
+import static java.lang.System.err;
+import static java.lang.System.getProperty;
 import static java.lang.Runtime.getRuntime;
-import static java.lang.Thread.sleep;
-import static java.nio.file.Files.isExecutable;
-import static java.nio.file.Files.isReadable;
-import static java.nio.file.Files.isWritable;
+import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
 import static java.nio.file.Path.of;
-import static java.util.Arrays.stream;
-import static java.util.Comparator.reverseOrder;
-import static java.util.Objects.requireNonNull;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static ru.develonica.model.EntryAttributes.SEPARATE_SYSCALLS;
+import static ru.develonica.model.EntryStore.attributeBits;
+import static ru.develonica.model.FileInfo.UNKNOWN_SIZE;
 import static ru.develonica.model.FileType.DIR;
-import static ru.develonica.model.FileType.OTHER_FILE;
+import static ru.develonica.thread.ScannerBackend.POOL;
+import static ru.develonica.thread.ScannerBackend.VIRTUAL;
+import static ru.develonica.thread.VirtualThreadExecutor.newVirtualExecutor;
 
 /**
  * Контроллер выполняющий команды пользователя.
@@ -41,39 +106,304 @@ public class MenuController {
     /** Размер пула потоков. */
     private static final int POOL_SIZE = getRuntime().availableProcessors() * CORES_MULTIPLICATOR;
 
+    /**
+     * Лимит памяти кэша размеров директорий в байтах,
+     * задается свойством <code>filemanager.sizeCache.maxBytes</code>.
+     */
+    private static final long SIZE_CACHE_MAX_BYTES = getLong("filemanager.sizeCache.maxBytes", 64L * 1024 * 1024);
+
+    /**
+     * Лимит памяти кэша содержимого директорий, прочитанных при подсчете
+     * размера, в байтах, задается свойством <code>filemanager.listingCache.maxBytes</code>,
+     * 0 отключает сохранение содержимого.
+     */
+    private static final long LISTING_CACHE_MAX_BYTES = getLong("filemanager.listingCache.maxBytes", 32L * 1024 * 1024);
+
+    /**
+     * Количество потоков рекурсивного удаления директорий,
+     * задается свойством <code>filemanager.delete.threads</code>.
+     */
+    private static final int DELETE_THREADS = getInteger("filemanager.delete.threads", POOL_SIZE);
+
+    /**
+     * Количество потоков копирования, задается
+     * свойством <code>filemanager.copy.threads</code>.
+     */
+    private static final int COPY_THREADS = getInteger("filemanager.copy.threads", POOL_SIZE);
+
+    /**
+     * Размер одной передачи данных при копировании файла в байтах, задается
+     * свойством <code>filemanager.copy.chunkBytes</code>. Файлы больше этого
+     * размера копируются отдельными задачами.
+     */
+    private static final long COPY_CHUNK_BYTES = getLong("filemanager.copy.chunkBytes", 8L * 1024 * 1024);
+
+    /**
+     * Количество потоков поиска, задается
+     * свойством <code>filemanager.find.threads</code>.
+     */
+    private static final int FIND_THREADS = getInteger("filemanager.find.threads", POOL_SIZE);
+
+    /**
+     * Максимальное количество результатов поиска, если оно не задано
+     * в команде, задается свойством <code>filemanager.find.limit</code>.
+     */
+    private static final int FIND_LIMIT = getInteger("filemanager.find.limit", 1000);
+
+    /**
+     * Количество файлов, которые одновременно читаются при поиске
+     * дубликатов, задается свойством <code>filemanager.dupes.io</code>.
+     */
+    private static final int DUPES_IO = getInteger("filemanager.dupes.io", 4);
+
+    /**
+     * Минимальный размер файла, который проверяется при поиске дубликатов,
+     * если он не задан в команде, задается свойством <code>filemanager.dupes.minSize</code>.
+     */
+    private static final long DUPES_MIN_SIZE = getLong("filemanager.dupes.minSize", 1L);
+
+    /**
+     * Количество потоков поиска самых больших объектов, задается
+     * свойством <code>filemanager.top.threads</code>.
+     */
+    private static final int TOP_THREADS = getInteger("filemanager.top.threads", POOL_SIZE);
+
+    /**
+     * Количество самых больших файлов и директорий, если оно не задано
+     * в команде, задается свойством <code>filemanager.top.count</code>.
+     */
+    private static final int TOP_COUNT = getInteger("filemanager.top.count", 10);
+
+    /** Сообщение о том, что способ обхода неизвестен и используется пул. */
+    private static final String UNKNOWN_BACKEND =
+            "Неизвестный способ обхода директорий '%s', обход директорий выполняется пулом потоков";
+
+    /**
+     * Способ обхода директорий, задается свойством
+     * <code>filemanager.scanner</code>: <code>pool</code> или <code>virtual</code>.
+     * Если JVM не поддерживает виртуальные потоки или способ неизвестен,
+     * используется пул.
+     */
+    private static final ScannerBackend SCANNER_BACKEND =
+            scannerBackend(getProperty("filemanager.scanner", "pool"));
+
+    /** Сообщение о том, что вместо виртуальных потоков используется пул. */
+    private static final String VIRTUAL_UNSUPPORTED =
+            "JVM не поддерживает виртуальные потоки, обход директорий выполняется пулом потоков";
+
+    /**
+     * Ограничение одновременных обращений к файловой системе виртуальными
+     * потоками, задается свойством <code>filemanager.scanner.maxIo</code>.
+     */
+    private static final int MAX_CONCURRENT_IO = getInteger("filemanager.scanner.maxIo", 256);
+
+    /**
+     * Определение типа файлов с неизвестным расширением по первым байтам,
+     * включается свойством <code>filemanager.classifier.sniff</code>.
+     */
+    private static final boolean SNIFF_FILE_TYPES = getBoolean("filemanager.classifier.sniff");
+
+    /**
+     * Отслеживание изменений в посещенных директориях, отключается
+     * свойством <code>filemanager.watch=false</code>.
+     */
+    private static final boolean WATCH_DIRECTORIES = parseBoolean(getProperty("filemanager.watch", "true"));
+
+    /**
+     * Количество самых больших поддиректорий, которые читаются в фоне после
+     * заполнения директории, задается свойством <code>filemanager.prefetch.directories</code>,
+     * 0 отключает предварительное чтение.
+     */
+    private static final int PREFETCH_DIRECTORIES = getInteger("filemanager.prefetch.directories", 4);
+
+    /**
+     * Максимальное количество объектов, которые читаются в фоне после заполнения
+     * одной директории, задается свойством <code>filemanager.prefetch.maxEntries</code>.
+     */
+    private static final int PREFETCH_MAX_ENTRIES = getInteger("filemanager.prefetch.maxEntries", 20_000);
+
+    /**
+     * Количество потоков предварительного чтения, задается свойством
+     * <code>filemanager.prefetch.threads</code>.
+     */
+    private static final int PREFETCH_THREADS = getInteger("filemanager.prefetch.threads", 1);
+
+    /**
+     * Файл снимка файлового дерева, задается свойством <code>filemanager.snapshot</code>,
+     * пустое значение отключает снимок.
+     */
+    private static final String SNAPSHOT_FILE = getProperty("filemanager.snapshot",
+            getProperty("user.home") + separator + ".filemanager" + separator + "snapshot");
+
+    /**
+     * Период записи снимка в секундах, задается свойством
+     * <code>filemanager.snapshot.interval</code>, 0 оставляет только запись при выходе.
+     */
+    private static final long SNAPSHOT_INTERVAL = getLong("filemanager.snapshot.interval", 300L);
+
+    /** Имя фонового потока записи снимка. */
+    private static final String SNAPSHOT_THREAD_NAME = "snapshot-writer";
+
+    /**
+     * Срок заполнения одной директории в секундах, задается свойством
+     * <code>filemanager.scan.timeout</code>, 0 снимает ограничение. Поддиректории,
+     * размер которых не посчитан в срок, остаются с неизвестным размером.
+     */
+    private static final long SCAN_TIMEOUT = getLong("filemanager.scan.timeout", 300L);
+
+    /**
+     * Максимальное время чтения аттрибутов одного объекта на сетевой файловой
+     * системе в миллисекундах, задается свойством <code>filemanager.scan.statTimeout</code>,
+     * 0 отключает ограничение.
+     */
+    private static final long STAT_TIMEOUT = getLong("filemanager.scan.statTimeout", 2000L);
+
+    /** Время ожидания завершения задач заполнения при выходе в секундах. */
+    private static final long SHUTDOWN_TIMEOUT = 5L;
+
     /** Отображение таблицы со списком файлов и директорий. */
     private final FileInfoView fileInfoView;
 
     /** Отображение результатов изменений с файлами и папками.*/
     private final FileChangeView fileChangeView;
 
+    /** Отображение фоновых задач. */
+    private final JobView jobView;
+
+    /** Выполнение долгих команд в фоне. */
+    private final JobManager jobManager;
+
+    /** Подсчет размера директорий. */
+    private final SizeCalculator sizeCalculator;
+
+    /** Исполнитель задач обработки объектов директории. */
+    private final ScanExecutor scanExecutor;
+
+    /** Определение типа файлов. */
+    private final TypeClassifier typeClassifier;
+
+    /** Кэш размеров поддеревьев. */
+    private final SizeCache sizeCache;
+
+    /** Кэш содержимого директорий или <code>null</code>, если он отключен. */
+    private final ListingCache listingCache;
+
+    /** Отслеживание изменений в посещенных директориях. */
+    private DirectoryWatcher directoryWatcher;
+
+    /** Предварительное чтение поддиректорий или <code>null</code>, если оно отключено. */
+    private final Prefetcher prefetcher;
+
+    /** Файл снимка или <code>null</code>, если снимок отключен. */
+    private final Path snapshotFile;
+
+    /** Снимок прошлого запуска или <code>null</code>, если его нет. */
+    private final TreeSnapshot snapshot;
+
+    /** Периодическая запись снимка. */
+    private ScheduledExecutorService snapshotWriter;
+
+    /** Рекурсивное удаление директорий. */
+    private final DirectoryDeleter directoryDeleter;
+
+    /** Копирование файлов и директорий. */
+    private final TreeCopier treeCopier;
+
+    /** Поиск в поддеревьях, которых нет в файловом дереве. */
+    private final FileSearcher fileSearcher;
+
+    /** Отображение результатов поиска. */
+    private final FindView findView;
+
+    /** Поиск файлов с одинаковым содержимым. */
+    private final DuplicateFinder duplicateFinder;
+
+    /** Отображение файлов с одинаковым содержимым. */
+    private final DupesView dupesView;
+
+    /** Поиск самых больших объектов в поддеревьях, которых нет в файловом дереве. */
+    private final TopCollector topCollector;
+
+    /** Отображение самых больших объектов. */
+    private final TopView topView;
+
+    /**
+     * Чтение аттрибутов с ограничением времени или <code>null</code>,
+     * если ограничение отключено.
+     */
+    private final TimedAttributeReader timedReader;
+
     MenuController() {
         this.fileInfoView = new FileInfoView();
         this.fileChangeView = new FileChangeView();
+        this.jobView = new JobView();
+        this.findView = new FindView();
+        this.dupesView = new DupesView();
+        this.topView = new TopView();
+        this.jobManager = new JobManager();
+        this.directoryDeleter = new DirectoryDeleter(DELETE_THREADS);
+        this.treeCopier = new TreeCopier(COPY_THREADS, COPY_CHUNK_BYTES);
+        this.duplicateFinder = new DuplicateFinder(DUPES_IO);
+        this.timedReader = STAT_TIMEOUT > 0
+                ? new TimedAttributeReader(STAT_TIMEOUT)
+                : null;
+        this.typeClassifier = SNIFF_FILE_TYPES
+                ? new MagicClassifier(new ExtensionClassifier())
+                : new ExtensionClassifier();
+
+        this.snapshotFile = SNAPSHOT_FILE.isEmpty() ? null : of(SNAPSHOT_FILE);
+        this.snapshot = snapshotFile == null ? null : TreeSnapshot.open(snapshotFile);
+        this.sizeCache = new SizeCache(SIZE_CACHE_MAX_BYTES, snapshot);
+        this.listingCache = LISTING_CACHE_MAX_BYTES > 0
+                ? new ListingCache(LISTING_CACHE_MAX_BYTES)
+                : null;
+        this.prefetcher = PREFETCH_DIRECTORIES > 0
+                ? new Prefetcher(PREFETCH_THREADS)
+                : null;
+        ExecutorService virtualExecutor = SCANNER_BACKEND == VIRTUAL ? newVirtualExecutor() : null;
+        if (SCANNER_BACKEND == VIRTUAL && virtualExecutor == null) {
+            err.println(VIRTUAL_UNSUPPORTED);
+        }
+        if (virtualExecutor != null) {
+            // обход и подсчет размеров вместе не превышают ограничение обращений
+            IoPermits ioPermits = new IoPermits(MAX_CONCURRENT_IO);
+            this.scanExecutor = new VirtualThreadExecutor(virtualExecutor, ioPermits);
+            this.sizeCalculator = new SizeCalculator(virtualExecutor, ioPermits, sizeCache,
+                    listingCache, typeClassifier, timedReader);
+        } else {
+            this.scanExecutor = new CustomThreadPool(POOL_SIZE);
+            this.sizeCalculator = new SizeCalculator(POOL_SIZE, sizeCache, listingCache,
+                    typeClassifier, timedReader);
+        }
+        this.fileSearcher = new FileSearcher(FIND_THREADS, listingCache, typeClassifier);
+        this.topCollector = new TopCollector(TOP_THREADS, listingCache);
     }
 
     /**
      * Передача актуального списка объектов файлового дерева в Представление.
+     * Если пул потоков еще не заполнил текущую директорию всеми объектами,
+     * выводит объекты по мере их появления.
      */
     public void fileTree(FileTree fileTree) {
-        File directory = new File(fileTree.getRealPath());
-        int length;
-        try {
-            length = requireNonNull(directory.listFiles()).length;
-        } catch (NullPointerException e) {
-            length = 0;
-        }
+        if (!fileTree.getScan().isDone() && fileTree.getChannel().attach()) {
+            // выводить объекты по мере их появления
+            fileInfoView.displayStreaming(fileTree.getChannel());
+            fileTree.getScan().join();
 
-        if (!fileTree.isFilesExist()) {
-            // если пул потоков не выполнил все задачи и файловое дерево заполнена не полностью
-            fileInfoView.displayAllDocuments(fileTree.getFileInfo(), length);
-            fileTree.setFilesExist(true);
-        } else {
-            fileInfoView.displayAllDocuments(fileTree.getFileInfo(), fileTree.getSize());
+            synchronized (fileTree) {
+                totalInfo(fileTree);
+            }
+            return;
         }
 
-        // вывести общие параметры текущей директории
-        totalInfo(fileTree);
+        fileTree.getScan().join();
+        // заполненная директория может изменяться в фоне
+        synchronized (fileTree) {
+            fileInfoView.displayAllDocuments(fileTree.getEntries());
+
+            // вывести общие параметры текущей директории
+            totalInfo(fileTree);
+        }
     }
 
     /**
@@ -83,9 +413,10 @@ public class MenuController {
      * @param fileTree файловое дерево.
      */
     private void totalInfo(FileTree fileTree) {
-        List<Long> totalInfo = new ArrayList<>(2);
+        List<Long> totalInfo = new ArrayList<>(3);
         totalInfo.add((long) fileTree.getTotalObjects());
         totalInfo.add(fileTree.getTotalSize());
+        totalInfo.add(fileTree.getSyscallsSaved());
 
         fileInfoView.displayTotalSizeAndObjects(totalInfo);
     }
@@ -115,10 +446,56 @@ public class MenuController {
             rootDir += separator;
         }
 
+        // отслеживать изменения в посещенных директориях
+        if (WATCH_DIRECTORIES && directoryWatcher == null) {
+            try {
+                directoryWatcher = new DirectoryWatcher((node, kind, entry) -> applyChange(fileTree, node, kind, entry));
+            } catch (IOException e) {
+                // изменения будут видны только после refresh
+            }
+        }
+
+        // периодически сохранять снимок файлового дерева
+        if (snapshotFile != null && SNAPSHOT_INTERVAL > 0 && snapshotWriter == null) {
+            snapshotWriter = newSingleThreadScheduledExecutor(task -> {
+                Thread thread = new Thread(task, SNAPSHOT_THREAD_NAME);
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            });
+            snapshotWriter.scheduleWithFixedDelay(() -> saveSnapshot(fileTree),
+                    SNAPSHOT_INTERVAL, SNAPSHOT_INTERVAL, SECONDS);
+        }
+
         // сохранить в файловом дереве.
         saveData(fileTree, rootDir);
     }
 
+    /**
+     * Запись снимка файлового дерева и кэшей, по которому
+     * следующий запуск не будет читать директории заново.
+     * Ошибка записи не мешает работе, остается прежний снимок.
+     *
+     * @param fileTree файловое дерево
+     */
+    public synchronized void saveSnapshot(FileTree fileTree) {
+        if (snapshotFile == null) {
+            return;
+        }
+
+        TreeSnapshot.Writer writer = new TreeSnapshot.Writer();
+        fileTree.writeTo(writer);
+        if (listingCache != null) {
+            listingCache.writeTo(writer);
+        }
+        sizeCache.writeTo(writer);
+        try {
+            writer.write(snapshotFile, snapshot);
+        } catch (IOException e) {
+            // при следующем запуске будет использован прежний снимок
+        }
+    }
+
     /**
      * Создание файла в директории, где находится пользователь.
      *
@@ -180,174 +557,1752 @@ public class MenuController {
 
     /**
      * Удаление папки из директории, в котором находится пользователь.
+     * Папка удаляется в фоне несколькими потоками, а удаление можно
+     * отменить между объектами. Размер папки в файловом дереве
+     * уменьшается по ходу удаления, а ход удаления виден в списке задач.
      *
      * @param dirName имя папки
-     * @throws PermissionsException если произошла ошибка ввода/вывода
      */
-    public void deleteDirectory(String dirName, String currentFolder)
-            throws PermissionsException {
+    public void deleteDirectory(String dirName, FileTree fileTree) {
+        String currentFolder;
+        Node node;
+        synchronized (fileTree) {
+            currentFolder = fileTree.getCurrentFolder();
+            node = fileTree.getNode();
+        }
+        Path dirPath = of(currentFolder + separator + dirName).normalize();
+        // размер в дереве поддерживается только для объекта текущей директории
+        String entryName = of(currentFolder).equals(dirPath.getParent())
+                ? dirPath.getFileName().toString()
+                : null;
+
+        Progress progress = new Progress();
+        Job job = submitJob(fileTree, currentFolder, "rmdir " + dirName, () -> {
+            if (Files.isSymbolicLink(dirPath)) {
+                // удаляется сама ссылка, а не директория, на которую она указывает
+                Files.delete(dirPath);
+                removeDeleted(fileTree, node, entryName, dirPath);
+                return () -> fileChangeView.showDeletingDirectory(true);
+            }
+            if (!Files.isDirectory(dirPath)) {
+                return () -> fileChangeView.showDeletingDirectory(false);
+            }
+            if (!Files.isWritable(dirPath.getParent())) {
+                throw new PermissionsException();
+            }
 
-        Path dirPath = of(currentFolder + separator + dirName);
+            boolean completed = directoryDeleter.delete(dirPath, progress, bytes -> {
+                if (entryName != null && bytes != 0) {
+                    synchronized (fileTree) {
+                        if (node.getScan().isDone()) {
+                            fileTree.addEntrySize(node, entryName, -bytes);
+                        }
+                    }
+                }
+            });
+            removeDeleted(fileTree, node, entryName, dirPath);
+            if (!completed) {
+                return null;
+            }
 
-        try {
-            Files.walk(dirPath)
-                    .sorted(reverseOrder())
-                    .map(Path::toFile)
-                    .forEach(File::delete);
-        } catch (NoSuchFileException e) {
-            fileChangeView.showDeletingDirectory(dirPath.toFile().isDirectory());
+            // вывести пользователю результат выполнения операции
+            boolean deleted = !Files.exists(dirPath, NOFOLLOW_LINKS);
+            return () -> fileChangeView.showDeletingDirectory(deleted, progress);
+        });
+        job.setProgress(progress);
+    }
+
+    /**
+     * Обновление файлового дерева и кэшей после удаления папки. Если
+     * папка удалена не полностью, в дереве остается ее уменьшенный размер.
+     *
+     * @param fileTree  файловое дерево
+     * @param node      директория, в которой находилась папка
+     * @param entryName имя папки в директории или <code>null</code>,
+     *                  если папка находилась не в этой директории
+     * @param dirPath   путь папки
+     */
+    private void removeDeleted(FileTree fileTree, Node node, String entryName, Path dirPath) {
+        Path realPath = entryName != null
+                ? of(node.getRealPath()).resolve(entryName)
+                : dirPath;
+        forgetSizes(realPath);
+        if (entryName == null) {
             return;
-        } catch (IOException e) {
-            throw new PermissionsException();
         }
 
-        // вывести пользователю результат выполнения операции
-        fileChangeView.showDeletingDirectory(!dirPath.toFile().isDirectory());
+        node.setLastModified(lastModified(node.getRealPath()));
+        if (!Files.exists(realPath, NOFOLLOW_LINKS)) {
+            synchronized (fileTree) {
+                if (node.getScan().isDone()) {
+                    fileTree.removeEntry(node, entryName);
+                }
+            }
+        }
     }
 
     /**
-     * Переход по директориям в файловом дереве.
+     * Удаление из кэшей размеров директории и всех директорий выше,
+     * которые после ее изменения больше не актуальны.
      *
-     * @param directory параметр для перехода
-     * @throws PermissionsException         если произошла ошибка ввода/вывода
-     * @throws IncorrectDirectoryException  если пользователь ввел некорректную
-     *                                      директорию
+     * @param realPath реальный путь директории
      */
-    public void changeDirectory(String directory, FileTree fileTree)
-            throws PermissionsException, IncorrectDirectoryException {
+    private void forgetSizes(Path realPath) {
+        for (Path path = realPath; path != null; path = path.getParent()) {
+            sizeCache.remove(path.toString());
+            if (listingCache != null) {
+                listingCache.remove(path.toString());
+            }
+        }
+    }
 
-        if (directory.equals("/") || directory.equals("\\")) {
-            fileTree.getBackFirst();
-        } else if (directory.equals("..")) {
-            if (!fileTree.getCurrentFolder().equals(fileTree.getFirstPath())) {
-                fileTree.getBack();
-            } else {
-                fileTree.getBackFirst();
+    /**
+     * Копирование файла или папки. Папка копируется в фоне несколькими
+     * потоками, размер копии в файловом дереве увеличивается по ходу
+     * копирования, а ход копирования виден в списке задач.
+     *
+     * @param sourceName копируемый объект
+     * @param targetName путь копии или директория, в которую копируется объект
+     * @param fileTree   файловое дерево
+     * @throws PermissionsException      если копируемого объекта или директории копии нет
+     * @throws ObjectExistsException     если объект с именем копии уже существует
+     * @throws IncorrectCommandException если папка копируется внутрь самой себя
+     */
+    public void copy(String sourceName, String targetName, FileTree fileTree)
+            throws PermissionsException, ObjectExistsException, IncorrectCommandException {
+
+        transfer(sourceName, targetName, fileTree, false);
+    }
+
+    /**
+     * Перемещение файла или папки. В пределах одной файловой системы
+     * объект атомарно переименовывается, иначе он копируется, а затем
+     * удаляется, если скопирован полностью.
+     *
+     * @param sourceName перемещаемый объект
+     * @param targetName новый путь или директория, в которую перемещается объект
+     * @param fileTree   файловое дерево
+     * @throws PermissionsException      если перемещаемого объекта или новой директории нет
+     * @throws ObjectExistsException     если объект с новым именем уже существует
+     * @throws IncorrectCommandException если папка перемещается внутрь самой себя
+     */
+    public void move(String sourceName, String targetName, FileTree fileTree)
+            throws PermissionsException, ObjectExistsException, IncorrectCommandException {
+
+        transfer(sourceName, targetName, fileTree, true);
+    }
+
+    /**
+     * Проверка путей и запуск копирования или перемещения в фоне.
+     *
+     * @param sourceName копируемый объект
+     * @param targetName путь копии или директория, в которую копируется объект
+     * @param fileTree   файловое дерево
+     * @param move       <code>true</code> если исходный объект удаляется
+     */
+    private void transfer(String sourceName, String targetName, FileTree fileTree, boolean move)
+            throws PermissionsException, ObjectExistsException, IncorrectCommandException {
+
+        String currentFolder = currentFolder(fileTree);
+        Path source = resolve(currentFolder, sourceName);
+        Path target = resolve(currentFolder, targetName);
+        if (source.getFileName() == null || !Files.exists(source, NOFOLLOW_LINKS)) {
+            throw new PermissionsException();
+        }
+        if (Files.isDirectory(target)) {
+            target = target.resolve(source.getFileName().toString());
+        }
+        if (Files.exists(target, NOFOLLOW_LINKS)) {
+            throw new ObjectExistsException();
+        }
+
+        // ссылка копируется сама, поэтому реальными делаются только пути директорий
+        Path realSource;
+        Path realTarget;
+        try {
+            realSource = source.getParent().toRealPath().resolve(source.getFileName().toString());
+            realTarget = target.getParent().toRealPath().resolve(target.getFileName().toString());
+        } catch (IOException e) {
+            throw new PermissionsException();
+        }
+        if (Files.isDirectory(realSource, NOFOLLOW_LINKS) && realTarget.startsWith(realSource)) {
+            // копирование папки внутрь самой себя никогда не закончится
+            throw new IncorrectCommandException();
+        }
+
+        Progress progress = new Progress();
+        Job job = submitJob(fileTree, currentFolder, (move ? "mv " : "cp ") + sourceName, () -> {
+            if (move && rename(realSource, realTarget)) {
+                moveEntry(fileTree, realSource, realTarget);
+                return () -> fileChangeView.showMoving(true);
             }
-        } else {
-            File dir = new File(fileTree.getCurrentFolder() + separator + directory);
 
-            if (dir.equals(new File(fileTree.getCurrentFolder()))) {
-                return;
+            boolean completed = copyTree(fileTree, realSource, realTarget, progress);
+            if (!completed) {
+                return null;
+            }
+            if (!move) {
+                return () -> fileChangeView.showCopying(progress.getFailed() == 0, progress);
+            }
+            if (progress.getFailed() > 0) {
+                // исходный объект не удаляется, если копия неполная
+                return () -> fileChangeView.showMoving(false, progress);
             }
 
-            if (dir.isDirectory()) {
-                saveData(fileTree, dir.toString());
-            } else {
-                throw new IncorrectDirectoryException();
+            if (!deleteSource(fileTree, realSource)) {
+                return null;
             }
-        }
+            return () -> fileChangeView.showMoving(!Files.exists(realSource, NOFOLLOW_LINKS), progress);
+        });
+        job.setProgress(progress);
     }
 
     /**
-     * Обновление данных в текущей папке файлового дерева.
+     * Путь объекта относительно директории, в которой находится пользователь.
+     *
+     * @param currentFolder текущая директория
+     * @param name          абсолютный путь или путь относительно текущей директории
+     * @return путь объекта
      */
-    public void refreshData(FileTree fileTree) {
-        fileTree.clean();
-        fileTree.setFilesExist(false);
-        File folder = new File(fileTree.getCurrentFolder());
-        listAllFiles(folder, fileTree);
+    private static Path resolve(String currentFolder, String name) {
+        return (new File(name).isAbsolute() ? of(name) : of(currentFolder + separator + name)).normalize();
     }
 
     /**
-     * Сохранение данных из текущей директории, в которой находится
-     * пользователь в файловое дерево.
+     * Атомарное переименование объекта в пределах одной файловой системы.
      *
-     * @throws PermissionsException если файл не существует или произошла
-     *                              ошибка ввода/вывода
+     * @param source перемещаемый объект
+     * @param target новый путь
+     * @return <code>false</code> если объект находится на другой файловой системе
+     * @throws PermissionsException если объект не удалось переименовать
      */
-    private void saveData(FileTree fileTree, String currentFolder)
-            throws PermissionsException {
-
-        // добавить в структуру файлового дерева текущую директорию
+    private static boolean rename(Path source, Path target) throws PermissionsException {
         try {
-            fileTree.addNode(currentFolder, of(currentFolder).toRealPath().toString());
+            Files.move(source, target, ATOMIC_MOVE);
+            return true;
+        } catch (AtomicMoveNotSupportedException e) {
+            return false;
         } catch (IOException e) {
             throw new PermissionsException();
         }
+    }
 
-        // добавить в файловое дерево список файлов и папок, если там еще нет
-        if (!fileTree.isExists()) {
-            File folder = new File(fileTree.getRealPath());
-            listAllFiles(folder, fileTree);
-        } else {
-            fileTree.setExists(false);
+    /**
+     * Перенос объекта между директориями файлового дерева после
+     * переименования. Размер папки берется из исходной директории,
+     * если она есть в дереве, поэтому папка не обходится заново.
+     *
+     * @param fileTree файловое дерево
+     * @param source   прежний путь
+     * @param target   новый путь
+     */
+    private void moveEntry(FileTree fileTree, Path source, Path target) {
+        EntryRef sourceRef = EntryRef.locate(fileTree, source);
+        long fileSize = UNKNOWN_SIZE;
+        if (sourceRef != null && sourceRef.direct) {
+            synchronized (fileTree) {
+                if (sourceRef.node.getScan().isDone()) {
+                    fileSize = fileTree.getEntrySize(sourceRef.node, sourceRef.name);
+                    fileTree.removeEntry(sourceRef.node, sourceRef.name);
+                }
+            }
+        }
+
+        FileInfo fileInfo = readTransferred(target, fileSize);
+        if (fileInfo != null && sourceRef != null && !sourceRef.direct) {
+            sourceRef.addSize(fileTree, -fileInfo.getFileSize());
+        }
+        forgetChanged(sourceRef, source);
+
+        EntryRef targetRef = EntryRef.locate(fileTree, target);
+        if (fileInfo != null && targetRef != null) {
+            targetRef.put(fileTree, fileInfo);
         }
+        forgetChanged(targetRef, target);
     }
 
     /**
-     * Занесение всех объектов текущей директории в файловое дерево
-     * с помощью пула потоков.
+     * Копирование объекта с увеличением размера копии в файловом дереве
+     * по ходу копирования. Отмененное копирование удаляет неполную копию.
      *
-     * @param folder текущая директория
+     * @param fileTree файловое дерево
+     * @param source   копируемый объект
+     * @param target   путь копии
+     * @param progress ход копирования
+     * @return <code>true</code> если копирование не было отменено
      */
-    private void listAllFiles(File folder, FileTree fileTree) {
+    private boolean copyTree(FileTree fileTree, Path source, Path target, Progress progress)
+            throws IOException {
 
-        File[] files = folder.listFiles();
-        if (files != null) {
-            // создает пул потоков и передает ему задачи
-            CustomThreadPool threadPool = new CustomThreadPool(POOL_SIZE);
-            stream(files)
-                    .forEach(file -> threadPool.submit(() -> appendElement(file, fileTree)));
+        EntryRef targetRef = EntryRef.locate(fileTree, target);
+        if (targetRef != null) {
+            // копия появляется в дереве сразу и растет по ходу копирования
+            FileInfo fileInfo = FileInfo.of(target, targetRef.name, EntryAttributes.read(source), typeClassifier);
+            fileInfo.setFileSize(0L);
+            targetRef.put(fileTree, fileInfo);
+        }
 
-            try {
-                sleep(100);
-            } catch (InterruptedException e) {
-                throw new RuntimeException(e);
+        boolean completed = treeCopier.copy(source, target, progress, bytes -> {
+            if (targetRef != null) {
+                targetRef.addSize(fileTree, bytes);
+            }
+        });
+        if (!completed) {
+            if (Files.isDirectory(target, NOFOLLOW_LINKS)) {
+                // признак прерывания снимается, иначе удаление тоже будет отменено
+                Thread.interrupted();
+                directoryDeleter.delete(target, new Progress(), bytes -> {
+                });
+            }
+            if (targetRef != null && !targetRef.direct) {
+                targetRef.addSize(fileTree, -progress.getBytes());
+            }
+        }
+
+        if (targetRef != null && targetRef.direct) {
+            FileInfo fileInfo = readTransferred(target, progress.getBytes());
+            if (fileInfo != null) {
+                targetRef.put(fileTree, fileInfo);
+            } else {
+                targetRef.remove(fileTree);
             }
-            threadPool.shutdown();
         }
+        forgetChanged(targetRef, target);
+
+        return completed;
     }
 
     /**
-     * Добавление элемента в текущую директорию файлового дерева.
+     * Удаление исходного объекта после перемещения на другую файловую
+     * систему с уменьшением его размера в файловом дереве по ходу удаления.
      *
-     * @param file файл/папка для добавления
      * @param fileTree файловое дерево
+     * @param source   исходный объект
+     * @return <code>true</code> если удаление не было отменено
+     */
+    private boolean deleteSource(FileTree fileTree, Path source) throws IOException {
+        EntryRef sourceRef = EntryRef.locate(fileTree, source);
+        boolean completed = true;
+        if (Files.isDirectory(source, NOFOLLOW_LINKS)) {
+            completed = directoryDeleter.delete(source, new Progress(), bytes -> {
+                if (sourceRef != null) {
+                    sourceRef.addSize(fileTree, -bytes);
+                }
+            });
+        } else {
+            long fileSize = Files.size(source);
+            Files.delete(source);
+            if (sourceRef != null) {
+                sourceRef.addSize(fileTree, -fileSize);
+            }
+        }
+
+        if (sourceRef != null && sourceRef.direct && !Files.exists(source, NOFOLLOW_LINKS)) {
+            sourceRef.remove(fileTree);
+        }
+        forgetChanged(sourceRef, source);
+
+        return completed;
+    }
+
+    /**
+     * Чтение скопированного или перемещенного объекта.
+     *
+     * @param path    путь объекта
+     * @param dirSize известный размер папки или <code>UNKNOWN_SIZE</code>
+     * @return объект или <code>null</code>, если объекта нет
      */
-    private void appendElement(File file, FileTree fileTree) {
-        FileType fileType = file.isDirectory()
-                ? DIR
-                : OTHER_FILE;
-        long fileSize = file.isDirectory()
-                ? searchFiles(file)
-                : file.length();
-        Boolean[] attribute = {isReadable(file.toPath()),
-                isWritable(file.toPath()),
-                isExecutable(file.toPath())};
+    private FileInfo readTransferred(Path path, long dirSize) {
+        EntryAttributes attributes;
+        try {
+            attributes = EntryAttributes.read(path);
+        } catch (IOException e) {
+            return null;
+        }
+
+        FileInfo fileInfo = FileInfo.of(path, path.getFileName().toString(), attributes, typeClassifier);
+        if (fileInfo.getType() == DIR) {
+            fileInfo.setFileSize(dirSize != UNKNOWN_SIZE
+                    ? dirSize
+                    : sizeCalculator.calculate(path).getSize());
+        }
 
-        // объект с корректными параметрами для отображения
-        FileInfo fileInfo = new FileInfo();
-        fileInfo.setName(file.getName());
-        fileInfo.setType(fileType);
-        fileInfo.setFileSize(fileSize);
-        fileInfo.setAttribute(attribute);
+        return fileInfo;
+    }
 
-        synchronized (this) {
-            fileTree.addChild(fileInfo);
-            fileTree.setTotalSize(fileTree.getTotalSize() + fileInfo.getFileSize());
-            fileTree.setTotalObjects(fileTree.getTotalObjects() + 1);
+    /**
+     * Учет изменения директории после копирования, перемещения
+     * или удаления объекта в ней.
+     *
+     * @param ref  объект файлового дерева, который содержит путь,
+     *             или <code>null</code>, если его нет в дереве
+     * @param path путь измененного объекта
+     */
+    private void forgetChanged(EntryRef ref, Path path) {
+        forgetSizes(path);
+        if (ref != null) {
+            ref.node.setLastModified(lastModified(ref.node.getRealPath()));
         }
     }
 
     /**
-     * Подсчет размера текущей папки рекурсивно.
+     * Поиск объектов в текущей директории и всех ее поддиректориях.
+     * Сначала проверяются объекты директорий, которые уже есть
+     * в файловом дереве, затем параллельно обходятся остальные
+     * поддеревья. Поиск выполняется в фоне и его можно отменить.
+     * Результаты выводятся по мере нахождения, пока пользователь
+     * находится в директории поиска, а поиск останавливается
+     * после заданного количества результатов.
      *
-     * @param folder текущая директория
-     * @return размер текущей директории в байтах
+     * @param parameter условия поиска
+     * @param fileTree  файловое дерево
+     * @throws IncorrectCommandException если условия поиска некорректны
      */
-    private long searchFiles(File folder) {
-        long size = 0L;
-        File[] files = folder.listFiles();
+    public void find(String parameter, FileTree fileTree) throws IncorrectCommandException {
+        FindQuery query = FindQuery.parse(parameter);
 
-        if (files != null) {
-            for (File file : files) {
-                size += file.isDirectory()
-                        ? searchFiles(file)
-                        : file.length();
-            }
+        String currentFolder;
+        Node root;
+        synchronized (fileTree) {
+            currentFolder = fileTree.getCurrentFolder();
+            root = fileTree.getNode();
         }
+        Path rootPath = of(root.getRealPath());
+
+        submitJob(fileTree, currentFolder, "find " + parameter.strip(), () -> {
+            FindResults results = new FindResults(query.getLimit() > 0 ? query.getLimit() : FIND_LIMIT,
+                    CancellationToken.withTimeout(SECONDS.toMillis(SCAN_TIMEOUT)));
+            List<Path> unvisited = new ArrayList<>();
+            findInTree(fileTree, root, query.matcher(), results, unvisited);
+
+            fileSearcher.search(unvisited, query, results, found -> {
+                if (!Thread.currentThread().isInterrupted() && currentFolder.equals(currentFolder(fileTree))) {
+                    findView.showFound(rootPath, found);
+                }
+            });
+            if (Thread.currentThread().isInterrupted()) {
+                return null;
+            }
 
-        return size;
+            return () -> findView.showTotal(results);
+        });
+    }
+
+    /**
+     * Поиск файлов с одинаковым содержимым в текущей директории и всех
+     * ее поддиректориях. Размеры файлов берутся из файлового дерева
+     * и кэша содержимого директорий, остальные поддеревья обходятся
+     * параллельно. Файлы одного размера сравниваются в фоне: сначала
+     * по началу и концу, затем целиком, а ход сравнения виден в списке задач.
+     *
+     * @param parameter <code>-min SIZE</code> минимальный размер файла,
+     *                  <code>-verify</code> проверка SHA-256 или <code>null</code>
+     * @param fileTree  файловое дерево
+     * @throws IncorrectCommandException если параметры некорректны
+     */
+    public void findDuplicates(String parameter, FileTree fileTree) throws IncorrectCommandException {
+        long minSize = DUPES_MIN_SIZE;
+        boolean verify = false;
+        String[] tokens = parameter == null ? new String[0] : parameter.strip().split("\\s+");
+        for (int i = 0; i < tokens.length; i++) {
+            if (tokens[i].equals("-verify")) {
+                verify = true;
+            } else if (tokens[i].equals("-min") && i + 1 < tokens.length) {
+                try {
+                    minSize = FindQuery.parseSize(tokens[++i]);
+                } catch (NumberFormatException e) {
+                    throw new IncorrectCommandException();
+                }
+            } else {
+                throw new IncorrectCommandException();
+            }
+        }
+
+        String currentFolder;
+        Node root;
+        synchronized (fileTree) {
+            currentFolder = fileTree.getCurrentFolder();
+            root = fileTree.getNode();
+        }
+        Path rootPath = of(root.getRealPath());
+        FindQuery query = FindQuery.files(minSize);
+        boolean verifyContent = verify;
+
+        Progress progress = new Progress();
+        Job job = submitJob(fileTree, currentFolder, "dupes", () -> {
+            FindResults results = new FindResults(Integer.MAX_VALUE,
+                    CancellationToken.withTimeout(SECONDS.toMillis(SCAN_TIMEOUT)));
+            List<Path> unvisited = new ArrayList<>();
+            findInTree(fileTree, root, query.matcher(), results, unvisited);
+
+            Map<Long, List<Path>> bySize = new HashMap<>();
+            fileSearcher.search(unvisited, query, results, found -> bySize
+                    .computeIfAbsent(found.getFileInfo().getFileSize(), size -> new ArrayList<>())
+                    .add(found.getPath()));
+            if (Thread.currentThread().isInterrupted()) {
+                return null;
+            }
+
+            // обход, прерванный по сроку, находит не всех кандидатов
+            boolean completed = !results.getToken().isCancelled();
+            List<DuplicateGroup> groups = duplicateFinder.find(bySize, verifyContent, progress);
+            return () -> dupesView.showGroups(rootPath, groups, completed);
+        });
+        job.setProgress(progress);
+    }
+
+    /**
+     * Поиск самых больших файлов и директорий в текущей директории и всех
+     * ее поддиректориях. Для директорий, которые уже есть в файловом
+     * дереве, используются их общие размеры, а остальные поддеревья
+     * обходятся параллельно. Память поиска зависит только от количества
+     * объектов в результате. Поиск выполняется в фоне.
+     *
+     * @param parameter количество объектов каждого вида или <code>null</code>
+     * @param fileTree  файловое дерево
+     * @throws IncorrectCommandException если количество некорректно
+     */
+    public void top(String parameter, FileTree fileTree) throws IncorrectCommandException {
+        int count = TOP_COUNT;
+        if (parameter != null) {
+            try {
+                count = Integer.parseInt(parameter.strip());
+            } catch (NumberFormatException e) {
+                throw new IncorrectCommandException();
+            }
+            if (count <= 0) {
+                throw new IncorrectCommandException();
+            }
+        }
+
+        String currentFolder;
+        Node root;
+        synchronized (fileTree) {
+            currentFolder = fileTree.getCurrentFolder();
+            root = fileTree.getNode();
+        }
+        Path rootPath = of(root.getRealPath());
+        TopEntries top = new TopEntries(count);
+
+        Progress progress = new Progress();
+        Job job = submitJob(fileTree, currentFolder, "top " + count, () -> {
+            List<Path> unvisited = new ArrayList<>();
+            rankInTree(fileTree, root, top, unvisited);
+
+            boolean completed = topCollector.collect(rootPath, unvisited, top,
+                    CancellationToken.withTimeout(SECONDS.toMillis(SCAN_TIMEOUT)), progress);
+            if (Thread.currentThread().isInterrupted()) {
+                return null;
+            }
+
+            EntryStore files = topEntries(rootPath, top.getFiles());
+            EntryStore directories = topEntries(rootPath, top.getDirectories());
+            return () -> topView.showTop(files, directories, completed);
+        });
+        job.setProgress(progress);
+    }
+
+    /**
+     * Учет объектов заполненных директорий файлового дерева. Размер
+     * поддиректории берется из ее общего размера в дереве. Поддиректории,
+     * которых нет в дереве или которые заполнены не полностью,
+     * передаются для обхода файловой системы.
+     *
+     * @param fileTree  файловое дерево
+     * @param node      директория
+     * @param top       самые большие объекты
+     * @param unvisited поддиректории для обхода файловой системы
+     * @return <code>false</code> если директория передана для обхода
+     */
+    private boolean rankInTree(FileTree fileTree, Node node, TopEntries top, List<Path> unvisited) {
+        Path folder = of(node.getRealPath());
+        if (!node.getScan().isDone() || node.isPartial()) {
+            unvisited.add(folder);
+            return false;
+        }
+
+        List<String> subFolders = new ArrayList<>();
+        fileTree.rank(node, top, subFolders::add);
+
+        for (String name : subFolders) {
+            Path subFolder = folder.resolve(name);
+            Node subNode = fileTree.findNode(subFolder.toString());
+            if (subNode == null) {
+                unvisited.add(subFolder);
+            } else if (rankInTree(fileTree, subNode, top, unvisited)) {
+                top.offerDirectory(subFolder, subNode.getTotalSize());
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Подготовка самых больших объектов для таблицы. Имя объекта
+     * заменяется путем относительно директории поиска.
+     *
+     * @param root   директория поиска
+     * @param ranked объекты от большего к меньшему
+     * @return хранилище объектов в том же порядке
+     */
+    private EntryStore topEntries(Path root, List<TopEntries.Ranked> ranked) {
+        EntryStore entries = new EntryStore();
+        for (TopEntries.Ranked entry : ranked) {
+            Path path = entry.getPath();
+            String name = root.relativize(path).toString();
+            FileInfo fileInfo;
+            try {
+                fileInfo = FileInfo.of(path, name, EntryAttributes.read(path), typeClassifier);
+            } catch (IOException e) {
+                // объект удален после обхода
+                fileInfo = FileInfo.unknown(path, name, typeClassifier);
+            }
+            if (entry.getType() != null) {
+                fileInfo.setType(entry.getType());
+            }
+            fileInfo.setFileSize(entry.getSize());
+            entries.append(fileInfo);
+        }
+
+        return entries;
+    }
+
+    /**
+     * Поиск в заполненных директориях файлового дерева. Поддиректории,
+     * которых нет в дереве или которые заполнены не полностью,
+     * передаются для обхода файловой системы.
+     *
+     * @param fileTree  файловое дерево
+     * @param node      директория
+     * @param matcher   проверка объектов
+     * @param results   результаты поиска
+     * @param unvisited поддиректории для обхода файловой системы
+     */
+    private void findInTree(FileTree fileTree, Node node, FindQuery.EntryMatcher matcher,
+                            FindResults results, List<Path> unvisited) {
+
+        Path folder = of(node.getRealPath());
+        if (!node.getScan().isDone() || node.isPartial()) {
+            unvisited.add(folder);
+            return;
+        }
+
+        List<String> subFolders = new ArrayList<>();
+        if (!fileTree.find(node, matcher,
+                fileInfo -> results.add(folder.resolve(fileInfo.getName()), fileInfo),
+                subFolders::add)) {
+            return;
+        }
+
+        for (String name : subFolders) {
+            Path subFolder = folder.resolve(name);
+            Node subNode = fileTree.findNode(subFolder.toString());
+            if (subNode != null) {
+                findInTree(fileTree, subNode, matcher, results, unvisited);
+            } else {
+                unvisited.add(subFolder);
+            }
+        }
+    }
+
+    /**
+     * Переход по директориям в файловом дереве.
+     *
+     * @param directory параметр для перехода
+     * @throws PermissionsException         если произошла ошибка ввода/вывода
+     * @throws IncorrectDirectoryException  если пользователь ввел некорректную
+     *                                      директорию
+     */
+    public void changeDirectory(String directory, FileTree fileTree)
+            throws PermissionsException, IncorrectDirectoryException {
+
+        // предварительное чтение для прежней директории больше не нужно
+        if (prefetcher != null) {
+            prefetcher.cancel();
+        }
+        Node previous = fileTree.getNode();
+
+        if (directory.equals("/") || directory.equals("\\")) {
+            fileTree.getBackFirst();
+            rescanIfPartial(fileTree, previous);
+        } else if (directory.equals("..")) {
+            if (!fileTree.getCurrentFolder().equals(fileTree.getFirstPath())) {
+                fileTree.getBack();
+            } else {
+                fileTree.getBackFirst();
+            }
+            rescanIfPartial(fileTree, previous);
+        } else {
+            File dir = new File(directory).isAbsolute()
+                    ? new File(directory)
+                    : new File(fileTree.getCurrentFolder() + separator + directory);
+
+            if (dir.equals(new File(fileTree.getCurrentFolder()))) {
+                return;
+            }
+
+            if (dir.isDirectory()) {
+                saveData(fileTree, dir.toString());
+                rescanIfPartial(fileTree, previous);
+            } else {
+                throw new IncorrectDirectoryException();
+            }
+        }
+    }
+
+    /**
+     * Отмена заполнения директории, из которой ушел пользователь, и повторное
+     * заполнение директории, в которую он вернулся, если ее прошлое
+     * заполнение было отменено. Посчитанные до отмены поддеревья
+     * берутся из кэша.
+     *
+     * @param fileTree файловое дерево
+     * @param previous директория, из которой ушел пользователь
+     */
+    private void rescanIfPartial(FileTree fileTree, Node previous) {
+        ScanState state;
+        synchronized (fileTree) {
+            Node node = fileTree.getNode();
+            if (node == previous) {
+                return;
+            }
+            previous.cancelScan();
+            if (!node.isPartial() || !node.getScan().isDone()) {
+                return;
+            }
+
+            fileTree.clean(node);
+            node.setLastModified(lastModified(node.getRealPath()));
+            state = startScan(new File(node.getRealPath()), fileTree, node);
+        }
+        listAllFiles(state);
+    }
+
+    /**
+     * Обновление данных в текущей папке файлового дерева в фоне. По умолчанию
+     * обновляются только объекты, которые изменились с прошлого заполнения,
+     * и пользователю выводится список изменений. При полном обновлении
+     * директория заполняется заново, а размеры всех поддиректорий
+     * считаются без кэша.
+     *
+     * @param full полное обновление
+     */
+    public void refreshData(FileTree fileTree, boolean full) {
+        Node node;
+        String currentFolder;
+        synchronized (fileTree) {
+            node = fileTree.getNode();
+            currentFolder = fileTree.getCurrentFolder();
+        }
+
+        submitJob(fileTree, currentFolder, full ? "refresh -f" : "refresh", () -> {
+            // дождаться предыдущего заполнения, чтобы оно не смешалось с новым
+            node.getScan().join();
+            if (!full) {
+                ChangeReport report = new ChangeReport();
+                refreshNode(fileTree, node, "", report);
+                return () -> fileChangeView.showRefresh(report);
+            }
+
+            sizeCache.clear();
+            if (listingCache != null) {
+                listingCache.clear();
+            }
+            ScanState state;
+            synchronized (fileTree) {
+                fileTree.clean(node);
+                node.setLastModified(lastModified(node.getRealPath()));
+                state = startScan(new File(node.getRealPath()), fileTree, node);
+            }
+            listAllFiles(state);
+            try {
+                state.scan.get();
+            } catch (InterruptedException e) {
+                // задача отменена, вместе с ней отменяется заполнение
+                node.cancelScan();
+            } catch (ExecutionException e) {
+                // заполнение не завершается ошибкой
+            }
+
+            return null;
+        });
+    }
+
+    /**
+     * Вывод выполняющихся фоновых задач.
+     */
+    public void showJobs() {
+        jobView.showJobs(jobManager.jobs());
+    }
+
+    /**
+     * Отмена фоновой задачи.
+     *
+     * @param parameter номер задачи
+     * @throws IncorrectCommandException если номер задачи некорректный
+     */
+    public void cancelJob(String parameter) throws IncorrectCommandException {
+        int id;
+        try {
+            id = Integer.parseInt(parameter.strip());
+        } catch (NumberFormatException e) {
+            throw new IncorrectCommandException();
+        }
+
+        jobView.showCancelled(jobManager.cancel(id));
+    }
+
+    /**
+     * Отмена всех фоновых задач и заполнения текущей директории при выходе
+     * из программы. Исполнитель заполнения отключается и дожидается
+     * завершения уже принятых задач, но не дольше <code>SHUTDOWN_TIMEOUT</code>.
+     *
+     * @param fileTree файловое дерево
+     */
+    public void stopJobs(FileTree fileTree) {
+        jobManager.shutdown();
+        synchronized (fileTree) {
+            fileTree.getNode().cancelScan();
+        }
+
+        scanExecutor.shutdown();
+        try {
+            scanExecutor.awaitTermination(SHUTDOWN_TIMEOUT, SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Запуск долгой команды в фоне. Результат выводится, только если
+     * пользователь все еще находится в директории, где ввел команду,
+     * а результат отмененной задачи не выводится совсем.
+     *
+     * @param fileTree      файловое дерево
+     * @param currentFolder директория, в которой пользователь ввел команду
+     * @param description   команда
+     * @param task          задача, которая возвращает вывод результата
+     * @return запущенная задача
+     */
+    private Job submitJob(FileTree fileTree, String currentFolder, String description, JobManager.JobTask task) {
+        Job job = jobManager.submit(description, currentFolder, task);
+        jobView.showStarted(job);
+        job.getResult().whenComplete((result, error) -> {
+            if (job.isCancelled() || !currentFolder.equals(currentFolder(fileTree))) {
+                return;
+            }
+
+            if (error != null) {
+                Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                jobView.showFailed(job, cause.getMessage() != null ? cause.getMessage() : cause.toString());
+                return;
+            }
+            if (result != null) {
+                result.run();
+            }
+            jobView.showFinished(job);
+        });
+
+        return job;
+    }
+
+    /**
+     * Текущая директория файлового дерева, которая может
+     * меняться, пока выполняются фоновые задачи.
+     *
+     * @param fileTree файловое дерево
+     * @return путь директории в структуре дерева
+     */
+    private static String currentFolder(FileTree fileTree) {
+        synchronized (fileTree) {
+            return fileTree.getCurrentFolder();
+        }
+    }
+
+    /**
+     * Обновление заполненной директории по сравнению с диском.
+     * Объект считается измененным, если у него изменились время изменения,
+     * размер, права или индексный дескриптор. Поддиректории, которые
+     * есть в файловом дереве, обновляются так же рекурсивно. Размер остальных
+     * поддиректорий пересчитывается <code>SizeCalculator</code>, который
+     * сверяет время изменения каждой директории поддерева и читает заново
+     * только изменившиеся директории. Если файл глубже вырос или уменьшился,
+     * а время изменения его директории осталось прежним, новый размер
+     * учитывает только полное обновление <code>refresh -f</code>.
+     *
+     * @param fileTree файловое дерево
+     * @param node     директория файлового дерева
+     * @param prefix   путь директории относительно обновляемой директории
+     * @param report   результат обновления
+     */
+    private void refreshNode(FileTree fileTree, Node node, String prefix, ChangeReport report) {
+        node.getScan().join();
+        if (Thread.currentThread().isInterrupted()) {
+            // задача обновления отменена
+            return;
+        }
+        node.setLastModified(lastModified(node.getRealPath()));
+        File[] files = new File(node.getRealPath()).listFiles();
+        if (files == null) {
+            return;
+        }
+
+        Map<String, FileInfo> stored = fileTree.snapshot(node);
+        List<FileInfo> updates = new ArrayList<>();
+        for (File file : files) {
+            EntryAttributes attributes;
+            try {
+                attributes = EntryAttributes.read(file.toPath());
+            } catch (IOException e) {
+                // объект удален во время обновления, он останется в списке удаленных
+                continue;
+            }
+
+            FileInfo fileInfo = toFileInfo(file, attributes);
+            FileInfo previous = stored.remove(file.getName());
+            String name = prefix + file.getName();
+            if (previous == null) {
+                if (fileInfo.getType() == DIR) {
+                    fileInfo.setFileSize(sizeCalculator.calculate(file.toPath()).getSize());
+                }
+                updates.add(fileInfo);
+                report.added(name);
+                continue;
+            }
+
+            boolean replaced = previous.getInode() != fileInfo.getInode()
+                    || (previous.getType() == DIR) != (fileInfo.getType() == DIR);
+            if (fileInfo.getType() == DIR) {
+                fileInfo.setFileSize(directorySize(fileTree, file, replaced, name, report));
+            }
+
+            if (replaced
+                    || previous.getLastModified() != fileInfo.getLastModified()
+                    || previous.getFileSize() != fileInfo.getFileSize()
+                    || attributeBits(previous.getAttribute()) != attributeBits(fileInfo.getAttribute())) {
+
+                updates.add(fileInfo);
+                report.changed(name);
+            }
+        }
+
+        synchronized (fileTree) {
+            if (node.getScan().isDone()) {
+                updates.forEach(fileInfo -> fileTree.putEntry(node, fileInfo));
+                stored.keySet().forEach(name -> fileTree.removeEntry(node, name));
+            }
+        }
+        stored.keySet().forEach(name -> report.removed(prefix + name));
+    }
+
+    /**
+     * Подсчет размера поддиректории при обновлении. Время изменения
+     * самой поддиректории не говорит об изменениях глубже, поэтому
+     * размер всегда сверяется по всему поддереву.
+     *
+     * @param fileTree файловое дерево
+     * @param folder   поддиректория
+     * @param replaced поддиректория заменена другой с тем же именем
+     * @param name     путь поддиректории относительно обновляемой директории
+     * @param report   результат обновления
+     * @return размер поддиректории
+     */
+    private long directorySize(FileTree fileTree, File folder, boolean replaced,
+                               String name, ChangeReport report) {
+        // посещенная поддиректория сверяется всегда, т.к. ее объекты видны пользователю
+        Node child = fileTree.findNode(folder.getPath());
+        if (child != null && !replaced) {
+            refreshNode(fileTree, child, name + separator, report);
+            return child.getTotalSize();
+        }
+
+        return sizeCalculator.calculate(folder.toPath()).getSize();
+    }
+
+    /**
+     * Сохранение данных из текущей директории, в которой находится
+     * пользователь в файловое дерево.
+     *
+     * @throws PermissionsException если файл не существует или произошла
+     *                              ошибка ввода/вывода
+     */
+    private void saveData(FileTree fileTree, String currentFolder)
+            throws PermissionsException {
+
+        String realPath;
+        try {
+            realPath = of(currentFolder).toRealPath().toString();
+        } catch (IOException e) {
+            throw new PermissionsException();
+        }
+        long lastModified = lastModified(realPath);
+
+        ScanState state = null;
+        ScanState revalidation = null;
+        synchronized (fileTree) {
+            // добавить в структуру файлового дерева текущую директорию
+            fileTree.addNode(currentFolder, realPath);
+
+            // добавить в файловое дерево список файлов и папок, если там еще нет
+            if (!fileTree.isExists()) {
+                fileTree.getNode().setLastModified(lastModified);
+                EntryStore listing = takeListing(fileTree.getRealPath(), lastModified);
+                if (listing != null) {
+                    // директория уже прочитана при подсчете размера, она выводится сразу,
+                    // а размеры поддиректорий сверяются в фоне
+                    fileTree.fill(listing);
+                    if (directoryWatcher != null) {
+                        directoryWatcher.watch(fileTree.getNode());
+                    }
+                    revalidation = startRevalidation(fileTree, fileTree.getNode());
+                } else {
+                    state = startScan(new File(fileTree.getRealPath()), fileTree, fileTree.getNode());
+                }
+            } else {
+                fileTree.setExists(false);
+            }
+        }
+
+        // объекты передаются исполнителю без блокировки дерева,
+        // т.к. при заполненной очереди исполнитель ждет свободного места
+        if (state != null) {
+            listAllFiles(state);
+        }
+        if (revalidation != null) {
+            revalidateSizes(fileTree, revalidation);
+        }
+    }
+
+    /**
+     * Получение объектов директории, прочитанных при подсчете размера
+     * или в прошлый запуск. Размеры поддиректорий в них могут быть
+     * устаревшими и сверяются <code>revalidateSizes</code>.
+     *
+     * @param realPath     реальный путь директории
+     * @param lastModified текущее время изменения директории
+     * @return объекты директории или <code>null</code>, если директорию нужно прочитать
+     */
+    private EntryStore takeListing(String realPath, long lastModified) {
+        if (lastModified == 0L) {
+            return null;
+        }
+
+        EntryStore listing = listingCache == null
+                ? null
+                : listingCache.take(realPath, lastModified);
+        if (listing == null && snapshot != null) {
+            listing = snapshot.listing(realPath, lastModified);
+        }
+
+        return listing;
+    }
+
+    /**
+     * Подготовка сверки размеров поддиректорий директории, заполненной
+     * из кэша или снимка. Вызывается под блокировкой дерева: пока
+     * сверка идет, директория считается заполняемой, поэтому изменения
+     * с диска ждут ее завершения, а <code>ls</code> выводит объекты
+     * через канал.
+     *
+     * @param fileTree файловое дерево
+     * @param node     заполненная директория
+     * @return состояние сверки для <code>revalidateSizes</code>
+     */
+    private ScanState startRevalidation(FileTree fileTree, Node node) {
+        CancellationToken token = CancellationToken.withTimeout(SECONDS.toMillis(SCAN_TIMEOUT));
+        fileTree.startRevalidation(node, token);
+        ScanState state = new ScanState(new File(node.getRealPath()), node, token, null);
+        // директория из кэша или снимка тоже получает предварительное чтение поддиректорий
+        schedulePrefetch(fileTree, state);
+        fileTree.setChannel(node, state.channel);
+        fileTree.setScan(node, state.scan);
+
+        return state;
+    }
+
+    /**
+     * Сверка размеров поддиректорий в фоне. Время изменения самой
+     * поддиректории не говорит об изменениях глубже, поэтому размер каждой
+     * поддиректории сверяется по всему поддереву: <code>SizeCalculator</code>
+     * читает заново только директории с другим временем изменения,
+     * а остальные берет из кэша. Объекты сразу передаются в канал,
+     * поддиректории без размера, пока он не подтвержден. Если очередь
+     * исполнителя заполнена, метод ждет свободного места, поэтому
+     * вызывается без блокировки дерева.
+     *
+     * @param fileTree файловое дерево
+     * @param state    состояние сверки, подготовленное <code>startRevalidation</code>
+     */
+    private void revalidateSizes(FileTree fileTree, ScanState state) {
+        Node node = state.node;
+        List<FileInfo> folders = new ArrayList<>();
+        List<Integer> indexes = new ArrayList<>();
+
+        // объекты директории не изменяются, пока сверка не завершена
+        EntryStore.Cursor cursor = fileTree.entries(node).cursor();
+        while (cursor.next()) {
+            FileInfo fileInfo = cursor.toFileInfo();
+            if (fileInfo.getType() == DIR) {
+                fileInfo.setFileSize(UNKNOWN_SIZE);
+                folders.add(fileInfo);
+                indexes.add(cursor.getIndex());
+            }
+            state.channel.publish(fileInfo);
+        }
+        if (folders.isEmpty()) {
+            state.finish();
+            return;
+        }
+
+        // последняя выполненная задача завершает сверку
+        AtomicInteger remaining = new AtomicInteger(folders.size());
+        Runnable done = () -> {
+            if (remaining.decrementAndGet() == 0) {
+                state.finish();
+            }
+        };
+        for (int i = 0; i < folders.size(); i++) {
+            FileInfo fileInfo = folders.get(i);
+            int index = indexes.get(i);
+            try {
+                scanExecutor.submit(() -> {
+                    try {
+                        revalidateSize(fileTree, state, index, fileInfo);
+                    } finally {
+                        done.run();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // исполнитель остановлен, размер остается прежним
+                state.incomplete.set(true);
+                done.run();
+            }
+        }
+    }
+
+    /**
+     * Сверка размера одной поддиректории.
+     *
+     * @param fileTree файловое дерево
+     * @param state    состояние сверки
+     * @param index    номер поддиректории в объектах директории
+     * @param fileInfo поддиректория, переданная в канал без размера
+     */
+    private void revalidateSize(FileTree fileTree, ScanState state, int index, FileInfo fileInfo) {
+        Path folder = of(state.node.getRealPath(), fileInfo.getName());
+        DirectorySize size = state.token.isCancelled()
+                ? null
+                : sizeCalculator.calculate(folder, state.token);
+        if (size == null) {
+            // сверка отменена или файловая система не отвечает
+            state.incomplete.set(true);
+        }
+        if (size == null || !Files.isDirectory(folder)) {
+            // остается прежний размер, а удаленную поддиректорию обработает отслеживание или refresh
+            synchronized (fileTree) {
+                fileInfo.setFileSize(fileTree.entries(state.node).getFileSize(index));
+            }
+            state.channel.update(fileInfo);
+            return;
+        }
+
+        synchronized (fileTree) {
+            fileTree.setEntrySize(state.node, index, size.getSize());
+        }
+        fileInfo.setFileSize(size.getSize());
+        state.channel.update(fileInfo);
+    }
+
+    /**
+     * Разбор способа обхода директорий без учета регистра.
+     *
+     * @param name название способа
+     * @return способ обхода или <code>POOL</code>, если способ неизвестен
+     */
+    private static ScannerBackend scannerBackend(String name) {
+        try {
+            return ScannerBackend.valueOf(name.strip().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            err.println(String.format(UNKNOWN_BACKEND, name));
+            return POOL;
+        }
+    }
+
+    /**
+     * Получение времени изменения директории.
+     *
+     * @param path путь директории
+     * @return время изменения в наносекундах или 0, если директория недоступна
+     */
+    private static long lastModified(String path) {
+        try {
+            return Files.getLastModifiedTime(of(path)).to(NANOSECONDS);
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+
+    /**
+     * Подготовка заполнения директории. Вызывается под блокировкой
+     * дерева: директория сразу отмечается как заполняемая, а объекты
+     * читаются и передаются исполнителю уже без блокировки.
+     *
+     * @param folder   директория
+     * @param fileTree файловое дерево
+     * @param target   директория файлового дерева
+     * @return состояние заполнения для <code>listAllFiles</code>
+     */
+    private ScanState startScan(File folder, FileTree fileTree, Node target) {
+        CancellationToken token = CancellationToken.withTimeout(SECONDS.toMillis(SCAN_TIMEOUT));
+        Node node = fileTree.startScan(target, token);
+        ScanState state = new ScanState(folder, node, token,
+                timedReader != null && timedReader.isRemote(folder.toPath()) ? timedReader : null);
+        if (directoryWatcher != null) {
+            // регистрация до чтения, чтобы не пропустить изменения во время заполнения
+            directoryWatcher.watch(node);
+        }
+        schedulePrefetch(fileTree, state);
+        fileTree.setChannel(node, state.channel);
+        fileTree.setScan(node, state.scan);
+
+        return state;
+    }
+
+    /**
+     * Предварительное чтение поддиректорий после завершения заполнения
+     * или сверки размеров директории, когда размеры поддиректорий известны.
+     *
+     * @param fileTree файловое дерево
+     * @param state    состояние заполнения или сверки
+     */
+    private void schedulePrefetch(FileTree fileTree, ScanState state) {
+        if (prefetcher == null) {
+            return;
+        }
+
+        long generation = prefetcher.generation();
+        state.scan.thenRun(() -> prefetcher.submit(generation,
+                taskGeneration -> prefetchChildren(fileTree, state.node, taskGeneration)));
+    }
+
+    /**
+     * Занесение всех объектов директории в файловое дерево
+     * с помощью пула потоков или виртуальных потоков. Заполнение
+     * ограничено сроком и может быть отменено, тогда директория
+     * отмечается как заполненная не полностью. Если очередь исполнителя
+     * заполнена, метод ждет свободного места, поэтому вызывается
+     * без блокировки дерева.
+     *
+     * @param state состояние заполнения, подготовленное <code>startScan</code>
+     */
+    private void listAllFiles(ScanState state) {
+        Node node = state.node;
+        File[] files = listFiles(state.folder, state);
+        if (files == null || files.length == 0) {
+            state.finish();
+            return;
+        }
+
+        // передает задачи исполнителю, последняя выполненная завершает заполнение
+        AtomicInteger remaining = new AtomicInteger(files.length);
+        Runnable done = () -> {
+            if (remaining.decrementAndGet() == 0) {
+                state.finish();
+            }
+        };
+        for (File file : files) {
+            try {
+                scanExecutor.submit(() -> {
+                    try {
+                        appendElement(file, node, state.channel, state);
+                    } finally {
+                        done.run();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // исполнитель остановлен или отправка прервана, объект не будет прочитан
+                state.incomplete.set(true);
+                done.run();
+            }
+        }
+    }
+
+    /**
+     * Предварительное чтение самых больших поддиректорий заполненной
+     * директории, чтобы переход в них не ждал заполнения. Поддиректории
+     * читаются по очереди в одном фоновом потоке, пока не исчерпан лимит
+     * объектов или пользователь не перешел в другую директорию.
+     * Размеры их поддиректорий обычно уже есть в кэше после заполнения директории.
+     * Поддиректория на сетевой файловой системе читается с ограничением
+     * времени, и если она не отвечает, чтение прекращается.
+     *
+     * @param fileTree   файловое дерево
+     * @param parent     заполненная директория
+     * @param generation поколение задачи для проверки отмены
+     */
+    private void prefetchChildren(FileTree fileTree, Node parent, long generation) {
+        int budget = PREFETCH_MAX_ENTRIES;
+        for (String name : fileTree.largestDirectories(parent, PREFETCH_DIRECTORIES)) {
+            if (prefetcher.isCancelled(generation)) {
+                return;
+            }
+
+            File folder = new File(parent.getRealPath(), name);
+            if (listingCache != null && listingCache.contains(folder.getPath())
+                    || snapshot != null && snapshot.hasListing(folder.getPath())) {
+                // поддиректория уже прочитана при подсчете размера или в прошлый запуск
+                continue;
+            }
+
+            TimedAttributeReader reader = timedReader != null && timedReader.isRemote(folder.toPath())
+                    ? timedReader
+                    : null;
+            long lastModified;
+            File[] files;
+            try {
+                lastModified = reader == null
+                        ? lastModified(folder.getPath())
+                        : reader.readBasic(folder.toPath()).lastModifiedTime().to(NANOSECONDS);
+                files = reader == null ? folder.listFiles() : reader.list(folder);
+            } catch (IOException e) {
+                continue;
+            } catch (TimeoutException e) {
+                // потоки чтения не должны зависать на файловой системе, которая не отвечает
+                return;
+            }
+            if (files == null || files.length > budget) {
+                continue;
+            }
+            budget -= files.length;
+
+            String realPath;
+            try {
+                realPath = folder.toPath().toRealPath().toString();
+            } catch (IOException e) {
+                continue;
+            }
+
+            // поддиректория добавляется в дерево, только если прочитана полностью
+            Node node = fileTree.newNode(parent, name, realPath);
+            node.setLastModified(lastModified);
+            if (!prefetchDirectory(node, files, reader, generation)) {
+                return;
+            }
+            if (fileTree.attachNode(parent, node) && directoryWatcher != null) {
+                directoryWatcher.watch(node);
+            }
+        }
+    }
+
+    /**
+     * Заполнение поддиректории в фоновом потоке. Как и при заполнении,
+     * в локальной директории по времени ограничивается чтение объекта,
+     * который является точкой монтирования сетевой файловой системы.
+     *
+     * @param node       поддиректория, готовая к заполнению
+     * @param files      объекты поддиректории
+     * @param reader     чтение с ограничением времени или <code>null</code> для локальной поддиректории
+     * @param generation поколение задачи для проверки отмены
+     * @return <code>false</code> если чтение отменено или файловая система не отвечает
+     */
+    private boolean prefetchDirectory(Node node, File[] files, TimedAttributeReader reader, long generation) {
+        for (File file : files) {
+            if (prefetcher.isCancelled(generation)) {
+                return false;
+            }
+
+            TimedAttributeReader entryReader = reader != null || timedReader == null
+                    ? reader
+                    : timedReader.isRemoteMount(file.toPath()) ? timedReader : null;
+            EntryAttributes attributes;
+            try {
+                attributes = entryReader == null
+                        ? EntryAttributes.read(file.toPath())
+                        : entryReader.read(file.toPath());
+            } catch (IOException e) {
+                continue;
+            } catch (TimeoutException e) {
+                // неполная поддиректория не добавляется в дерево
+                return false;
+            }
+
+            FileInfo fileInfo = toFileInfo(file, attributes);
+            if (fileInfo.getType() == DIR) {
+                fileInfo.setFileSize(sizeCalculator.calculate(file.toPath()).getSize());
+            }
+            node.addEntry(fileInfo);
+            node.addSyscallsSaved(SEPARATE_SYSCALLS - attributes.getSyscalls());
+        }
+        node.seal();
+
+        return true;
+    }
+
+    /**
+     * Применение изменения на диске к заполненной директории файлового дерева.
+     * Изменение применяется после завершения заполнения директории.
+     * Если во время обработки началось новое заполнение, изменение
+     * пропускается, т.к. новое заполнение его уже учтет.
+     *
+     * @param fileTree файловое дерево
+     * @param node     директория файлового дерева
+     * @param kind     вид изменения
+     * @param entry    путь измененного объекта
+     */
+    private void applyChange(FileTree fileTree, Node node, WatchEvent.Kind<?> kind, Path entry) {
+        node.getScan().join();
+        node.setLastModified(lastModified(node.getRealPath()));
+
+        // размеры поддеревьев выше изменения больше не актуальны
+        forgetSizes(of(node.getRealPath()));
+
+        if (kind == OVERFLOW) {
+            reconcile(fileTree, node);
+            return;
+        }
+        if (kind == ENTRY_DELETE) {
+            synchronized (fileTree) {
+                if (node.getScan().isDone()) {
+                    fileTree.removeEntry(node, entry.getFileName().toString());
+                }
+            }
+            return;
+        }
+
+        FileInfo fileInfo = readChangedEntry(fileTree, entry.toFile());
+        if (fileInfo == null) {
+            // объект уже удален или его размер поддерживается отдельно
+            return;
+        }
+        synchronized (fileTree) {
+            if (node.getScan().isDone()) {
+                fileTree.putEntry(node, fileInfo);
+            }
+        }
+    }
+
+    /**
+     * Сверка заполненной директории с диском, если часть изменений потеряна.
+     *
+     * @param fileTree файловое дерево
+     * @param node     директория файлового дерева
+     */
+    private void reconcile(FileTree fileTree, Node node) {
+        File[] files = new File(node.getRealPath()).listFiles();
+        if (files == null) {
+            return;
+        }
+
+        Set<String> names = new HashSet<>();
+        for (File file : files) {
+            names.add(file.getName());
+            FileInfo fileInfo = readChangedEntry(fileTree, file);
+            if (fileInfo != null) {
+                synchronized (fileTree) {
+                    if (node.getScan().isDone()) {
+                        fileTree.putEntry(node, fileInfo);
+                    }
+                }
+            }
+        }
+
+        synchronized (fileTree) {
+            if (node.getScan().isDone()) {
+                fileTree.retainEntries(node, names);
+            }
+        }
+    }
+
+    /**
+     * Чтение созданного или измененного объекта. Размер поддиректории,
+     * которая сама есть в файловом дереве, не пересчитывается: он
+     * изменяется при изменениях внутри нее.
+     *
+     * @param fileTree файловое дерево
+     * @param file     файл/папка
+     * @return объект с посчитанным размером или <code>null</code>,
+     *         если объект недоступен или пересчитывать его не нужно
+     */
+    private FileInfo readChangedEntry(FileTree fileTree, File file) {
+        EntryAttributes attributes;
+        try {
+            attributes = EntryAttributes.read(file.toPath());
+        } catch (IOException e) {
+            return null;
+        }
+
+        FileInfo fileInfo = toFileInfo(file, attributes);
+        if (fileInfo.getType() == DIR) {
+            if (fileTree.findNode(file.getPath()) != null) {
+                return null;
+            }
+            fileInfo.setFileSize(sizeCalculator.calculate(file.toPath()).getSize());
+        }
+
+        return fileInfo;
+    }
+
+    /**
+     * Чтение списка объектов директории, на сетевой файловой
+     * системе с ограничением времени.
+     *
+     * @param folder директория
+     * @param state  состояние заполнения
+     * @return объекты директории или <code>null</code>, если их не удалось прочитать
+     */
+    private static File[] listFiles(File folder, ScanState state) {
+        if (state.timedReader == null) {
+            return folder.listFiles();
+        }
+
+        try {
+            return state.timedReader.list(folder);
+        } catch (TimeoutException e) {
+            state.incomplete.set(true);
+            return null;
+        }
+    }
+
+    /**
+     * Добавление элемента в текущую директорию файлового дерева.
+     * Объект сразу передается в канал, а размер директории
+     * передается отдельно, когда будет посчитан. Объект, аттрибуты
+     * которого не прочитаны вовремя, добавляется с неизвестным размером,
+     * а после отмены заполнения объекты больше не добавляются. В локальной
+     * директории по времени ограничивается чтение объекта, который является
+     * точкой монтирования сетевой файловой системы.
+     *
+     * @param file файл/папка для добавления
+     * @param node директория файлового дерева
+     * @param channel канал объектов директории
+     * @param state   состояние заполнения
+     */
+    private void appendElement(File file, Node node, ScanChannel channel, ScanState state) {
+        if (state.token.isCancelled()) {
+            state.incomplete.set(true);
+            return;
+        }
+
+        TimedAttributeReader reader = state.timedReader != null || timedReader == null
+                ? state.timedReader
+                : timedReader.isRemoteMount(file.toPath()) ? timedReader : null;
+        EntryAttributes attributes;
+        try {
+            attributes = readAttributes(file, reader, state);
+        } catch (TimeoutException e) {
+            // объект недоступен, например, на зависшей сетевой файловой системе
+            state.incomplete.set(true);
+            FileInfo fileInfo = FileInfo.unknown(file.toPath(), file.getName(), typeClassifier);
+            node.addEntry(fileInfo);
+            channel.publish(fileInfo);
+            return;
+        } catch (IOException e) {
+            // объект удален во время заполнения или нет доступа
+            return;
+        }
+
+        FileInfo fileInfo = toFileInfo(file, attributes);
+        long reference = node.addEntry(fileInfo);
+        node.addSyscallsSaved(SEPARATE_SYSCALLS - attributes.getSyscalls());
+        channel.publish(fileInfo);
+
+        if (fileInfo.getType() == DIR) {
+            DirectorySize size = reader != null && state.degraded.get()
+                    ? null
+                    : sizeCalculator.calculate(file.toPath(), state.token);
+            if (size == null) {
+                // подсчет отменен, или файловая система перестала отвечать
+                state.incomplete.set(true);
+                return;
+            }
+            fileInfo.setFileSize(size.getSize());
+
+            node.setEntrySize(reference, size.getSize());
+            channel.update(fileInfo);
+        }
+    }
+
+    /**
+     * Чтение аттрибутов объекта. После первого превышения времени
+     * аттрибуты остальных объектов директории не читаются, чтобы
+     * не занимать потоки, которые зависнут так же.
+     *
+     * @param file   файл/папка
+     * @param reader чтение с ограничением времени или <code>null</code> для локального объекта
+     * @param state  состояние заполнения
+     * @return аттрибуты объекта
+     * @throws IOException      если объект недоступен
+     * @throws TimeoutException если чтение не уложилось в срок
+     */
+    private static EntryAttributes readAttributes(File file, TimedAttributeReader reader, ScanState state)
+            throws IOException, TimeoutException {
+
+        if (reader == null) {
+            return EntryAttributes.read(file.toPath());
+        }
+        if (state.degraded.get()) {
+            throw new TimeoutException();
+        }
+
+        try {
+            return reader.read(file.toPath());
+        } catch (TimeoutException e) {
+            state.degraded.set(true);
+            throw e;
+        }
+    }
+
+    /**
+     * Создание объекта для отображения по аттрибутам. Размер директории
+     * не считается и равен <code>UNKNOWN_SIZE</code>.
+     *
+     * @param file       файл/папка
+     * @param attributes аттрибуты объекта
+     * @return объект с корректными параметрами для отображения
+     */
+    private FileInfo toFileInfo(File file, EntryAttributes attributes) {
+        return FileInfo.of(file.toPath(), file.getName(), attributes, typeClassifier);
+    }
+
+    /**
+     * Состояние одного заполнения директории.
+     */
+    private static final class ScanState {
+
+        /** Директория на диске. */
+        private final File folder;
+
+        /** Директория файлового дерева, в которую добавляются объекты. */
+        private final Node node;
+
+        /** Признак отмены заполнения. */
+        private final CancellationToken token;
+
+        /** Чтение с ограничением времени или <code>null</code> для локальной директории. */
+        private final TimedAttributeReader timedReader;
+
+        /** Часть объектов не прочитана или без размера из-за отмены или превышения времени. */
+        private final AtomicBoolean incomplete = new AtomicBoolean();
+
+        /** Чтение аттрибутов уже не уложилось в срок. */
+        private final AtomicBoolean degraded = new AtomicBoolean();
+
+        /** Канал объектов, найденных во время заполнения. */
+        private final ScanChannel channel = new ScanChannel();
+
+        /** Завершение заполнения всеми объектами. */
+        private final CompletableFuture<Void> scan = new CompletableFuture<>();
+
+        private ScanState(File folder, Node node, CancellationToken token, TimedAttributeReader timedReader) {
+            this.folder = folder;
+            this.node = node;
+            this.token = token;
+            this.timedReader = timedReader;
+        }
+
+        /**
+         * Завершение заполнения или сверки: объекты переносятся
+         * в хранилище директории, а канал закрывается.
+         */
+        private void finish() {
+            node.setPartial(incomplete.get());
+            node.seal();
+            channel.close();
+            scan.complete(null);
+        }
+    }
+
+    /**
+     * Объект заполненной директории файлового дерева, размер которого
+     * изменяется при копировании, перемещении или удалении пути. Если
+     * директории пути нет в дереве, то это поддиректория ближайшей
+     * директории выше, которая есть в дереве: у нее изменяется только размер.
+     */
+    private static final class EntryRef {
+
+        /** Ближайшая директория файлового дерева, которая содержит путь. */
+        private final Node node;
+
+        /** Имя объекта директории, который содержит путь. */
+        private final String name;
+
+        /** Объект является самим путем, а не директорией выше. */
+        private final boolean direct;
+
+        private EntryRef(Node node, String name, boolean direct) {
+            this.node = node;
+            this.name = name;
+            this.direct = direct;
+        }
+
+        /**
+         * Поиск ближайшей директории файлового дерева, которая содержит путь.
+         *
+         * @param fileTree файловое дерево
+         * @param path     реальный путь
+         * @return объект или <code>null</code>, если ни одной директории выше нет в дереве
+         */
+        private static EntryRef locate(FileTree fileTree, Path path) {
+            for (Path child = path, parent = path.getParent();
+                 parent != null;
+                 child = parent, parent = parent.getParent()) {
+
+                Node node = fileTree.findNode(parent.toString());
+                if (node != null) {
+                    return new EntryRef(node, child.getFileName().toString(), child == path);
+                }
+            }
+
+            return null;
+        }
+
+        /**
+         * Изменение размера объекта и всех директорий выше.
+         *
+         * @param fileTree файловое дерево
+         * @param delta    изменение размера
+         */
+        private void addSize(FileTree fileTree, long delta) {
+            if (delta == 0) {
+                return;
+            }
+            synchronized (fileTree) {
+                if (node.getScan().isDone()) {
+                    fileTree.addEntrySize(node, name, delta);
+                }
+            }
+        }
+
+        /**
+         * Добавление или замена объекта, если он находится прямо в директории,
+         * иначе увеличение размера поддиректории, которая его содержит.
+         *
+         * @param fileTree файловое дерево
+         * @param fileInfo объект
+         */
+        private void put(FileTree fileTree, FileInfo fileInfo) {
+            if (!direct) {
+                addSize(fileTree, fileInfo.getFileSize());
+                return;
+            }
+            synchronized (fileTree) {
+                if (node.getScan().isDone()) {
+                    fileTree.putEntry(node, fileInfo);
+                }
+            }
+        }
+
+        /**
+         * Удаление объекта, который находится прямо в директории.
+         *
+         * @param fileTree файловое дерево
+         */
+        private void remove(FileTree fileTree) {
+            synchronized (fileTree) {
+                if (node.getScan().isDone()) {
+                    fileTree.removeEntry(node, name);
+                }
+            }
+        }
     }
 }
@@ -0,0 +1,77 @@
+package ru.develonica.model;
+
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Признак отмены заполнения директории, который проверяют все задачи
+ * заполнения и подсчета размера между отдельными объектами. Заполнение
+ * отменяется явно или когда истекает его срок. Задачи, которые уже ждут
+ * системного вызова, отмена не прерывает, но следующие объекты они
+ * уже не обрабатывают.
+ */
+public final class CancellationToken {
+
+    /** Признак заполнения без срока. */
+    private static final long NO_DEADLINE = 0L;
+
+    /** Срок по <code>System.nanoTime</code> или <code>NO_DEADLINE</code>. */
+    private final long deadline;
+
+    /** Признак отмены. */
+    private volatile boolean cancelled;
+
+    /** Заполнение без срока, которое отменяется только явно. */
+    public CancellationToken() {
+        this.deadline = NO_DEADLINE;
+    }
+
+    private CancellationToken(long deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * Создание признака отмены со сроком.
+     *
+     * @param timeoutMillis срок в миллисекундах, 0 без срока
+     * @return признак отмены
+     */
+    public static CancellationToken withTimeout(long timeoutMillis) {
+        if (timeoutMillis <= 0) {
+            return new CancellationToken();
+        }
+
+        // 0 зарезервирован для заполнения без срока
+        long deadline = nanoTime() + MILLISECONDS.toNanos(timeoutMillis);
+        return new CancellationToken(deadline == NO_DEADLINE ? 1L : deadline);
+    }
+
+    /** Отмена заполнения. */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Проверка отмены.
+     *
+     * @return <code>true</code> если заполнение отменено или истек его срок
+     */
+    public boolean isCancelled() {
+        if (!cancelled && deadline != NO_DEADLINE && nanoTime() - deadline >= 0) {
+            cancelled = true;
+        }
+
+        return cancelled;
+    }
+
+    /**
+     * Время до истечения срока.
+     *
+     * @return время в наносекундах или <code>Long.MAX_VALUE</code>, если срока нет
+     */
+    public long remainingNanos() {
+        return deadline == NO_DEADLINE
+                ? Long.MAX_VALUE
+                : Math.max(deadline - nanoTime(), 0L);
+    }
+}
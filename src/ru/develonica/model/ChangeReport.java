@@ -0,0 +1,45 @@
+package ru.develonica.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Результат обновления директории: добавленные, удаленные
+ * и измененные объекты. Объекты поддиректорий записываются
+ * с путем относительно обновленной директории.
+ */
+public class ChangeReport {
+
+    /** Добавленные объекты. */
+    private final List<String> added = new ArrayList<>();
+
+    /** Удаленные объекты. */
+    private final List<String> removed = new ArrayList<>();
+
+    /** Измененные объекты. */
+    private final List<String> changed = new ArrayList<>();
+
+    public void added(String name) {
+        added.add(name);
+    }
+
+    public void removed(String name) {
+        removed.add(name);
+    }
+
+    public void changed(String name) {
+        changed.add(name);
+    }
+
+    public List<String> getAdded() {
+        return added;
+    }
+
+    public List<String> getRemoved() {
+        return removed;
+    }
+
+    public List<String> getChanged() {
+        return changed;
+    }
+}
@@ -0,0 +1,46 @@
+package ru.develonica.model;
+
+/**
+ * Данные одной директории без содержимого ее поддиректорий: размер
+ * и количество ее собственных объектов и имена поддиректорий.
+ * Данные актуальны, пока не изменилось время изменения директории,
+ * а итог поддерева складывается из таких данных всех его директорий,
+ * поэтому изменение на любой глубине не остается незамеченным.
+ */
+public final class DirectoryLevel {
+
+    /** Размер файлов директории в байтах. */
+    private final long size;
+
+    /** Количество объектов директории, включая поддиректории. */
+    private final long objects;
+
+    /** Время изменения директории, на момент которого прочитаны данные. */
+    private final long lastModified;
+
+    /** Имена поддиректорий. */
+    private final String[] subFolders;
+
+    public DirectoryLevel(long size, long objects, long lastModified, String[] subFolders) {
+        this.size = size;
+        this.objects = objects;
+        this.lastModified = lastModified;
+        this.subFolders = subFolders;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getObjects() {
+        return objects;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public String[] getSubFolders() {
+        return subFolders;
+    }
+}
@@ -0,0 +1,34 @@
+package ru.develonica.model;
+
+/**
+ * Итоговые данные поддерева директории.
+ */
+public final class DirectorySize {
+
+    /** Размер всех файлов поддерева в байтах. */
+    private final long size;
+
+    /** Количество всех объектов поддерева. */
+    private final long objects;
+
+    /** Время изменения директории, на момент которого посчитаны данные. */
+    private final long lastModified;
+
+    public DirectorySize(long size, long objects, long lastModified) {
+        this.size = size;
+        this.objects = objects;
+        this.lastModified = lastModified;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getObjects() {
+        return objects;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+}
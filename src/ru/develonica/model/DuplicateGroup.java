@@ -0,0 +1,38 @@
+package ru.develonica.model;
+
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Группа файлов с одинаковым содержимым.
+ */
+public class DuplicateGroup {
+
+    /** Размер каждого файла группы. */
+    private final long size;
+
+    /** Файлы группы. */
+    private final List<Path> paths;
+
+    public DuplicateGroup(long size, List<Path> paths) {
+        this.size = size;
+        this.paths = paths;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public List<Path> getPaths() {
+        return paths;
+    }
+
+    /**
+     * Место, которое занимают лишние копии.
+     *
+     * @return размер всех файлов группы, кроме одного
+     */
+    public long getWasted() {
+        return size * (paths.size() - 1);
+    }
+}
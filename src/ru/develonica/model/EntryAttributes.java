@@ -0,0 +1,231 @@
+package ru.develonica.model;
+
+import com.sun.security.auth.module.UnixSystem;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+
+import static java.nio.file.Files.isExecutable;
+import static java.nio.file.Files.isReadable;
+import static java.nio.file.Files.isWritable;
+import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Аттрибуты объекта директории, прочитанные одним системным вызовом.
+ * Права на чтение, запись и выполнение вычисляются по битам прав доступа
+ * и идентификаторам текущего пользователя, а не отдельными проверками.
+ */
+public final class EntryAttributes {
+
+    /** Аттрибуты, которые читаются за один вызов. */
+    private static final String UNIX_ATTRIBUTES = "unix:mode,ino,uid,gid,size,lastModifiedTime,isDirectory,isSymbolicLink";
+
+    /**
+     * Количество системных вызовов на объект при раздельных проверках:
+     * тип, размер и три проверки прав.
+     */
+    public static final int SEPARATE_SYSCALLS = 6;
+
+    /** Маски битов прав доступа владельца. */
+    private static final int READ = 4;
+    private static final int WRITE = 2;
+    private static final int EXECUTE = 1;
+    private static final int ANY_EXECUTE = 0111;
+
+    /** Маска типа объекта в битах прав доступа и тип обычного файла. */
+    private static final int TYPE_MASK = 0170000;
+    private static final int REGULAR_FILE = 0100000;
+
+    /** Идентификатор пользователя суперпользователя. */
+    private static final long ROOT_UID = 0L;
+
+    /** Текущий пользователь, или <code>null</code>, если система не unix. */
+    private static final UnixSystem CURRENT_USER = currentUser();
+
+    /** Признак директории. */
+    private final boolean directory;
+
+    /** Признак обычного файла. */
+    private final boolean regularFile;
+
+    /** Признак символьной ссылки. */
+    private final boolean symbolicLink;
+
+    /** Размер объекта. */
+    private final long size;
+
+    /** Время изменения объекта в наносекундах. */
+    private final long lastModified;
+
+    /** Номер индексного дескриптора объекта или 0, если он неизвестен. */
+    private final long inode;
+
+    /** Права на чтение, запись и выполнение. */
+    private final Boolean[] attribute;
+
+    /** Количество системных вызовов, которые понадобились для чтения. */
+    private final int syscalls;
+
+    private EntryAttributes(boolean directory, boolean regularFile, boolean symbolicLink, long size,
+                            long lastModified, long inode, Boolean[] attribute, int syscalls) {
+        this.directory = directory;
+        this.regularFile = regularFile;
+        this.symbolicLink = symbolicLink;
+        this.size = size;
+        this.lastModified = lastModified;
+        this.inode = inode;
+        this.attribute = attribute;
+        this.syscalls = syscalls;
+    }
+
+    /**
+     * Чтение аттрибутов объекта. Для символьной ссылки тип, размер, права
+     * и время изменения берутся у объекта, на который она указывает,
+     * для этого нужен еще один вызов. Ссылка, которая никуда не указывает,
+     * описывается аттрибутами самой ссылки.
+     *
+     * @param path путь объекта
+     * @return аттрибуты объекта
+     * @throws IOException если объект недоступен
+     */
+    public static EntryAttributes read(Path path) throws IOException {
+        if (CURRENT_USER == null) {
+            return readSeparately(path);
+        }
+
+        Map<String, Object> attributes;
+        try {
+            attributes = Files.readAttributes(path, UNIX_ATTRIBUTES, NOFOLLOW_LINKS);
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            // файловая система без unix аттрибутов
+            return readSeparately(path);
+        }
+        int syscalls = 1;
+        boolean symbolicLink = (Boolean) attributes.get("isSymbolicLink");
+        long inode = (Long) attributes.get("ino");
+        if (symbolicLink) {
+            syscalls++;
+            try {
+                attributes = Files.readAttributes(path, UNIX_ATTRIBUTES);
+            } catch (IOException e) {
+                // ссылка никуда не указывает
+            }
+        }
+        boolean directory = (Boolean) attributes.get("isDirectory");
+
+        int mode = (Integer) attributes.get("mode");
+        long uid = (Integer) attributes.get("uid");
+        long gid = (Integer) attributes.get("gid");
+        int bits = permissionBits(mode, uid, gid);
+        Boolean[] attribute = {CURRENT_USER.getUid() == ROOT_UID || (bits & READ) != 0,
+                CURRENT_USER.getUid() == ROOT_UID || (bits & WRITE) != 0,
+                CURRENT_USER.getUid() == ROOT_UID
+                        ? directory || (mode & ANY_EXECUTE) != 0
+                        : (bits & EXECUTE) != 0};
+
+        return new EntryAttributes(directory,
+                (mode & TYPE_MASK) == REGULAR_FILE,
+                symbolicLink,
+                (Long) attributes.get("size"),
+                ((FileTime) attributes.get("lastModifiedTime")).to(NANOSECONDS),
+                inode,
+                attribute,
+                syscalls);
+    }
+
+    /**
+     * Чтение аттрибутов отдельными вызовами, если система не поддерживает
+     * unix аттрибуты. Обычным файлом считается любой объект, кроме директории.
+     *
+     * @param path путь объекта
+     * @return аттрибуты объекта
+     * @throws IOException если объект недоступен
+     */
+    private static EntryAttributes readSeparately(Path path) throws IOException {
+        boolean directory = Files.isDirectory(path);
+        Boolean[] attribute = {isReadable(path), isWritable(path), isExecutable(path)};
+
+        return new EntryAttributes(directory,
+                !directory,
+                Files.isSymbolicLink(path),
+                directory ? 0L : Files.size(path),
+                Files.getLastModifiedTime(path).to(NANOSECONDS),
+                0L,
+                attribute,
+                SEPARATE_SYSCALLS);
+    }
+
+    /**
+     * Выбор битов прав доступа, которые относятся к текущему пользователю:
+     * владельца, группы или остальных.
+     *
+     * @param mode биты прав доступа объекта
+     * @param uid  владелец объекта
+     * @param gid  группа объекта
+     * @return три бита прав чтения, записи и выполнения
+     */
+    private static int permissionBits(int mode, long uid, long gid) {
+        if (CURRENT_USER.getUid() == uid) {
+            return (mode >> 6) & 07;
+        }
+        if (CURRENT_USER.getGid() == gid) {
+            return (mode >> 3) & 07;
+        }
+        for (long group : CURRENT_USER.getGroups()) {
+            if (group == gid) {
+                return (mode >> 3) & 07;
+            }
+        }
+
+        return mode & 07;
+    }
+
+    /**
+     * Получение идентификаторов текущего пользователя.
+     *
+     * @return текущий пользователь или <code>null</code>, если система не unix
+     */
+    private static UnixSystem currentUser() {
+        try {
+            return new UnixSystem();
+        } catch (LinkageError | RuntimeException e) {
+            return null;
+        }
+    }
+
+    public boolean isDirectory() {
+        return directory;
+    }
+
+    public boolean isRegularFile() {
+        return regularFile;
+    }
+
+    public boolean isSymbolicLink() {
+        return symbolicLink;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public long getInode() {
+        return inode;
+    }
+
+    public Boolean[] getAttribute() {
+        return attribute;
+    }
+
+    public int getSyscalls() {
+        return syscalls;
+    }
+}
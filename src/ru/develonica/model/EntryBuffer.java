@@ -0,0 +1,126 @@
+package ru.develonica.model;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.util.Arrays.copyOf;
+
+/**
+ * Буфер объектов директории, в который одновременно пишут потоки
+ * заполнения без общей блокировки. Поток резервирует номер ячейки
+ * атомарным счетчиком и пишет только в свою ячейку. Ячейки лежат
+ * в сегментах постоянного размера, а новые сегменты публикуются
+ * заменой массива сегментов через CAS, поэтому выданные ячейки
+ * никогда не переезжают. После заполнения объекты переносятся
+ * в хранилище директории.
+ */
+public class EntryBuffer {
+
+    /** Степень двойки количества ячеек в сегменте. */
+    private static final int SEGMENT_SHIFT = 8;
+
+    /** Количество ячеек в сегменте. */
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+
+    /** Маска номера ячейки внутри сегмента. */
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    /** Количество зарезервированных ячеек. */
+    private final AtomicInteger count = new AtomicInteger();
+
+    /** Сегменты по порядку, массив заменяется целиком при добавлении сегментов. */
+    private final AtomicReference<Segment[]> segments = new AtomicReference<>(new Segment[]{new Segment()});
+
+    /**
+     * Добавление объекта.
+     *
+     * @param fileInfo объект
+     * @return ссылка на объект для последующего изменения размера
+     */
+    public long append(FileInfo fileInfo) {
+        int index = count.getAndIncrement();
+        Segment segment = segment(index >>> SEGMENT_SHIFT);
+        int slot = index & SEGMENT_MASK;
+
+        segment.names[slot] = fileInfo.getName();
+        segment.sizes[slot] = fileInfo.getFileSize();
+        segment.modified[slot] = fileInfo.getLastModified();
+        segment.inodes[slot] = fileInfo.getInode();
+        segment.flags[slot] = EntryStore.flags(fileInfo);
+
+        return index;
+    }
+
+    /**
+     * Изменение размера добавленного объекта.
+     *
+     * @param reference ссылка на объект, полученная при добавлении
+     * @param fileSize  новый размер
+     */
+    public void setFileSize(long reference, long fileSize) {
+        int index = (int) reference;
+        segment(index >>> SEGMENT_SHIFT).sizes[index & SEGMENT_MASK] = fileSize;
+    }
+
+    /**
+     * Перенос всех объектов буфера в хранилище. Вызывается, когда
+     * все потоки закончили запись и их записи видны текущему потоку.
+     *
+     * @param entries хранилище директории
+     */
+    public void drainTo(EntryStore entries) {
+        Segment[] all = segments.get();
+        int total = count.get();
+        for (int index = 0; index < total; index++) {
+            Segment segment = all[index >>> SEGMENT_SHIFT];
+            int slot = index & SEGMENT_MASK;
+            entries.append(segment.names[slot], segment.sizes[slot], segment.modified[slot],
+                    segment.inodes[slot], segment.flags[slot]);
+        }
+    }
+
+    /**
+     * Получение сегмента с добавлением недостающих сегментов.
+     *
+     * @param number номер сегмента
+     * @return сегмент
+     */
+    private Segment segment(int number) {
+        while (true) {
+            Segment[] current = segments.get();
+            if (number < current.length) {
+                return current[number];
+            }
+
+            Segment[] grown = copyOf(current, Math.max(current.length * 2, number + 1));
+            for (int i = current.length; i < grown.length; i++) {
+                grown[i] = new Segment();
+            }
+            // при неудаче массив уже заменил другой поток, и сегмент будет в нем
+            if (segments.compareAndSet(current, grown)) {
+                return grown[number];
+            }
+        }
+    }
+
+    /**
+     * Сегмент ячеек буфера по столбцам, как в <code>EntryStore</code>.
+     */
+    private static final class Segment {
+
+        /** Имена объектов. */
+        private final String[] names = new String[SEGMENT_SIZE];
+
+        /** Размеры объектов. */
+        private final long[] sizes = new long[SEGMENT_SIZE];
+
+        /** Время изменения объектов в наносекундах. */
+        private final long[] modified = new long[SEGMENT_SIZE];
+
+        /** Номера индексных дескрипторов объектов. */
+        private final long[] inodes = new long[SEGMENT_SIZE];
+
+        /** Тип объекта и его права. */
+        private final byte[] flags = new byte[SEGMENT_SIZE];
+    }
+}
@@ -0,0 +1,746 @@
+package ru.develonica.model;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Arrays.copyOf;
+
+/**
+ * Компактное хранилище объектов одной директории по столбцам.
+ * Размеры, время изменения и номера индексных дескрипторов хранятся
+ * в массивах <code>long[]</code>, тип и права
+ * в массиве <code>byte[]</code>, а имена в общем массиве байт
+ * в кодировке UTF-8 со смещениями. Объекты читаются через
+ * <code>Cursor</code>, который не создает новых объектов на каждую строку.
+ * Поиск по имени идет по хэш-таблице номеров, а при удалении на место
+ * объекта переносится последний, поэтому обе операции не зависят
+ * от количества объектов.
+ */
+public class EntryStore {
+
+    /** Начальная вместимость хранилища. */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** Маска типа объекта в байте признаков. */
+    private static final int TYPE_MASK = 0x0F;
+
+    /** Сдвиг прав чтения, записи и выполнения в байте признаков. */
+    private static final int ATTRIBUTE_SHIFT = 4;
+
+    /** Маска прав в байте признаков после сдвига. */
+    private static final int ATTRIBUTE_MASK = 0x07;
+
+    /** Все типы объектов по порядковому номеру. */
+    private static final FileType[] TYPES = FileType.values();
+
+    /** Размеры объектов. */
+    private long[] sizes;
+
+    /** Время изменения объектов в наносекундах. */
+    private long[] modified;
+
+    /** Номера индексных дескрипторов объектов. */
+    private long[] inodes;
+
+    /** Тип объекта и его права. */
+    private byte[] flags;
+
+    /** Начало имени каждого объекта в <code>names</code>. */
+    private int[] nameStarts;
+
+    /** Конец имени каждого объекта в <code>names</code>. */
+    private int[] nameEnds;
+
+    /**
+     * Имена объектов в кодировке UTF-8. Имена удаленных объектов
+     * остаются в массиве, пока не займут больше его половины.
+     */
+    private byte[] names;
+
+    /** Занятая часть <code>names</code> вместе с именами удаленных объектов. */
+    private int namesLength;
+
+    /** Количество байт имен удаленных объектов. */
+    private int garbage;
+
+    /**
+     * Хэш-таблица с открытой адресацией: номер объекта плюс один
+     * или 0 для пустой ячейки. Строится при первом поиске по имени,
+     * т.к. во время заполнения директории поиск не нужен.
+     */
+    private int[] table;
+
+    /** Количество объектов. */
+    private int size;
+
+    public EntryStore() {
+        this.sizes = new long[INITIAL_CAPACITY];
+        this.modified = new long[INITIAL_CAPACITY];
+        this.inodes = new long[INITIAL_CAPACITY];
+        this.flags = new byte[INITIAL_CAPACITY];
+        this.nameStarts = new int[INITIAL_CAPACITY];
+        this.nameEnds = new int[INITIAL_CAPACITY];
+        this.names = new byte[INITIAL_CAPACITY * 16];
+    }
+
+    private EntryStore(int capacity) {
+        this.sizes = new long[capacity];
+        this.modified = new long[capacity];
+        this.inodes = new long[capacity];
+        this.flags = new byte[capacity];
+        this.nameStarts = new int[capacity];
+        this.nameEnds = new int[capacity];
+    }
+
+    /**
+     * Добавление объекта.
+     *
+     * @param fileInfo объект
+     * @return номер объекта в хранилище
+     */
+    public int append(FileInfo fileInfo) {
+        return append(fileInfo.getName(), fileInfo.getFileSize(), fileInfo.getLastModified(),
+                fileInfo.getInode(), flags(fileInfo));
+    }
+
+    /**
+     * Добавление объекта по отдельным столбцам.
+     *
+     * @param name         имя объекта
+     * @param fileSize     размер объекта
+     * @param lastModified время изменения объекта
+     * @param inode        номер индексного дескриптора объекта
+     * @param flag         тип объекта и его права, см. <code>flags</code>
+     * @return номер объекта в хранилище
+     */
+    int append(String name, long fileSize, long lastModified, long inode, byte flag) {
+        if (size == sizes.length) {
+            grow(size * 2);
+        }
+
+        byte[] bytes = name.getBytes(UTF_8);
+        int offset = namesLength;
+        if (offset + bytes.length > names.length) {
+            names = copyOf(names, Math.max(names.length * 2, offset + bytes.length));
+        }
+        System.arraycopy(bytes, 0, names, offset, bytes.length);
+        namesLength = offset + bytes.length;
+
+        nameStarts[size] = offset;
+        nameEnds[size] = namesLength;
+        sizes[size] = fileSize;
+        modified[size] = lastModified;
+        inodes[size] = inode;
+        flags[size] = flag;
+        size++;
+        if (table != null) {
+            index(size - 1);
+        }
+
+        return size - 1;
+    }
+
+    /**
+     * Добавление всех объектов другого хранилища.
+     *
+     * @param other хранилище, объекты которого добавляются
+     */
+    public void appendAll(EntryStore other) {
+        int total = size + other.size;
+        if (total > sizes.length) {
+            grow(Math.max(total, size * 2));
+        }
+
+        // имена копируются одним блоком вместе с именами удаленных объектов
+        int offset = namesLength;
+        if (offset + other.namesLength > names.length) {
+            names = copyOf(names, Math.max(names.length * 2, offset + other.namesLength));
+        }
+
+        System.arraycopy(other.sizes, 0, sizes, size, other.size);
+        System.arraycopy(other.modified, 0, modified, size, other.size);
+        System.arraycopy(other.inodes, 0, inodes, size, other.size);
+        System.arraycopy(other.flags, 0, flags, size, other.size);
+        System.arraycopy(other.names, 0, names, offset, other.namesLength);
+        for (int i = 0; i < other.size; i++) {
+            nameStarts[size + i] = offset + other.nameStarts[i];
+            nameEnds[size + i] = offset + other.nameEnds[i];
+        }
+        namesLength = offset + other.namesLength;
+        garbage += other.garbage;
+        size = total;
+        table = null;
+    }
+
+    /**
+     * Изменение всех параметров объекта, кроме имени.
+     *
+     * @param index    номер объекта
+     * @param fileInfo новые параметры объекта
+     */
+    public void set(int index, FileInfo fileInfo) {
+        sizes[index] = fileInfo.getFileSize();
+        modified[index] = fileInfo.getLastModified();
+        inodes[index] = fileInfo.getInode();
+        flags[index] = flags(fileInfo);
+    }
+
+    /**
+     * Упаковка типа объекта и его прав в один байт.
+     *
+     * @param fileInfo объект
+     * @return байт признаков объекта
+     */
+    static byte flags(FileInfo fileInfo) {
+        return (byte) (fileInfo.getType().ordinal() | attributeBits(fileInfo.getAttribute()) << ATTRIBUTE_SHIFT);
+    }
+
+    /**
+     * Удаление объекта. На его место переносится последний объект,
+     * поэтому номер последнего объекта меняется на номер удаленного.
+     * Имя удаленного объекта остается в <code>names</code> до сжатия.
+     *
+     * @param index номер объекта
+     */
+    public void remove(int index) {
+        int last = size - 1;
+        if (table != null) {
+            int slot = slotOf(index);
+            table[slot] = 0;
+            closeGap(slot);
+        }
+        garbage += nameEnds[index] - nameStarts[index];
+
+        if (index != last) {
+            if (table != null) {
+                table[slotOf(last)] = index + 1;
+            }
+            sizes[index] = sizes[last];
+            modified[index] = modified[last];
+            inodes[index] = inodes[last];
+            flags[index] = flags[last];
+            nameStarts[index] = nameStarts[last];
+            nameEnds[index] = nameEnds[last];
+        }
+        size = last;
+
+        if (garbage > namesLength / 2) {
+            compact();
+        }
+    }
+
+    /**
+     * Поиск объекта по имени.
+     *
+     * @param name имя объекта
+     * @return номер объекта или -1, если объекта нет
+     */
+    public int indexOf(String name) {
+        if (table == null) {
+            buildTable();
+        }
+
+        byte[] bytes = name.getBytes(UTF_8);
+        int mask = table.length - 1;
+        for (int slot = hash(bytes, 0, bytes.length) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            int i = table[slot] - 1;
+            if (nameEnds[i] - nameStarts[i] == bytes.length
+                    && Arrays.equals(names, nameStarts[i], nameEnds[i], bytes, 0, bytes.length)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Получение размера объекта.
+     *
+     * @param index номер объекта
+     * @return размер объекта
+     */
+    public long getFileSize(int index) {
+        return sizes[index];
+    }
+
+    /**
+     * Изменение размера объекта.
+     *
+     * @param index    номер объекта
+     * @param fileSize новый размер
+     */
+    public void setFileSize(int index, long fileSize) {
+        sizes[index] = fileSize;
+    }
+
+    /** Удаление всех объектов. */
+    public void clear() {
+        size = 0;
+        namesLength = 0;
+        garbage = 0;
+        table = null;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Примерный объем памяти, который занимает хранилище.
+     *
+     * @return размер в байтах
+     */
+    public long footprint() {
+        return 8L * (sizes.length + modified.length + inodes.length)
+                + flags.length
+                + 4L * (nameStarts.length + nameEnds.length)
+                + names.length
+                + (table == null ? 0L : 4L * table.length);
+    }
+
+    /**
+     * Количество байт, которое занимает хранилище в снимке.
+     *
+     * @return размер в байтах
+     */
+    int serializedSize() {
+        return 4 + size * (3 * 8 + 1) + 4 * (size + 1) + namesLength - garbage;
+    }
+
+    /**
+     * Запись хранилища в снимок: количество объектов и столбцы подряд.
+     * Имена записываются подряд без имен удаленных объектов, а смещение
+     * i+1 является концом имени i.
+     *
+     * @param out поток снимка
+     * @throws IOException если произошла ошибка записи
+     */
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(size);
+        for (int i = 0; i < size; i++) {
+            out.writeLong(sizes[i]);
+        }
+        for (int i = 0; i < size; i++) {
+            out.writeLong(modified[i]);
+        }
+        for (int i = 0; i < size; i++) {
+            out.writeLong(inodes[i]);
+        }
+        out.write(flags, 0, size);
+        int offset = 0;
+        out.writeInt(offset);
+        for (int i = 0; i < size; i++) {
+            offset += nameEnds[i] - nameStarts[i];
+            out.writeInt(offset);
+        }
+        for (int i = 0; i < size; i++) {
+            out.write(names, nameStarts[i], nameEnds[i] - nameStarts[i]);
+        }
+    }
+
+    /**
+     * Чтение хранилища из снимка. Столбцы копируются целиком,
+     * без разбора отдельных объектов.
+     *
+     * @param buffer буфер снимка, позиция которого указывает на хранилище
+     * @return хранилище
+     */
+    static EntryStore readFrom(ByteBuffer buffer) {
+        int count = buffer.getInt();
+        EntryStore store = new EntryStore(Math.max(count, INITIAL_CAPACITY));
+        readLongs(buffer, store.sizes, count);
+        readLongs(buffer, store.modified, count);
+        readLongs(buffer, store.inodes, count);
+        buffer.get(store.flags, 0, count);
+        int offset = buffer.getInt();
+        for (int i = 0; i < count; i++) {
+            store.nameStarts[i] = offset;
+            offset = buffer.getInt();
+            store.nameEnds[i] = offset;
+        }
+        store.names = new byte[Math.max(offset, INITIAL_CAPACITY)];
+        buffer.get(store.names, 0, offset);
+        store.namesLength = offset;
+        store.size = count;
+
+        return store;
+    }
+
+    /**
+     * Проверка хранилища в снимке перед чтением: столбцы и имена
+     * лежат внутри записи, типы объектов известны, а имена
+     * в UTF-8 не выходят за свои границы.
+     *
+     * @param buffer буфер снимка
+     * @param from   начало хранилища
+     * @param to     конец записи снимка
+     * @return <code>true</code> если хранилище можно читать
+     */
+    static boolean isValid(ByteBuffer buffer, int from, int to) {
+        if (to - from < 4) {
+            return false;
+        }
+        int count = buffer.getInt(from);
+        if (count < 0 || 4L + count * (3L * 8 + 1) + 4L * (count + 1) > to - from) {
+            return false;
+        }
+
+        int flagsOffset = from + 4 + 3 * 8 * count;
+        for (int i = 0; i < count; i++) {
+            if ((buffer.get(flagsOffset + i) & TYPE_MASK) >= TYPES.length) {
+                return false;
+            }
+        }
+
+        int offsetsOffset = flagsOffset + count;
+        int namesOffset = offsetsOffset + 4 * (count + 1);
+        if (buffer.getInt(offsetsOffset) != 0) {
+            return false;
+        }
+        for (int i = 0; i < count; i++) {
+            int start = buffer.getInt(offsetsOffset + 4 * i);
+            int end = buffer.getInt(offsetsOffset + 4 * (i + 1));
+            if (end < start || end > to - namesOffset) {
+                return false;
+            }
+
+            // длина символа по первому байту, как в Cursor.decodeName
+            for (int j = start; j < end; ) {
+                int b = buffer.get(namesOffset + j);
+                j += b >= 0 ? 1 : (b & 0xE0) == 0xC0 ? 2 : (b & 0xF0) == 0xE0 ? 3 : 4;
+                if (j > end) {
+                    return false;
+                }
+            }
+        }
+
+        return true;
+    }
+
+    private static void readLongs(ByteBuffer buffer, long[] column, int count) {
+        buffer.asLongBuffer().get(column, 0, count);
+        buffer.position(buffer.position() + 8 * count);
+    }
+
+    /**
+     * Получение курсора для чтения объектов по порядку.
+     *
+     * @return курсор перед первым объектом
+     */
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /**
+     * Поиск объектов по условиям. Неподходящие объекты проверяются
+     * прямо в столбцах через курсор, объект создается только для
+     * подходящих, а имя только для поддиректорий.
+     *
+     * @param matcher    проверка объектов
+     * @param found      получатель подходящих объектов, возвращает <code>false</code>,
+     *                   если поиск нужно остановить
+     * @param subFolders получатель имен поддиректорий
+     * @return <code>false</code> если поиск остановлен получателем
+     */
+    public boolean find(FindQuery.EntryMatcher matcher, Predicate<FileInfo> found, Consumer<String> subFolders) {
+        Cursor cursor = new Cursor();
+        while (cursor.next()) {
+            FileType type = cursor.getType();
+            if (matcher.matches(cursor, type, cursor.getFileSize(), cursor.getLastModified())
+                    && !found.test(cursor.toFileInfo())) {
+                return false;
+            }
+            if (type == FileType.DIR) {
+                subFolders.accept(cursor.toString());
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Увеличение вместимости хранилища.
+     *
+     * @param capacity новая вместимость
+     */
+    private void grow(int capacity) {
+        sizes = copyOf(sizes, capacity);
+        modified = copyOf(modified, capacity);
+        inodes = copyOf(inodes, capacity);
+        flags = copyOf(flags, capacity);
+        nameStarts = copyOf(nameStarts, capacity);
+        nameEnds = copyOf(nameEnds, capacity);
+    }
+
+    /**
+     * Сжатие <code>names</code> без имен удаленных объектов. Вызывается,
+     * когда они занимают больше половины, поэтому в пересчете
+     * на одно удаление сжатие не зависит от количества объектов.
+     */
+    private void compact() {
+        byte[] compacted = new byte[Math.max(names.length / 2, INITIAL_CAPACITY * 16)];
+        int offset = 0;
+        for (int i = 0; i < size; i++) {
+            int length = nameEnds[i] - nameStarts[i];
+            System.arraycopy(names, nameStarts[i], compacted, offset, length);
+            nameStarts[i] = offset;
+            offset += length;
+            nameEnds[i] = offset;
+        }
+        names = compacted;
+        namesLength = offset;
+        garbage = 0;
+    }
+
+    /**
+     * Построение хэш-таблицы по всем объектам с заполнением
+     * не больше половины.
+     */
+    private void buildTable() {
+        table = new int[Integer.highestOneBit(Math.max(size, INITIAL_CAPACITY) * 4 - 1)];
+        for (int i = 0; i < size; i++) {
+            index(i);
+        }
+    }
+
+    /**
+     * Добавление последнего объекта в хэш-таблицу. Таблица
+     * строится заново, когда заполнена больше чем наполовину.
+     *
+     * @param index номер объекта
+     */
+    private void index(int index) {
+        if ((index + 1) * 2 > table.length) {
+            buildTable();
+            return;
+        }
+
+        int mask = table.length - 1;
+        int slot = hash(names, nameStarts[index], nameEnds[index]) & mask;
+        while (table[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = index + 1;
+    }
+
+    /**
+     * Ячейка хэш-таблицы, в которой записан объект.
+     *
+     * @param index номер объекта
+     * @return номер ячейки
+     */
+    private int slotOf(int index) {
+        int mask = table.length - 1;
+        int slot = hash(names, nameStarts[index], nameEnds[index]) & mask;
+        while (table[slot] != index + 1) {
+            slot = (slot + 1) & mask;
+        }
+
+        return slot;
+    }
+
+    /**
+     * Сдвиг объектов после освобожденной ячейки назад, чтобы
+     * цепочки поиска не прерывались пустой ячейкой.
+     *
+     * @param gap освобожденная ячейка
+     */
+    private void closeGap(int gap) {
+        int mask = table.length - 1;
+        for (int slot = (gap + 1) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            int i = table[slot] - 1;
+            int home = hash(names, nameStarts[i], nameEnds[i]) & mask;
+            // объект можно перенести, если освобожденная ячейка лежит между его ячейкой по хэшу и текущей
+            if ((slot - home & mask) >= (slot - gap & mask)) {
+                table[gap] = table[slot];
+                table[slot] = 0;
+                gap = slot;
+            }
+        }
+    }
+
+    /**
+     * Хэш имени в кодировке UTF-8.
+     *
+     * @param bytes массив с именем
+     * @param from  начало имени
+     * @param to    конец имени
+     * @return хэш имени
+     */
+    private static int hash(byte[] bytes, int from, int to) {
+        int hash = 0;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + bytes[i];
+        }
+
+        return hash ^ hash >>> 16;
+    }
+
+    /**
+     * Перевод прав чтения, записи и выполнения в биты.
+     *
+     * @param attribute права чтения, записи и выполнения
+     * @return биты прав, чтение в старшем бите
+     */
+    public static int attributeBits(Boolean[] attribute) {
+        int bits = 0;
+        for (Boolean flag : attribute) {
+            bits = bits << 1 | (Boolean.TRUE.equals(flag) ? 1 : 0);
+        }
+
+        return bits;
+    }
+
+    /**
+     * Курсор по объектам хранилища. Один и тот же курсор
+     * переиспользуется для всех строк, а имя декодируется
+     * в собственный буфер.
+     */
+    public final class Cursor implements CharSequence {
+
+        /** Номер текущего объекта. */
+        private int index = -1;
+
+        /** Декодированное имя текущего объекта. */
+        private char[] name = new char[64];
+
+        /** Длина имени текущего объекта. */
+        private int nameLength;
+
+        /**
+         * Переход к следующему объекту.
+         *
+         * @return <code>false</code> если объекты закончились
+         */
+        public boolean next() {
+            if (index + 1 >= size) {
+                return false;
+            }
+            index++;
+            decodeName();
+
+            return true;
+        }
+
+        /**
+         * Признак последнего объекта.
+         *
+         * @return <code>true</code> если за текущим объектом больше нет объектов
+         */
+        public boolean isLast() {
+            return index == size - 1;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        /**
+         * Имя текущего объекта. Возвращается сам курсор,
+         * поэтому имя действительно до следующего вызова <code>next</code>.
+         *
+         * @return имя объекта
+         */
+        public CharSequence getName() {
+            return this;
+        }
+
+        public FileType getType() {
+            return TYPES[flags[index] & TYPE_MASK];
+        }
+
+        public long getFileSize() {
+            return sizes[index];
+        }
+
+        public long getLastModified() {
+            return modified[index];
+        }
+
+        public long getInode() {
+            return inodes[index];
+        }
+
+        /**
+         * Права текущего объекта.
+         *
+         * @return биты прав, чтение в старшем бите
+         */
+        public int getAttribute() {
+            return flags[index] >> ATTRIBUTE_SHIFT & ATTRIBUTE_MASK;
+        }
+
+        /**
+         * Копия текущего объекта.
+         *
+         * @return объект со всеми параметрами текущего объекта
+         */
+        public FileInfo toFileInfo() {
+            int bits = getAttribute();
+            FileInfo fileInfo = new FileInfo();
+            fileInfo.setName(toString());
+            fileInfo.setType(getType());
+            fileInfo.setFileSize(getFileSize());
+            fileInfo.setLastModified(getLastModified());
+            fileInfo.setInode(getInode());
+            fileInfo.setAttribute(new Boolean[]{(bits & 4) != 0, (bits & 2) != 0, (bits & 1) != 0});
+
+            return fileInfo;
+        }
+
+        @Override
+        public int length() {
+            return nameLength;
+        }
+
+        @Override
+        public char charAt(int i) {
+            return name[i];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(name, start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(name, 0, nameLength);
+        }
+
+        /**
+         * Декодирование имени текущего объекта из UTF-8 в буфер курсора.
+         */
+        private void decodeName() {
+            int from = nameStarts[index];
+            int to = nameEnds[index];
+            if (name.length < to - from) {
+                name = new char[to - from];
+            }
+
+            int length = 0;
+            int i = from;
+            while (i < to) {
+                int b = names[i++];
+                if (b >= 0) {
+                    name[length++] = (char) b;
+                } else if ((b & 0xE0) == 0xC0) {
+                    name[length++] = (char) ((b & 0x1F) << 6 | names[i++] & 0x3F);
+                } else if ((b & 0xF0) == 0xE0) {
+                    name[length++] = (char) ((b & 0x0F) << 12 | (names[i++] & 0x3F) << 6 | names[i++] & 0x3F);
+                } else {
+                    int codePoint = (b & 0x07) << 18 | (names[i++] & 0x3F) << 12
+                            | (names[i++] & 0x3F) << 6 | names[i++] & 0x3F;
+                    name[length++] = Character.highSurrogate(codePoint);
+                    name[length++] = Character.lowSurrogate(codePoint);
+                }
+            }
+            nameLength = length;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package ru.develonica.model;
+
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.lang.Integer.highestOneBit;
+import static ru.develonica.model.FileType.ARCHIVE;
+import static ru.develonica.model.FileType.DOCUMENT;
+import static ru.develonica.model.FileType.JAVA_FILE;
+import static ru.develonica.model.FileType.MUSIC;
+import static ru.develonica.model.FileType.OTHER_FILE;
+import static ru.develonica.model.FileType.PICTURE;
+import static ru.develonica.model.FileType.TEXT;
+import static ru.develonica.model.FileType.VIDEO;
+
+/**
+ * Определение типа файла по расширению. Расширения хранятся
+ * в хэш-таблице с открытой адресацией, хэш считается прямо по символам
+ * имени без учета регистра, поэтому поиск не создает новых строк.
+ * Расширение может состоять из нескольких частей, например
+ * <code>tar.gz</code>, тогда выбирается самое длинное известное расширение.
+ */
+public class ExtensionClassifier implements TypeClassifier {
+
+    /** Разделитель расширения. */
+    private static final char DOT = '.';
+
+    /** Расширения таблицы. */
+    private final String[] extensions;
+
+    /** Типы файлов по расширениям таблицы. */
+    private final FileType[] types;
+
+    /** Маска номера ячейки таблицы. */
+    private final int mask;
+
+    public ExtensionClassifier() {
+        this(defaultTypes());
+    }
+
+    /**
+     * @param fileTypes словарь типов файлов по расширениям без точки в начале
+     */
+    public ExtensionClassifier(Map<String, FileType> fileTypes) {
+        // таблица заполнена не больше, чем на четверть
+        int capacity = highestOneBit(Math.max(fileTypes.size(), 1) * 8 - 1);
+        this.extensions = new String[capacity];
+        this.types = new FileType[capacity];
+        this.mask = capacity - 1;
+
+        for (Map.Entry<String, FileType> entry : fileTypes.entrySet()) {
+            String extension = entry.getKey().toLowerCase();
+            int slot = hash(extension, 0, extension.length()) & mask;
+            while (extensions[slot] != null && !extensions[slot].equals(extension)) {
+                slot = (slot + 1) & mask;
+            }
+            extensions[slot] = extension;
+            types[slot] = entry.getValue();
+        }
+    }
+
+    @Override
+    public FileType classify(Path path, String name, boolean regularFile) {
+        return classify(name);
+    }
+
+    /**
+     * Определение типа файла по имени. Точка в начале имени
+     * скрытого файла не считается началом расширения.
+     *
+     * @param name имя файла
+     * @return тип файла или <code>OTHER_FILE</code>, если расширение неизвестно
+     */
+    public FileType classify(String name) {
+        int length = name.length();
+        // от первой точки к последней, т.е. от длинного расширения к короткому
+        for (int dot = name.indexOf(DOT, 1); dot != -1 && dot < length - 1; dot = name.indexOf(DOT, dot + 1)) {
+            FileType fileType = find(name, dot + 1, length);
+            if (fileType != null) {
+                return fileType;
+            }
+        }
+
+        return OTHER_FILE;
+    }
+
+    /**
+     * Поиск расширения, которое занимает часть имени.
+     *
+     * @param name имя файла
+     * @param from начало расширения
+     * @param to   конец расширения
+     * @return тип файла или <code>null</code>, если расширения нет в таблице
+     */
+    private FileType find(String name, int from, int to) {
+        int length = to - from;
+        for (int slot = hash(name, from, to) & mask; extensions[slot] != null; slot = (slot + 1) & mask) {
+            String extension = extensions[slot];
+            if (extension.length() == length && name.regionMatches(true, from, extension, 0, length)) {
+                return types[slot];
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Хэш части строки без учета регистра.
+     *
+     * @param value строка
+     * @param from  начало части
+     * @param to    конец части
+     * @return хэш
+     */
+    private static int hash(String value, int from, int to) {
+        int hash = 0;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + Character.toLowerCase(value.charAt(i));
+        }
+
+        return hash ^ hash >>> 16;
+    }
+
+    /**
+     * Словарь типов файлов по умолчанию.
+     *
+     * @return словарь типов файлов по расширениям
+     */
+    public static Map<String, FileType> defaultTypes() {
+        Map<String, FileType> fileTypes = new LinkedHashMap<>();
+        put(fileTypes, PICTURE, "bmp", "png", "jpeg", "jpg", "gif");
+        put(fileTypes, TEXT, "txt", "text", "log");
+        put(fileTypes, DOCUMENT, "doc", "docs", "docx", "xls", "xlsx", "pdf");
+        put(fileTypes, ARCHIVE, "zip", "rar", "7z", "tar", "gz", "tgz", "tar.gz", "tar.bz2", "tar.xz");
+        put(fileTypes, MUSIC, "mp3");
+        put(fileTypes, VIDEO, "avi", "mov", "mp4", "mpg");
+        put(fileTypes, JAVA_FILE, "java", "jar", "class");
+
+        return fileTypes;
+    }
+
+    private static void put(Map<String, FileType> fileTypes, FileType fileType, String... extensions) {
+        for (String extension : extensions) {
+            fileTypes.put(extension, fileType);
+        }
+    }
+}
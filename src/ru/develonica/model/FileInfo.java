@@ -1,10 +1,17 @@
 package ru.develonica.model;
 
+import java.nio.file.Path;
+
+import static ru.develonica.model.FileType.DIR;
+
 /**
  * Информация об объектах файлового дерева.
  */
 public class FileInfo {
 
+    /** Размер объекта, который еще не посчитан. */
+    public static final long UNKNOWN_SIZE = -1L;
+
     /** Имя объекта. */
     private String name;
 
@@ -12,11 +19,17 @@ public class FileInfo {
     private FileType fileType;
 
     /** Размер объекта. */
-    private long fileSize;
+    private volatile long fileSize;
 
     /** Аттрибуты объекта. */
     private Boolean[] attribute;
 
+    /** Время изменения объекта в наносекундах. */
+    private long lastModified;
+
+    /** Номер индексного дескриптора объекта или 0, если он неизвестен. */
+    private long inode;
+
     public String getName() {
         return name;
     }
@@ -49,7 +62,70 @@ public class FileInfo {
         this.attribute = attribute;
     }
 
+    public long getLastModified() {
+        return lastModified;
+    }
+
+    public void setLastModified(long lastModified) {
+        this.lastModified = lastModified;
+    }
+
+    public long getInode() {
+        return inode;
+    }
+
+    public void setInode(long inode) {
+        this.inode = inode;
+    }
+
     public FileInfo() {
         this.attribute = new Boolean[3];
     }
+
+    /**
+     * Создание объекта для отображения по аттрибутам. Размер директории
+     * не считается и равен <code>UNKNOWN_SIZE</code>.
+     *
+     * @param path           путь объекта
+     * @param name           имя объекта
+     * @param attributes     аттрибуты объекта
+     * @param typeClassifier определение типа файла
+     * @return объект с корректными параметрами для отображения
+     */
+    public static FileInfo of(Path path, String name, EntryAttributes attributes, TypeClassifier typeClassifier) {
+        boolean isDirectory = attributes.isDirectory();
+
+        FileInfo fileInfo = new FileInfo();
+        fileInfo.setName(name);
+        fileInfo.setType(isDirectory
+                ? DIR
+                : typeClassifier.classify(path, name, attributes.isRegularFile()));
+        fileInfo.setFileSize(isDirectory
+                ? UNKNOWN_SIZE
+                : attributes.getSize());
+        fileInfo.setAttribute(attributes.getAttribute());
+        fileInfo.setLastModified(attributes.getLastModified());
+        fileInfo.setInode(attributes.getInode());
+
+        return fileInfo;
+    }
+
+    /**
+     * Создание объекта, аттрибуты которого не удалось прочитать,
+     * например, из-за недоступной сетевой файловой системы. Тип
+     * определяется только по имени, а размер равен <code>UNKNOWN_SIZE</code>.
+     *
+     * @param path           путь объекта
+     * @param name           имя объекта
+     * @param typeClassifier определение типа файла
+     * @return объект без размера и прав
+     */
+    public static FileInfo unknown(Path path, String name, TypeClassifier typeClassifier) {
+        FileInfo fileInfo = new FileInfo();
+        fileInfo.setName(name);
+        fileInfo.setType(typeClassifier.classify(path, name, false));
+        fileInfo.setFileSize(UNKNOWN_SIZE);
+
+        return fileInfo;
+    }
 }
@@ -1,9 +1,25 @@
 package ru.develonica.model;
 
+import java.io.File;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+import static java.io.File.separator;
+import static java.nio.file.Path.of;
+import static ru.develonica.model.FileInfo.UNKNOWN_SIZE;
 
 /**
- * Структура файлового дерева.
+ * Структура файлового дерева. Директории, добавленные в дерево,
+ * могут изменяться в фоне при изменениях на диске, поэтому такие
+ * изменения и чтение заполненных директорий выполняются
+ * под блокировкой дерева.
  */
 public class FileTree {
 
@@ -13,39 +29,56 @@ public class FileTree {
     /** Указатель на последнюю директорию. */
     private Node last;
 
+    /** Добавленные в файловое дерево директории по реальному пути. */
+    private final Map<String, Node> nodes = new HashMap<>();
+
     /**
      * Этот метод добавляет директорию в структуру файлового дерева,
-     * относительно его реального расположения.
+     * относительно его реального расположения. Если директория с тем же
+     * реальным путем уже есть в дереве, например, она открыта через
+     * символьную ссылку, то новая директория использует ее объекты.
+     * Если же совпадает и путь в структуре дерева, то выполняется
+     * переход к уже добавленной директории.
      *
      * @param currentFolder текущая директория
      * @param realPath      реальный путь папки с символьной ссылкой
      */
-    public void addNode(String currentFolder, String realPath) {
-        Node newNode = new Node(currentFolder, realPath);
+    public synchronized void addNode(String currentFolder, String realPath) {
         Node tempLast = last;
         if (tempLast == null) {
-            first = newNode;
-            last = newNode;
-        } else {
-            for (int i = 0; i < tempLast.children.size(); i++) {
-                if (newNode.currentFolder
-                        .equals(tempLast.children.get(i).currentFolder)) {
+            first = new Node(currentFolder, realPath);
+            last = first;
+            nodes.put(realPath, first);
+            return;
+        }
 
-                    last = tempLast.children.get(i);
-                    last.isExists = true;
-                    break;
-                }
-            }
-            if (!last.isExists) {
-                tempLast.children.add(newNode);
-                last = newNode;
-                last.parent = tempLast;
-            }
+        Node child = tempLast.children.get(currentFolder);
+        if (child != null) {
+            last = child;
+            last.isExists = true;
+            return;
+        }
+
+        Node origin = nodes.get(realPath);
+        if (origin != null && of(origin.currentFolder).equals(of(currentFolder))) {
+            last = origin;
+            last.isExists = true;
+            return;
+        }
+        if (origin != null) {
+            child = new Node(currentFolder, origin);
+            child.isExists = true;
+        } else {
+            child = new Node(currentFolder, realPath);
+            nodes.put(realPath, child);
         }
+        child.parent = tempLast;
+        tempLast.children.put(currentFolder, child);
+        last = child;
     }
 
     public int getSize() {
-        return last.fileInfo.size();
+        return last.origin.entries.size();
     }
 
     public String getCurrentFolder() {
@@ -53,7 +86,7 @@ public class FileTree {
     }
 
     public String getRealPath() {
-        return last.realPath;
+        return last.origin.realPath;
     }
 
     public String getFirstPath() {
@@ -68,12 +101,20 @@ public class FileTree {
         last.isExists = exists;
     }
 
-    public boolean isFilesExist() {
-        return last.isFilesExist;
+    public CompletableFuture<Void> getScan() {
+        return last.origin.scan;
     }
 
-    public void setFilesExist(boolean files) {
-        last.isFilesExist = files;
+    public void setScan(Node node, CompletableFuture<Void> scan) {
+        node.origin.scan = scan;
+    }
+
+    public ScanChannel getChannel() {
+        return last.origin.channel;
+    }
+
+    public void setChannel(Node node, ScanChannel channel) {
+        node.origin.channel = channel;
     }
 
     public void getBack() {
@@ -84,33 +125,471 @@ public class FileTree {
         last = first;
     }
 
-    public void addChild(FileInfo fileInfo) {
-        last.fileInfo.add(fileInfo);
+    public void clean(Node node) {
+        synchronized (node.origin) {
+            node.origin.entries.clear();
+        }
+        node.origin.totalObjects.reset();
+        node.origin.totalSize.reset();
+        node.origin.syscallsSaved.reset();
+    }
+
+    /**
+     * Заполнение текущей директории уже прочитанными объектами.
+     *
+     * @param entries объекты директории с посчитанными размерами
+     */
+    public synchronized void fill(EntryStore entries) {
+        Node node = last.origin;
+        synchronized (node) {
+            node.entries.appendAll(entries);
+        }
+        node.totalObjects.add(entries.size());
+
+        EntryStore.Cursor cursor = entries.cursor();
+        while (cursor.next()) {
+            node.totalSize.add(cursor.getFileSize());
+        }
+    }
+
+    /**
+     * Подготовка директории к заполнению.
+     *
+     * @param node  директория
+     * @param token признак отмены заполнения
+     * @return директория, в которую потоки добавляют объекты
+     */
+    public Node startScan(Node node, CancellationToken token) {
+        synchronized (node.origin) {
+            node.origin.pending = new EntryBuffer();
+        }
+        node.origin.cancellation = token;
+        node.origin.partial = false;
+        return node.origin;
+    }
+
+    /**
+     * Подготовка сверки размеров поддиректорий директории,
+     * заполненной из кэша или снимка, без буфера заполнения.
+     *
+     * @param node  директория
+     * @param token признак отмены сверки
+     */
+    public void startRevalidation(Node node, CancellationToken token) {
+        node.origin.cancellation = token;
+        node.origin.partial = false;
+    }
+
+    /**
+     * Текущая директория файлового дерева.
+     *
+     * @return директория, которая хранит объекты текущей директории
+     */
+    public Node getNode() {
+        return last.origin;
     }
 
-    public void clean() {
-        last.fileInfo.clear();
-        last.totalObjects = 0;
-        last.totalSize = 0;
+    public EntryStore getEntries() {
+        return last.origin.entries;
     }
 
-    public List<FileInfo> getFileInfo() {
-        return last.fileInfo;
+    /**
+     * Объекты директории.
+     *
+     * @param node директория
+     * @return хранилище, которое хранит объекты директории
+     */
+    public EntryStore entries(Node node) {
+        return node.origin.entries;
     }
 
     public long getTotalSize() {
-        return last.totalSize;
+        return last.origin.totalSize.sum();
     }
 
     public int getTotalObjects() {
-        return last.totalObjects;
+        return last.origin.totalObjects.intValue();
+    }
+
+    public long getSyscallsSaved() {
+        return last.origin.syscallsSaved.sum();
+    }
+
+    /**
+     * Поиск добавленной в дерево директории по реальному пути.
+     *
+     * @param realPath реальный путь директории
+     * @return директория или <code>null</code>, если ее нет в дереве
+     */
+    public synchronized Node findNode(String realPath) {
+        return nodes.get(realPath);
+    }
+
+    /**
+     * Поиск самых больших поддиректорий заполненной директории,
+     * которых еще нет в файловом дереве.
+     *
+     * @param node  директория
+     * @param limit максимальное количество поддиректорий
+     * @return имена поддиректорий от большей к меньшей
+     */
+    public synchronized List<String> largestDirectories(Node node, int limit) {
+        List<String> names = new ArrayList<>(limit + 1);
+        List<Long> sizes = new ArrayList<>(limit + 1);
+        EntryStore.Cursor cursor = node.origin.entries.cursor();
+        while (cursor.next()) {
+            if (cursor.getType() != FileType.DIR) {
+                continue;
+            }
+
+            // вставка в короткий упорядоченный список
+            long size = cursor.getFileSize();
+            int position = sizes.size();
+            while (position > 0 && sizes.get(position - 1) < size) {
+                position--;
+            }
+            if (position >= limit) {
+                continue;
+            }
+
+            String name = cursor.toString();
+            if (node.origin.children.containsKey(childFolder(node.origin, name))
+                    || nodes.containsKey(of(node.origin.realPath).resolve(name).toString())) {
+                continue;
+            }
+            names.add(position, name);
+            sizes.add(position, size);
+            if (names.size() > limit) {
+                names.remove(limit);
+                sizes.remove(limit);
+            }
+        }
+
+        return names;
+    }
+
+    /**
+     * Создание поддиректории, которая заполняется в фоне
+     * и еще не добавлена в файловое дерево.
+     *
+     * @param parent   директория
+     * @param name     имя поддиректории
+     * @param realPath реальный путь поддиректории
+     * @return поддиректория, готовая к заполнению
+     */
+    public Node newNode(Node parent, String name, String realPath) {
+        Node node = new Node(childFolder(parent.origin, name), realPath);
+        node.pending = new EntryBuffer();
+
+        return node;
+    }
+
+    /**
+     * Добавление в файловое дерево поддиректории, заполненной в фоне.
+     * Поддиректория не добавляется, если пользователь уже перешел в нее
+     * или она есть в дереве под другим путем.
+     *
+     * @param parent директория
+     * @param child  заполненная поддиректория
+     * @return <code>true</code> если поддиректория добавлена
+     */
+    public synchronized boolean attachNode(Node parent, Node child) {
+        Node origin = parent.origin;
+        if (origin.children.containsKey(child.currentFolder) || nodes.containsKey(child.realPath)) {
+            return false;
+        }
+
+        child.parent = origin;
+        origin.children.put(child.currentFolder, child);
+        nodes.put(child.realPath, child);
+
+        return true;
+    }
+
+    /**
+     * Путь поддиректории в структуре дерева, такой же,
+     * как при переходе в нее командой <code>cd</code>.
+     *
+     * @param node директория
+     * @param name имя поддиректории
+     * @return путь поддиректории
+     */
+    private static String childFolder(Node node, String name) {
+        return new File(node.currentFolder, name).toString();
+    }
+
+    /**
+     * Копия объектов заполненной директории.
+     *
+     * @param node директория
+     * @return объекты директории по имени
+     */
+    public synchronized Map<String, FileInfo> snapshot(Node node) {
+        EntryStore entries = node.origin.entries;
+        Map<String, FileInfo> snapshot = new HashMap<>(entries.size() * 2);
+        EntryStore.Cursor cursor = entries.cursor();
+        while (cursor.next()) {
+            FileInfo fileInfo = cursor.toFileInfo();
+            snapshot.put(fileInfo.getName(), fileInfo);
+        }
+
+        return snapshot;
+    }
+
+    /**
+     * Добавление или замена объекта заполненной директории.
+     * Изменение размера передается всем директориям выше.
+     *
+     * @param node     директория
+     * @param fileInfo объект
+     */
+    public synchronized void putEntry(Node node, FileInfo fileInfo) {
+        EntryStore entries = node.origin.entries;
+        long delta = fileInfo.getFileSize();
+
+        synchronized (node.origin) {
+            int index = entries.indexOf(fileInfo.getName());
+            if (index < 0) {
+                entries.append(fileInfo);
+                node.origin.totalObjects.increment();
+            } else {
+                delta -= entries.getFileSize(index);
+                entries.set(index, fileInfo);
+            }
+        }
+
+        addSize(node.origin, delta);
+    }
+
+    /**
+     * Удаление объекта заполненной директории. Если объект является
+     * добавленной в дерево директорией, она удаляется из дерева.
+     *
+     * @param node директория
+     * @param name имя объекта
+     */
+    public synchronized void removeEntry(Node node, String name) {
+        EntryStore entries = node.origin.entries;
+        long fileSize;
+        synchronized (node.origin) {
+            int index = entries.indexOf(name);
+            if (index < 0) {
+                return;
+            }
+
+            fileSize = entries.getFileSize(index);
+            entries.remove(index);
+        }
+        node.origin.totalObjects.decrement();
+        addSize(node.origin, -fileSize);
+
+        removeNode(of(node.origin.realPath).resolve(name).toString());
+    }
+
+    /**
+     * Получение размера объекта заполненной директории.
+     *
+     * @param node директория
+     * @param name имя объекта
+     * @return размер объекта или <code>UNKNOWN_SIZE</code>, если объекта нет
+     */
+    public synchronized long getEntrySize(Node node, String name) {
+        EntryStore entries = node.origin.entries;
+        int index = entries.indexOf(name);
+
+        return index < 0 ? UNKNOWN_SIZE : entries.getFileSize(index);
+    }
+
+    /**
+     * Поиск объектов заполненной директории по условиям.
+     *
+     * @param node       директория
+     * @param matcher    проверка объектов
+     * @param found      получатель подходящих объектов, возвращает <code>false</code>,
+     *                   если поиск нужно остановить
+     * @param subFolders получатель имен поддиректорий
+     * @return <code>false</code> если поиск остановлен получателем
+     */
+    public synchronized boolean find(Node node, FindQuery.EntryMatcher matcher,
+                                     Predicate<FileInfo> found, Consumer<String> subFolders) {
+        return node.origin.entries.find(matcher, found, subFolders);
+    }
+
+    /**
+     * Учет файлов заполненной директории среди самых больших.
+     * Путь создается только для файлов, которые попадают в них.
+     *
+     * @param node       директория
+     * @param top        самые большие объекты
+     * @param subFolders получатель имен поддиректорий
+     */
+    public synchronized void rank(Node node, TopEntries top, Consumer<String> subFolders) {
+        Path folder = of(node.origin.realPath);
+        EntryStore.Cursor cursor = node.origin.entries.cursor();
+        while (cursor.next()) {
+            FileType type = cursor.getType();
+            long size = cursor.getFileSize();
+            if (type == FileType.DIR) {
+                subFolders.accept(cursor.toString());
+            } else if (size != UNKNOWN_SIZE && top.acceptsFile(size)) {
+                top.offerFile(folder.resolve(cursor.toString()), size, type);
+            }
+        }
+    }
+
+    /**
+     * Изменение размера объекта заполненной директории, например,
+     * по ходу удаления поддиректории. Изменение размера передается
+     * всем директориям выше.
+     *
+     * @param node  директория
+     * @param name  имя объекта
+     * @param delta изменение размера
+     */
+    public synchronized void addEntrySize(Node node, String name, long delta) {
+        EntryStore entries = node.origin.entries;
+        long fileSize;
+        long newSize;
+        synchronized (node.origin) {
+            int index = entries.indexOf(name);
+            if (index < 0 || entries.getFileSize(index) == UNKNOWN_SIZE) {
+                return;
+            }
+
+            fileSize = entries.getFileSize(index);
+            newSize = Math.max(fileSize + delta, 0L);
+            entries.setFileSize(index, newSize);
+        }
+        addSize(node.origin, newSize - fileSize);
+    }
+
+    /**
+     * Установка посчитанного размера объекта директории по его номеру.
+     * Изменение размера передается всем директориям выше.
+     *
+     * @param node     директория
+     * @param index    номер объекта
+     * @param fileSize новый размер
+     */
+    public synchronized void setEntrySize(Node node, int index, long fileSize) {
+        EntryStore entries = node.origin.entries;
+        long previous;
+        synchronized (node.origin) {
+            previous = entries.getFileSize(index);
+            entries.setFileSize(index, fileSize);
+        }
+        addSize(node.origin, (fileSize == UNKNOWN_SIZE ? 0L : fileSize)
+                - (previous == UNKNOWN_SIZE ? 0L : previous));
+    }
+
+    /**
+     * Удаление из заполненной директории объектов,
+     * которых больше нет на диске.
+     *
+     * @param node  директория
+     * @param names имена объектов на диске
+     */
+    public synchronized void retainEntries(Node node, Set<String> names) {
+        List<String> removed = new ArrayList<>();
+        EntryStore.Cursor cursor = node.origin.entries.cursor();
+        while (cursor.next()) {
+            String name = cursor.toString();
+            if (!names.contains(name)) {
+                removed.add(name);
+            }
+        }
+
+        removed.forEach(name -> removeEntry(node, name));
+    }
+
+    /**
+     * Передача заполненных директорий в новый снимок. Под блокировкой
+     * дерева берется только список директорий, а объекты каждой
+     * директории копируются под ее собственной блокировкой, чтобы
+     * запись снимка не останавливала работу с деревом.
+     *
+     * @param writer запись снимка
+     */
+    public void writeTo(TreeSnapshot.Writer writer) {
+        List<Node> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(nodes.values());
+        }
+
+        for (Node node : snapshot) {
+            EntryStore entries;
+            long lastModified;
+            synchronized (node) {
+                if (node.lastModified == 0L || !node.scan.isDone() || node.pending != null) {
+                    continue;
+                }
+                entries = new EntryStore();
+                entries.appendAll(node.entries);
+                lastModified = node.lastModified;
+            }
+            writer.addListing(node.realPath, lastModified, entries);
+        }
     }
 
-    public void setTotalSize(long size) {
-        this.last.totalSize = size;
+    /**
+     * Удаление директории и всех ее поддиректорий из дерева
+     * с прекращением отслеживания их изменений.
+     *
+     * @param realPath реальный путь директории
+     */
+    private void removeNode(String realPath) {
+        Node node = nodes.remove(realPath);
+        if (node == null) {
+            return;
+        }
+        if (node.parent != null) {
+            node.parent.children.remove(node.currentFolder);
+        }
+        node.cancelWatch();
+
+        String prefix = realPath + separator;
+        nodes.entrySet().removeIf(entry -> {
+            if (!entry.getKey().startsWith(prefix)) {
+                return false;
+            }
+            entry.getValue().cancelWatch();
+            return true;
+        });
     }
 
-    public void setTotalObjects(int object) {
-        this.last.totalObjects = object;
+    /**
+     * Изменение общего размера директории и размера ее объекта
+     * во всех директориях выше, которые есть в дереве.
+     *
+     * @param node  директория
+     * @param delta изменение размера
+     */
+    private void addSize(Node node, long delta) {
+        if (delta == 0) {
+            return;
+        }
+        node.totalSize.add(delta);
+
+        // директории выше могут отсутствовать в дереве, если переход был через несколько уровней,
+        // а заполняемые директории получат актуальный размер после заполнения
+        for (Path path = of(node.realPath), parent = path.getParent();
+             parent != null;
+             path = parent, parent = path.getParent()) {
+
+            Node parentNode = nodes.get(parent.toString());
+            if (parentNode == null || !parentNode.scan.isDone()) {
+                continue;
+            }
+
+            EntryStore entries = parentNode.entries;
+            synchronized (parentNode) {
+                int index = entries.indexOf(path.getFileName().toString());
+                if (index < 0 || entries.getFileSize(index) == UNKNOWN_SIZE) {
+                    continue;
+                }
+                entries.setFileSize(index, entries.getFileSize(index) + delta);
+            }
+            parentNode.totalSize.add(delta);
+        }
     }
 }
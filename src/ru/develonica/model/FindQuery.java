@@ -0,0 +1,363 @@
+package ru.develonica.model;
+
+import ru.develonica.model.exception.IncorrectCommandException;
+
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static java.lang.System.currentTimeMillis;
+import static java.util.concurrent.TimeUnit.DAYS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static ru.develonica.model.FileType.DIR;
+
+/**
+ * Условия поиска объектов командой <code>find</code>: шаблон имени
+ * (glob или регулярное выражение), диапазон размера, типы файлов
+ * и время изменения. Условия разбираются и шаблон компилируется
+ * один раз, а проверка объекта через <code>EntryMatcher</code>
+ * не создает объектов: имя проверяется как <code>CharSequence</code>,
+ * например, прямо из курсора <code>EntryStore</code>.
+ * <p>
+ * Синтаксис: <code>find [glob] [-name glob] [-regex выражение]
+ * [-size +N|-N] [-type TYPE[,TYPE]] [-mtime +N|-N] [-limit N]</code>.
+ * Размер задается в байтах или с суффиксом K, M, G, время изменения
+ * в днях: <code>-N</code> изменен за последние N дней, <code>+N</code>
+ * раньше. Условие размера проверяется только у файлов, поэтому
+ * директории с ним не находятся.
+ */
+public final class FindQuery {
+
+    // параметры команды
+    private static final String NAME = "-name";
+    private static final String REGEX = "-regex";
+    private static final String SIZE = "-size";
+    private static final String TYPE = "-type";
+    private static final String MTIME = "-mtime";
+    private static final String LIMIT = "-limit";
+    private static final String MORE = "+";
+    private static final String LESS = "-";
+    private static final String TYPE_SEPARATOR = ",";
+
+    /** Суффиксы размера по возрастанию степени. */
+    private static final String SIZE_UNITS = "KMGT";
+
+    /** Множитель суффикса размера. */
+    private static final int SIZE_DIVIDER = 1024;
+
+    /** Шаблон имени или <code>null</code>, если имя не проверяется. */
+    private final Pattern namePattern;
+
+    /** Шаблон должен совпасть со всем именем, а не с его частью. */
+    private final boolean fullMatch;
+
+    /** Минимальный размер файла включительно. */
+    private final long minSize;
+
+    /** Максимальный размер файла включительно. */
+    private final long maxSize;
+
+    /** Задано условие размера. */
+    private final boolean sizeFiltered;
+
+    /** Допустимые типы или <code>null</code>, если тип не проверяется. */
+    private final Set<FileType> types;
+
+    /** Минимальное время изменения в наносекундах включительно. */
+    private final long modifiedAfter;
+
+    /** Максимальное время изменения в наносекундах включительно. */
+    private final long modifiedBefore;
+
+    /** Максимальное количество результатов или 0, если задано по умолчанию. */
+    private final int limit;
+
+    private FindQuery(Builder builder) {
+        this.namePattern = builder.namePattern;
+        this.fullMatch = builder.fullMatch;
+        this.minSize = builder.minSize;
+        this.maxSize = builder.maxSize;
+        this.sizeFiltered = builder.sizeFiltered;
+        this.types = builder.types;
+        this.modifiedAfter = builder.modifiedAfter;
+        this.modifiedBefore = builder.modifiedBefore;
+        this.limit = builder.limit;
+    }
+
+    /**
+     * Разбор параметров команды <code>find</code>.
+     *
+     * @param parameter параметры команды
+     * @return условия поиска
+     * @throws IncorrectCommandException если параметры некорректны
+     */
+    public static FindQuery parse(String parameter) throws IncorrectCommandException {
+        String[] tokens = parameter.strip().split("\\s+");
+        Builder builder = new Builder();
+        try {
+            for (int i = 0; i < tokens.length; i++) {
+                String token = tokens[i];
+                if (!token.startsWith(LESS)) {
+                    builder.name(globToRegex(token), true);
+                    continue;
+                }
+                if (i + 1 == tokens.length) {
+                    throw new IncorrectCommandException();
+                }
+
+                String value = tokens[++i];
+                switch (token) {
+                    case NAME:
+                        builder.name(globToRegex(value), true);
+                        break;
+                    case REGEX:
+                        builder.name(value, false);
+                        break;
+                    case SIZE:
+                        builder.size(value);
+                        break;
+                    case TYPE:
+                        builder.types(value);
+                        break;
+                    case MTIME:
+                        builder.modified(value);
+                        break;
+                    case LIMIT:
+                        builder.limit = Integer.parseInt(value);
+                        if (builder.limit <= 0) {
+                            throw new IncorrectCommandException();
+                        }
+                        break;
+                    default:
+                        throw new IncorrectCommandException();
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            // некорректное число, тип или регулярное выражение
+            throw new IncorrectCommandException();
+        }
+
+        return new FindQuery(builder);
+    }
+
+    /**
+     * Условия отбора файлов не меньше заданного размера,
+     * например, кандидатов в дубликаты.
+     *
+     * @param minSize минимальный размер файла включительно
+     * @return условия поиска
+     */
+    public static FindQuery files(long minSize) {
+        Builder builder = new Builder();
+        builder.sizeFiltered = true;
+        builder.minSize = minSize;
+
+        return new FindQuery(builder);
+    }
+
+    /**
+     * Разбор размера в байтах или с суффиксом K, M, G, T.
+     *
+     * @param value размер
+     * @return размер в байтах
+     * @throws NumberFormatException если размер некорректен
+     */
+    public static long parseSize(String value) {
+        int unit = value.isEmpty()
+                ? -1
+                : SIZE_UNITS.indexOf(Character.toUpperCase(value.charAt(value.length() - 1)));
+        if (unit < 0) {
+            return Long.parseLong(value);
+        }
+
+        long size = Long.parseLong(value.substring(0, value.length() - 1));
+        for (int i = 0; i <= unit; i++) {
+            size *= SIZE_DIVIDER;
+        }
+        return size;
+    }
+
+    /**
+     * Создание проверки объектов. Проверка использует один
+     * <code>Matcher</code>, поэтому ее нельзя разделять между потоками.
+     *
+     * @return проверка объектов
+     */
+    public EntryMatcher matcher() {
+        return new EntryMatcher();
+    }
+
+    /**
+     * Проверка типа нужна до отбора объекта.
+     *
+     * @return <code>true</code> если задано условие типа
+     */
+    public boolean hasTypeFilter() {
+        return types != null;
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Перевод glob шаблона в регулярное выражение. Поддерживаются
+     * <code>*</code>, <code>?</code>, <code>[...]</code> и <code>{a,b}</code>.
+     *
+     * @param glob шаблон
+     * @return регулярное выражение
+     */
+    private static String globToRegex(String glob) {
+        StringBuilder regex = new StringBuilder(glob.length() + 8);
+        boolean inGroup = false;
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            switch (c) {
+                case '*':
+                    regex.append(".*");
+                    break;
+                case '?':
+                    regex.append('.');
+                    break;
+                case '[':
+                case ']':
+                    regex.append(c);
+                    break;
+                case '{':
+                    regex.append("(?:");
+                    inGroup = true;
+                    break;
+                case '}':
+                    regex.append(')');
+                    inGroup = false;
+                    break;
+                case ',':
+                    regex.append(inGroup ? "|" : ",");
+                    break;
+                default:
+                    if ("\\.^$+()|".indexOf(c) >= 0) {
+                        regex.append('\\');
+                    }
+                    regex.append(c);
+            }
+        }
+
+        return regex.toString();
+    }
+
+    /**
+     * Проверка объектов по условиям поиска без создания объектов.
+     */
+    public final class EntryMatcher {
+
+        /** Переиспользуемый <code>Matcher</code> шаблона имени. */
+        private final Matcher nameMatcher;
+
+        private EntryMatcher() {
+            this.nameMatcher = namePattern != null
+                    ? namePattern.matcher("")
+                    : null;
+        }
+
+        /**
+         * Проверка размера и времени изменения, которые известны без имени.
+         *
+         * @param type         тип объекта или <code>null</code>, если он еще не определен
+         * @param directory    объект является директорией
+         * @param size         размер объекта
+         * @param lastModified время изменения в наносекундах
+         * @return <code>true</code> если объект подходит
+         */
+        public boolean matchesAttributes(FileType type, boolean directory, long size, long lastModified) {
+            if (sizeFiltered && (directory || size < minSize || size > maxSize)) {
+                return false;
+            }
+            if (lastModified < modifiedAfter || lastModified > modifiedBefore) {
+                return false;
+            }
+
+            return type == null || types == null || types.contains(type);
+        }
+
+        /**
+         * Проверка имени объекта.
+         *
+         * @param name имя объекта
+         * @return <code>true</code> если имя подходит
+         */
+        public boolean matchesName(CharSequence name) {
+            if (nameMatcher == null) {
+                return true;
+            }
+            nameMatcher.reset(name);
+
+            return fullMatch ? nameMatcher.matches() : nameMatcher.find();
+        }
+
+        /**
+         * Проверка объекта по всем условиям.
+         *
+         * @param name         имя объекта
+         * @param type         тип объекта
+         * @param size         размер объекта
+         * @param lastModified время изменения в наносекундах
+         * @return <code>true</code> если объект подходит
+         */
+        public boolean matches(CharSequence name, FileType type, long size, long lastModified) {
+            return matchesAttributes(type, type == DIR, size, lastModified) && matchesName(name);
+        }
+    }
+
+    /**
+     * Накопление условий при разборе команды.
+     */
+    private static final class Builder {
+
+        private Pattern namePattern;
+        private boolean fullMatch;
+        private long minSize = Long.MIN_VALUE;
+        private long maxSize = Long.MAX_VALUE;
+        private boolean sizeFiltered;
+        private Set<FileType> types;
+        private long modifiedAfter = Long.MIN_VALUE;
+        private long modifiedBefore = Long.MAX_VALUE;
+        private int limit;
+
+        private void name(String regex, boolean fullMatch) throws PatternSyntaxException {
+            this.namePattern = Pattern.compile(regex);
+            this.fullMatch = fullMatch;
+        }
+
+        private void size(String value) {
+            sizeFiltered = true;
+            if (value.startsWith(MORE)) {
+                minSize = parseSize(value.substring(1)) + 1;
+            } else if (value.startsWith(LESS)) {
+                maxSize = parseSize(value.substring(1)) - 1;
+            } else {
+                minSize = parseSize(value);
+                maxSize = minSize;
+            }
+        }
+
+        private void types(String value) {
+            types = EnumSet.noneOf(FileType.class);
+            for (String type : value.split(TYPE_SEPARATOR)) {
+                types.add(FileType.valueOf(type.toUpperCase()));
+            }
+        }
+
+        private void modified(String value) {
+            long now = MILLISECONDS.toNanos(currentTimeMillis());
+            if (value.startsWith(MORE)) {
+                modifiedBefore = now - DAYS.toNanos(Long.parseLong(value.substring(1)));
+            } else if (value.startsWith(LESS)) {
+                modifiedAfter = now - DAYS.toNanos(Long.parseLong(value.substring(1)));
+            } else {
+                throw new IllegalArgumentException(value);
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package ru.develonica.model;
+
+import java.nio.file.Path;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Результаты поиска, которые потоки поиска передают потоку вывода
+ * по мере нахождения. Количество результатов ограничено: после
+ * последнего допустимого результата поиск отменяется признаком отмены.
+ */
+public class FindResults {
+
+    /** Найденные, но еще не выведенные объекты. */
+    private final BlockingQueue<Found> queue = new LinkedBlockingQueue<>();
+
+    /** Количество принятых результатов. */
+    private final AtomicInteger count = new AtomicInteger();
+
+    /** Максимальное количество результатов. */
+    private final int limit;
+
+    /** Признак отмены поиска. */
+    private final CancellationToken token;
+
+    public FindResults(int limit, CancellationToken token) {
+        this.limit = limit;
+        this.token = token;
+    }
+
+    /**
+     * Добавление найденного объекта.
+     *
+     * @param path     путь объекта
+     * @param fileInfo объект
+     * @return <code>false</code> если поиск нужно остановить
+     */
+    public boolean add(Path path, FileInfo fileInfo) {
+        int number = count.incrementAndGet();
+        if (number > limit) {
+            token.cancel();
+            return false;
+        }
+
+        queue.add(new Found(path, fileInfo));
+        if (number == limit) {
+            token.cancel();
+            return false;
+        }
+        return !token.isCancelled();
+    }
+
+    /**
+     * Получение следующего найденного объекта.
+     *
+     * @param timeout время ожидания
+     * @param unit    единица времени ожидания
+     * @return объект или <code>null</code>, если за время ожидания ничего не найдено
+     * @throws InterruptedException если ожидание прервано
+     */
+    public Found poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return queue.poll(timeout, unit);
+    }
+
+    public CancellationToken getToken() {
+        return token;
+    }
+
+    /**
+     * Количество найденных объектов.
+     *
+     * @return количество, не больше ограничения
+     */
+    public int getCount() {
+        return Math.min(count.get(), limit);
+    }
+
+    /**
+     * Проверка достижения ограничения.
+     *
+     * @return <code>true</code> если найдено максимальное количество объектов
+     */
+    public boolean isLimitReached() {
+        return count.get() >= limit;
+    }
+
+    /**
+     * Найденный объект.
+     */
+    public static final class Found {
+
+        /** Путь объекта. */
+        private final Path path;
+
+        /** Объект. */
+        private final FileInfo fileInfo;
+
+        private Found(Path path, FileInfo fileInfo) {
+            this.path = path;
+            this.fileInfo = fileInfo;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public FileInfo getFileInfo() {
+            return fileInfo;
+        }
+    }
+}
@@ -24,9 +24,30 @@ public enum Item {
     /** Удалить директории.*/
     RMDIR,
 
+    /** Копировать файл или директорию. */
+    CP,
+
+    /** Переместить файл или директорию. */
+    MV,
+
+    /** Найти файлы и директории. */
+    FIND,
+
+    /** Найти файлы с одинаковым содержимым. */
+    DUPES,
+
+    /** Показать самые большие файлы и директории. */
+    TOP,
+
     /** Обновить список файлов в текущей директории. */
     REFRESH,
 
+    /** Показать фоновые задачи. */
+    JOBS,
+
+    /** Отменить фоновую задачу. */
+    CANCEL,
+
     /** Выход из программы. */
     EXIT
 }
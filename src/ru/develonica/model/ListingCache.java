@@ -0,0 +1,164 @@
+package ru.develonica.model;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Кэш содержимого директорий, прочитанных при подсчете размера.
+ * Подсчет размера все равно читает каждую директорию поддерева,
+ * поэтому ее объекты сохраняются, и при переходе в такую директорию
+ * она не читается с диска повторно. Запись забирается из кэша при переходе
+ * и считается актуальной, пока не изменилось время изменения директории.
+ * При превышении лимита памяти вытесняются давно не использованные записи.
+ */
+public class ListingCache {
+
+    /** Примерный размер записи без учета хранилища и строки пути, в байтах. */
+    private static final int ENTRY_OVERHEAD = 128;
+
+    /** Лимит памяти кэша в байтах. */
+    private final long maxBytes;
+
+    /** Записи кэша в порядке последнего обращения. */
+    private final LinkedHashMap<String, Listing> listings;
+
+    /** Примерный объем памяти, занятый записями. */
+    private long usedBytes;
+
+    public ListingCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+        this.listings = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Сохранение содержимого директории. Директория, которая одна
+     * больше лимита, не сохраняется.
+     *
+     * @param realPath     реальный путь директории
+     * @param lastModified время изменения директории
+     * @param entries      объекты директории с посчитанными размерами
+     */
+    public synchronized void put(String realPath, long lastModified, EntryStore entries) {
+        Listing listing = new Listing(entries, lastModified, weight(realPath, entries));
+        if (listing.weight > maxBytes) {
+            return;
+        }
+
+        Listing previous = listings.put(realPath, listing);
+        usedBytes += listing.weight - (previous == null ? 0 : previous.weight);
+
+        // вытеснить давно не использованные записи
+        Iterator<Listing> iterator = listings.values().iterator();
+        while (usedBytes > maxBytes && iterator.hasNext()) {
+            usedBytes -= iterator.next().weight;
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Получение содержимого директории с удалением его из кэша.
+     *
+     * @param realPath     реальный путь директории
+     * @param lastModified текущее время изменения директории
+     * @return объекты директории или <code>null</code>, если их нет или они устарели
+     */
+    public synchronized EntryStore take(String realPath, long lastModified) {
+        Listing listing = listings.remove(realPath);
+        if (listing == null) {
+            return null;
+        }
+        usedBytes -= listing.weight;
+
+        return listing.lastModified == lastModified
+                ? listing.entries
+                : null;
+    }
+
+    /**
+     * Поиск объектов в содержимом директории без удаления его из кэша.
+     *
+     * @param realPath     реальный путь директории
+     * @param lastModified текущее время изменения директории
+     * @param matcher      проверка объектов
+     * @param found        получатель подходящих объектов, возвращает <code>false</code>,
+     *                     если поиск нужно остановить
+     * @param subFolders   получатель имен поддиректорий
+     * @return <code>false</code> если содержимого нет или оно устарело
+     */
+    public synchronized boolean find(String realPath, long lastModified, FindQuery.EntryMatcher matcher,
+                                     Predicate<FileInfo> found, Consumer<String> subFolders) {
+        Listing listing = listings.get(realPath);
+        if (listing == null || listing.lastModified != lastModified) {
+            return false;
+        }
+
+        listing.entries.find(matcher, found, subFolders);
+        return true;
+    }
+
+    /**
+     * Проверка наличия записи директории без учета ее актуальности.
+     *
+     * @param realPath реальный путь директории
+     * @return <code>true</code> если запись есть
+     */
+    public synchronized boolean contains(String realPath) {
+        return listings.containsKey(realPath);
+    }
+
+    /**
+     * Удаление записи директории.
+     *
+     * @param realPath реальный путь директории
+     */
+    public synchronized void remove(String realPath) {
+        Listing listing = listings.remove(realPath);
+        if (listing != null) {
+            usedBytes -= listing.weight;
+        }
+    }
+
+    /** Удаление всех записей. */
+    public synchronized void clear() {
+        listings.clear();
+        usedBytes = 0;
+    }
+
+    /**
+     * Передача всех записей в новый снимок.
+     *
+     * @param writer запись снимка
+     */
+    public synchronized void writeTo(TreeSnapshot.Writer writer) {
+        listings.forEach((realPath, listing) -> writer.addListing(realPath, listing.lastModified, listing.entries));
+    }
+
+    /**
+     * Примерный объем памяти, который занимает запись.
+     *
+     * @param realPath ключ записи
+     * @param entries  объекты директории
+     * @return размер в байтах
+     */
+    private static long weight(String realPath, EntryStore entries) {
+        return ENTRY_OVERHEAD + 2L * realPath.length() + entries.footprint();
+    }
+
+    /**
+     * Содержимое одной директории.
+     */
+    private static final class Listing {
+        private final EntryStore entries;
+        private final long lastModified;
+        private final long weight;
+
+        private Listing(EntryStore entries, long lastModified, long weight) {
+            this.entries = entries;
+            this.lastModified = lastModified;
+            this.weight = weight;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package ru.develonica.model;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
+import static java.nio.file.StandardOpenOption.READ;
+import static ru.develonica.model.FileType.ARCHIVE;
+import static ru.develonica.model.FileType.DOCUMENT;
+import static ru.develonica.model.FileType.JAVA_FILE;
+import static ru.develonica.model.FileType.MUSIC;
+import static ru.develonica.model.FileType.OTHER_FILE;
+import static ru.develonica.model.FileType.PICTURE;
+
+/**
+ * Определение типа файла по первым байтам содержимого.
+ * Содержимое читается, только если другой способ не определил тип,
+ * и только у обычных файлов, чтобы не ждать на именованных каналах
+ * и устройствах. Читается не больше <code>HEADER_SIZE</code> байт.
+ */
+public class MagicClassifier implements TypeClassifier {
+
+    /** Количество байт, которые читаются из начала файла. */
+    private static final int HEADER_SIZE = 8;
+
+    /** Сигнатуры начала файлов. */
+    private static final byte[][] SIGNATURES = {
+            {(byte) 0x89, 'P', 'N', 'G'},
+            {(byte) 0xFF, (byte) 0xD8, (byte) 0xFF},
+            {'G', 'I', 'F', '8'},
+            {'B', 'M'},
+            {'%', 'P', 'D', 'F'},
+            {'P', 'K', 3, 4},
+            {'R', 'a', 'r', '!'},
+            {'7', 'z', (byte) 0xBC, (byte) 0xAF},
+            {0x1F, (byte) 0x8B},
+            {'I', 'D', '3'},
+            {(byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE}
+    };
+
+    /** Типы файлов по сигнатурам. */
+    private static final FileType[] SIGNATURE_TYPES = {
+            PICTURE,
+            PICTURE,
+            PICTURE,
+            PICTURE,
+            DOCUMENT,
+            ARCHIVE,
+            ARCHIVE,
+            ARCHIVE,
+            ARCHIVE,
+            MUSIC,
+            JAVA_FILE
+    };
+
+    /** Буфер начала файла для каждого потока. */
+    private static final ThreadLocal<ByteBuffer> HEADER =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocate(HEADER_SIZE));
+
+    /** Основной способ определения типа. */
+    private final TypeClassifier classifier;
+
+    public MagicClassifier(TypeClassifier classifier) {
+        this.classifier = classifier;
+    }
+
+    @Override
+    public FileType classify(Path path, String name, boolean regularFile) {
+        FileType fileType = classifier.classify(path, name, regularFile);
+        if (fileType != OTHER_FILE || !regularFile) {
+            return fileType;
+        }
+
+        ByteBuffer header = HEADER.get();
+        header.clear();
+        try (FileChannel channel = FileChannel.open(path, READ, NOFOLLOW_LINKS)) {
+            while (header.hasRemaining() && channel.read(header) > 0) {
+                // дочитать начало файла
+            }
+        } catch (IOException | UnsupportedOperationException e) {
+            // нет прав на чтение или файл удален, тип остается неизвестным
+            return OTHER_FILE;
+        }
+
+        return match(header.array(), header.position());
+    }
+
+    /**
+     * Поиск сигнатуры, с которой начинается файл.
+     *
+     * @param header начало файла
+     * @param length количество прочитанных байт
+     * @return тип файла или <code>OTHER_FILE</code>, если сигнатура неизвестна
+     */
+    private static FileType match(byte[] header, int length) {
+        for (int i = 0; i < SIGNATURES.length; i++) {
+            byte[] signature = SIGNATURES[i];
+            if (signature.length > length) {
+                continue;
+            }
+
+            int j = 0;
+            while (j < signature.length && header[j] == signature[j]) {
+                j++;
+            }
+            if (j == signature.length) {
+                return SIGNATURE_TYPES[i];
+            }
+        }
+
+        return OTHER_FILE;
+    }
+}
@@ -1,7 +1,13 @@
 package ru.develonica.model;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.file.WatchKey;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static ru.develonica.model.FileInfo.UNKNOWN_SIZE;
 
 /**
  * Из объектов данного класса состоит файловое дерево
@@ -9,10 +15,11 @@ import java.util.List;
 public final class Node {
 
     /**
-     * Объект, который хранит всю необходимую информацию для
-     * отображения пользователю.
+     * Хранилище, которое содержит всю необходимую информацию об объектах
+     * директории для отображения пользователю. Изменяется
+     * под блокировкой директории.
      */
-    final List<FileInfo> fileInfo;
+    final EntryStore entries;
 
     /** Текущая директория в структуре файлового дерева. */
     final String currentFolder;
@@ -23,28 +30,193 @@ public final class Node {
      */
     final String realPath;
 
-    /** Файлы и папки находящиеся в текущей директории файлового дерева. */
-    final List<Node> children;
+    /**
+     * Посещенные поддиректории текущей директории файлового дерева
+     * по их пути в структуре дерева.
+     */
+    final Map<String, Node> children;
+
+    /**
+     * Директория, которая хранит объекты. Для директории, которая
+     * является символьной ссылкой на уже добавленную в дерево директорию,
+     * это добавленная ранее директория, иначе сама директория.
+     */
+    final Node origin;
 
     /** Ссылка на родительскую папку. */
     Node parent;
 
     /** Общий размер текущей директории. */
-    long totalSize;
+    final LongAdder totalSize;
 
     /** Общее количество объектов в текущей директории. */
-    int totalObjects;
+    final LongAdder totalObjects;
+
+    /** Количество системных вызовов, сэкономленных при заполнении директории. */
+    final LongAdder syscallsSaved;
+
+    /** Буфер, в который потоки пишут объекты, пока идет заполнение. */
+    EntryBuffer pending;
 
     /** Проверка, добавлена ли директория в файловое дерево. */
     boolean isExists;
 
-    /** Проверка, заполнена ли директория всеми объектами. */
-    boolean isFilesExist;
+    /**
+     * Время изменения директории на момент чтения ее объектов
+     * или 0, если оно неизвестно.
+     */
+    volatile long lastModified;
+
+    /** Признак отмены текущего заполнения директории. */
+    volatile CancellationToken cancellation;
+
+    /**
+     * Признак директории, заполнение которой было отменено
+     * или часть объектов которой не удалось прочитать.
+     */
+    volatile boolean partial;
+
+    /** Завершение заполнения директории всеми объектами. */
+    volatile CompletableFuture<Void> scan;
+
+    /** Канал объектов, найденных во время заполнения директории. */
+    ScanChannel channel;
+
+    /** Регистрация отслеживания изменений или <code>null</code>, если директория не отслеживается. */
+    volatile WatchKey watchKey;
 
     Node(String currentFolder, String realPath) {
         this.currentFolder = currentFolder;
         this.realPath = realPath;
-        this.children = new ArrayList<>();
-        this.fileInfo = new ArrayList<>();
+        this.children = new HashMap<>();
+        this.origin = this;
+        this.entries = new EntryStore();
+        this.totalSize = new LongAdder();
+        this.totalObjects = new LongAdder();
+        this.syscallsSaved = new LongAdder();
+        this.scan = completedFuture(null);
+        this.cancellation = new CancellationToken();
+        this.channel = new ScanChannel();
+        this.channel.close();
+    }
+
+    /**
+     * Директория, которая ведет к уже добавленной в дерево директории
+     * другим путем и использует ее объекты.
+     *
+     * @param currentFolder текущая директория
+     * @param origin        добавленная ранее директория с тем же реальным путем
+     */
+    Node(String currentFolder, Node origin) {
+        this.currentFolder = currentFolder;
+        this.realPath = origin.realPath;
+        this.children = new HashMap<>();
+        this.origin = origin;
+        this.entries = origin.entries;
+        this.totalSize = origin.totalSize;
+        this.totalObjects = origin.totalObjects;
+        this.syscallsSaved = origin.syscallsSaved;
+    }
+
+    public String getRealPath() {
+        return realPath;
+    }
+
+    public long getTotalSize() {
+        return totalSize.sum();
+    }
+
+    public CompletableFuture<Void> getScan() {
+        return scan;
+    }
+
+    public long getLastModified() {
+        return origin.lastModified;
+    }
+
+    public void setLastModified(long lastModified) {
+        origin.lastModified = lastModified;
+    }
+
+    public void setWatchKey(WatchKey watchKey) {
+        origin.watchKey = watchKey;
+    }
+
+    /**
+     * Прекращение отслеживания изменений директории.
+     */
+    void cancelWatch() {
+        WatchKey key = origin.watchKey;
+        if (key != null) {
+            key.cancel();
+            origin.watchKey = null;
+        }
+    }
+
+    public boolean isPartial() {
+        return origin.partial;
+    }
+
+    public void setPartial(boolean partial) {
+        origin.partial = partial;
+    }
+
+    /**
+     * Отмена заполнения директории, если оно еще идет.
+     */
+    public void cancelScan() {
+        if (!origin.scan.isDone()) {
+            origin.cancellation.cancel();
+        }
+    }
+
+    /**
+     * Добавление объекта во время заполнения директории.
+     * Может вызываться одновременно из разных потоков.
+     *
+     * @param fileInfo объект
+     * @return ссылка на объект для последующего изменения размера
+     */
+    public long addEntry(FileInfo fileInfo) {
+        long reference = pending.append(fileInfo);
+        totalObjects.increment();
+        if (fileInfo.getFileSize() != UNKNOWN_SIZE) {
+            totalSize.add(fileInfo.getFileSize());
+        }
+
+        return reference;
+    }
+
+    /**
+     * Установка посчитанного размера объекта во время заполнения директории.
+     *
+     * @param reference ссылка на объект, полученная при добавлении
+     * @param fileSize  размер объекта
+     */
+    public void setEntrySize(long reference, long fileSize) {
+        pending.setFileSize(reference, fileSize);
+        totalSize.add(fileSize);
+    }
+
+    /**
+     * Учет сэкономленных системных вызовов.
+     *
+     * @param syscalls количество вызовов
+     */
+    public void addSyscallsSaved(long syscalls) {
+        syscallsSaved.add(syscalls);
+    }
+
+    /**
+     * Завершение заполнения директории: объекты из буфера
+     * переносятся в компактное хранилище. У директории, заполненной
+     * из кэша или снимка, буфера нет. Выполняется под блокировкой
+     * директории, под которой объекты копируются в снимок.
+     */
+    public synchronized void seal() {
+        if (pending != null) {
+            pending.drainTo(entries);
+            pending = null;
+        }
     }
 }
@@ -0,0 +1,141 @@
+package ru.develonica.model;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static ru.develonica.model.ScanChannel.State.ATTACHED;
+import static ru.develonica.model.ScanChannel.State.CLOSED;
+import static ru.develonica.model.ScanChannel.State.OPEN;
+
+/**
+ * Канал, по которому потоки заполнения директории передают найденные
+ * объекты единственному получателю, пока заполнение еще идет.
+ * Если получатель так и не подключился до конца заполнения,
+ * накопленные события отбрасываются.
+ */
+public class ScanChannel {
+
+    /** Маркер конца заполнения. */
+    private static final Event END = new Event(null, false);
+
+    /** Состояние канала. */
+    enum State {
+
+        /** Заполнение идет, получателя нет. */
+        OPEN,
+
+        /** Получатель подключен. */
+        ATTACHED,
+
+        /** Заполнение завершено без получателя. */
+        CLOSED
+    }
+
+    /** Очередь событий. */
+    private final BlockingQueue<Event> events;
+
+    /** Текущее состояние канала. */
+    private final AtomicReference<State> state;
+
+    public ScanChannel() {
+        this.events = new LinkedBlockingQueue<>();
+        this.state = new AtomicReference<>(OPEN);
+    }
+
+    /**
+     * Передача нового объекта директории.
+     *
+     * @param fileInfo объект
+     */
+    public void publish(FileInfo fileInfo) {
+        if (state.get() != CLOSED) {
+            events.add(new Event(fileInfo, false));
+        }
+    }
+
+    /**
+     * Передача объекта, у которого стал известен размер.
+     *
+     * @param fileInfo объект
+     */
+    public void update(FileInfo fileInfo) {
+        if (state.get() != CLOSED) {
+            events.add(new Event(fileInfo, true));
+        }
+    }
+
+    /**
+     * Завершение заполнения. Вызывается после всех событий.
+     */
+    public void close() {
+        if (!state.compareAndSet(OPEN, CLOSED)) {
+            events.add(END);
+        } else {
+            events.clear();
+        }
+    }
+
+    /**
+     * Подключение получателя.
+     *
+     * @return <code>true</code> если получатель подключен и получит
+     * все события, <code>false</code> если заполнение уже завершено
+     * или получатель уже есть.
+     */
+    public boolean attach() {
+        return state.compareAndSet(OPEN, ATTACHED);
+    }
+
+    /**
+     * Получение следующего события без ожидания.
+     *
+     * @return событие или <code>null</code>, если событий пока нет
+     */
+    public Event poll() {
+        return events.poll();
+    }
+
+    /**
+     * Получение следующего события с ожиданием.
+     *
+     * @return событие
+     */
+    public Event take() {
+        try {
+            return events.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return END;
+        }
+    }
+
+    /**
+     * Событие канала.
+     */
+    public static final class Event {
+
+        /** Объект директории. */
+        private final FileInfo fileInfo;
+
+        /** Признак того, что у объекта стал известен размер. */
+        private final boolean update;
+
+        private Event(FileInfo fileInfo, boolean update) {
+            this.fileInfo = fileInfo;
+            this.update = update;
+        }
+
+        public FileInfo getFileInfo() {
+            return fileInfo;
+        }
+
+        public boolean isUpdate() {
+            return update;
+        }
+
+        public boolean isEnd() {
+            return this == END;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package ru.develonica.model;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Кэш данных директорий для подсчета размеров, общий для всех директорий
+ * файлового дерева. Ключом служит реальный путь директории, а хранятся
+ * только ее собственные файлы и имена поддиректорий, поэтому итог
+ * поддерева собирается по записям всех его директорий. Запись считается
+ * актуальной, пока не изменилось время изменения директории. При превышении
+ * лимита памяти вытесняются давно не использованные записи. Если записи
+ * в кэше нет, она берется из снимка прошлого запуска.
+ */
+public class SizeCache {
+
+    /** Примерный размер записи без учета строк путей, в байтах. */
+    private static final int ENTRY_OVERHEAD = 128;
+
+    /** Примерный размер имени поддиректории без учета символов, в байтах. */
+    private static final int NAME_OVERHEAD = 48;
+
+    /** Лимит памяти кэша в байтах. */
+    private final long maxBytes;
+
+    /** Записи кэша в порядке последнего обращения. */
+    private final LinkedHashMap<String, DirectoryLevel> entries;
+
+    /** Примерный объем памяти, занятый записями. */
+    private long usedBytes;
+
+    /** Снимок прошлого запуска или <code>null</code>, если его нет. */
+    private final TreeSnapshot snapshot;
+
+    public SizeCache(long maxBytes, TreeSnapshot snapshot) {
+        this.maxBytes = maxBytes;
+        this.snapshot = snapshot;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Получение данных директории, если они не устарели.
+     *
+     * @param realPath     реальный путь директории
+     * @param lastModified текущее время изменения директории
+     * @return данные директории или <code>null</code>, если ее нужно прочитать заново
+     */
+    public synchronized DirectoryLevel get(String realPath, long lastModified) {
+        DirectoryLevel level = entries.get(realPath);
+        if (level == null) {
+            level = snapshot == null ? null : snapshot.level(realPath, lastModified);
+            if (level != null) {
+                put(realPath, level);
+            }
+            return level;
+        }
+
+        if (level.getLastModified() != lastModified) {
+            // директория изменилась, запись больше не нужна
+            remove(realPath);
+            return null;
+        }
+
+        return level;
+    }
+
+    /**
+     * Сохранение данных директории.
+     *
+     * @param realPath реальный путь директории
+     * @param level    данные директории
+     */
+    public synchronized void put(String realPath, DirectoryLevel level) {
+        DirectoryLevel previous = entries.put(realPath, level);
+        usedBytes += weight(realPath, level) - (previous == null ? 0 : weight(realPath, previous));
+
+        // вытеснить давно не использованные записи
+        Iterator<Map.Entry<String, DirectoryLevel>> iterator = entries.entrySet().iterator();
+        while (usedBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, DirectoryLevel> entry = iterator.next();
+            usedBytes -= weight(entry.getKey(), entry.getValue());
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Удаление записи директории.
+     *
+     * @param realPath реальный путь директории
+     */
+    public synchronized void remove(String realPath) {
+        DirectoryLevel level = entries.remove(realPath);
+        if (level != null) {
+            usedBytes -= weight(realPath, level);
+        }
+        if (snapshot != null) {
+            snapshot.discard(realPath);
+        }
+    }
+
+    /** Удаление всех записей, в том числе записей снимка. */
+    public synchronized void clear() {
+        entries.clear();
+        usedBytes = 0;
+        if (snapshot != null) {
+            snapshot.discardAll();
+        }
+    }
+
+    /**
+     * Передача всех записей в новый снимок.
+     *
+     * @param writer запись снимка
+     */
+    public synchronized void writeTo(TreeSnapshot.Writer writer) {
+        entries.forEach(writer::addLevel);
+    }
+
+    /**
+     * Примерный объем памяти, который занимает запись.
+     *
+     * @param realPath ключ записи
+     * @param level    данные директории
+     * @return размер в байтах
+     */
+    private static long weight(String realPath, DirectoryLevel level) {
+        long weight = ENTRY_OVERHEAD + 2L * realPath.length();
+        for (String name : level.getSubFolders()) {
+            weight += NAME_OVERHEAD + 2L * name.length();
+        }
+
+        return weight;
+    }
+}
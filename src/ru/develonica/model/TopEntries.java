@@ -0,0 +1,157 @@
+package ru.develonica.model;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import static java.util.Comparator.comparingLong;
+
+/**
+ * Самые большие файлы и директории поддерева. Для каждого вида
+ * хранится не больше заданного количества объектов в куче, где
+ * наверху самый маленький из них, поэтому память не зависит от
+ * размера поддерева, а объект меньше самого маленького отбрасывается
+ * без создания записи. Экземпляр не потокобезопасен: каждый поток
+ * обхода заполняет свой экземпляр, а в конце они объединяются.
+ */
+public class TopEntries {
+
+    /** Максимальное количество объектов каждого вида. */
+    private final int limit;
+
+    /** Самые большие файлы. */
+    private final PriorityQueue<Ranked> files;
+
+    /** Самые большие директории. */
+    private final PriorityQueue<Ranked> directories;
+
+    public TopEntries(int limit) {
+        this.limit = limit;
+        this.files = new PriorityQueue<>(limit + 1, comparingLong(Ranked::getSize));
+        this.directories = new PriorityQueue<>(limit + 1, comparingLong(Ranked::getSize));
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * Проверка, попадет ли файл такого размера в самые большие,
+     * до создания пути файла.
+     *
+     * @param size размер файла
+     * @return <code>true</code> если файл нужно учесть
+     */
+    public boolean acceptsFile(long size) {
+        return accepts(files, size);
+    }
+
+    /**
+     * Учет файла.
+     *
+     * @param path путь файла
+     * @param size размер файла
+     * @param type тип файла или <code>null</code>, если он еще не определен
+     */
+    public void offerFile(Path path, long size, FileType type) {
+        offer(files, path, size, type);
+    }
+
+    /**
+     * Учет директории.
+     *
+     * @param path путь директории
+     * @param size размер директории со всем содержимым
+     */
+    public void offerDirectory(Path path, long size) {
+        offer(directories, path, size, FileType.DIR);
+    }
+
+    /**
+     * Добавление объектов другого экземпляра.
+     *
+     * @param other объекты, собранные другим потоком
+     */
+    public void merge(TopEntries other) {
+        other.files.forEach(ranked -> offer(files, ranked));
+        other.directories.forEach(ranked -> offer(directories, ranked));
+    }
+
+    /**
+     * Самые большие файлы.
+     *
+     * @return файлы от большего к меньшему
+     */
+    public List<Ranked> getFiles() {
+        return sorted(files);
+    }
+
+    /**
+     * Самые большие директории.
+     *
+     * @return директории от большей к меньшей
+     */
+    public List<Ranked> getDirectories() {
+        return sorted(directories);
+    }
+
+    private boolean accepts(PriorityQueue<Ranked> heap, long size) {
+        return heap.size() < limit || heap.peek().size < size;
+    }
+
+    private void offer(PriorityQueue<Ranked> heap, Path path, long size, FileType type) {
+        if (accepts(heap, size)) {
+            offer(heap, new Ranked(path, size, type));
+        }
+    }
+
+    private void offer(PriorityQueue<Ranked> heap, Ranked ranked) {
+        if (heap.size() < limit) {
+            heap.add(ranked);
+        } else if (heap.peek().size < ranked.size) {
+            heap.poll();
+            heap.add(ranked);
+        }
+    }
+
+    private static List<Ranked> sorted(PriorityQueue<Ranked> heap) {
+        List<Ranked> result = new ArrayList<>(heap);
+        result.sort(comparingLong(Ranked::getSize).reversed());
+
+        return result;
+    }
+
+    /**
+     * Объект поддерева с размером.
+     */
+    public static final class Ranked {
+
+        /** Путь объекта. */
+        private final Path path;
+
+        /** Размер объекта. */
+        private final long size;
+
+        /** Тип объекта или <code>null</code>, если он еще не определен. */
+        private final FileType type;
+
+        private Ranked(Path path, long size, FileType type) {
+            this.path = path;
+            this.size = size;
+            this.type = type;
+        }
+
+        public Path getPath() {
+            return path;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        public FileType getType() {
+            return type;
+        }
+    }
+}
@@ -0,0 +1,630 @@
+package ru.develonica.model;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Снимок файлового дерева на диске, по которому при следующем запуске
+ * директории не читаются заново. Снимок хранит по реальному пути
+ * директории размер ее собственных файлов, имена ее поддиректорий и ее
+ * объекты вместе со временем изменения директории, на момент которого
+ * они прочитаны. Размер поддерева собирается по записям всех его
+ * директорий, поэтому изменение на любой глубине не остается незамеченным.
+ * <p>
+ * Файл отображается в память только для чтения, а записи находятся
+ * по хэш-таблице с открытой адресацией в конце файла, поэтому при
+ * открытии ничего не разбирается: границы записи проверяются при первом
+ * обращении к ней, поврежденная запись отбрасывается, а разбирается
+ * запись, только если время изменения директории не изменилось.
+ * Записи, которые устарели за время работы, и записи директорий, которых
+ * больше нет, отбрасываются и не переносятся в следующий снимок.
+ * <p>
+ * Формат: заголовок (признак, версия, количество ячеек таблицы, смещение
+ * таблицы), записи и таблица смещений записей. Запись: длина записи, путь
+ * в UTF-8, признаки, время изменения, размер файлов и количество объектов
+ * директории, время изменения директории при чтении объектов, длина и список
+ * имен поддиректорий и хранилище объектов.
+ */
+public final class TreeSnapshot {
+
+    /** Признак файла снимка. */
+    private static final int MAGIC = 0x464D534E;
+
+    /** Версия формата снимка. */
+    private static final int VERSION = 2;
+
+    /** Размер заголовка в байтах. */
+    private static final int HEADER_SIZE = 16;
+
+    /** Размер записи без пути, имен поддиректорий и хранилища объектов в байтах. */
+    private static final int RECORD_OVERHEAD = 4 + 4 + 1 + 8 + 8 + 8 + 8 + 4;
+
+    /** Признак записи с данными директории для подсчета размера. */
+    private static final int HAS_LEVEL = 1;
+
+    /** Признак записи с объектами директории. */
+    private static final int HAS_LISTING = 2;
+
+    /** Смещение пустой ячейки таблицы. */
+    private static final int EMPTY = 0;
+
+    /** Признак ячейки с поврежденной записью. */
+    private static final int CORRUPT = -1;
+
+    /** Время изменения директории, которой больше нет. */
+    private static final long MISSING = -1L;
+
+    /** Отображенный в память файл снимка. */
+    private final MappedByteBuffer buffer;
+
+    /** Смещение таблицы записей. */
+    private final int tableOffset;
+
+    /** Количество ячеек таблицы, степень двойки. */
+    private final int slots;
+
+    /** Ячейки устаревших и поврежденных записей. */
+    private final BitSet discarded;
+
+    /** Ячейки, границы записей которых проверены. */
+    private final BitSet verified;
+
+    /** Признак того, что устарели все записи. */
+    private boolean discardedAll;
+
+    private TreeSnapshot(MappedByteBuffer buffer, int tableOffset, int slots) {
+        this.buffer = buffer;
+        this.tableOffset = tableOffset;
+        this.slots = slots;
+        this.discarded = new BitSet(slots);
+        this.verified = new BitSet(slots);
+    }
+
+    /**
+     * Открытие снимка. Файл только отображается в память.
+     *
+     * @param file файл снимка
+     * @return снимок или <code>null</code>, если файла нет или он поврежден
+     */
+    public static TreeSnapshot open(Path file) {
+        try (FileChannel channel = FileChannel.open(file, READ)) {
+            long length = channel.size();
+            if (length < HEADER_SIZE || length > Integer.MAX_VALUE) {
+                return null;
+            }
+
+            // отображение остается действительным после закрытия канала
+            MappedByteBuffer buffer = channel.map(READ_ONLY, 0, length);
+            int slots = buffer.getInt(8);
+            int tableOffset = buffer.getInt(12);
+            if (buffer.getInt(0) != MAGIC
+                    || buffer.getInt(4) != VERSION
+                    || Integer.bitCount(slots) != 1
+                    || tableOffset < HEADER_SIZE
+                    || tableOffset + 4L * slots != length) {
+                return null;
+            }
+
+            return new TreeSnapshot(buffer, tableOffset, slots);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Получение данных директории для подсчета размера.
+     *
+     * @param realPath     реальный путь директории
+     * @param lastModified текущее время изменения директории
+     * @return данные директории или <code>null</code>, если их нет или они устарели
+     */
+    public synchronized DirectoryLevel level(String realPath, long lastModified) {
+        int offset = find(realPath);
+        if (offset == EMPTY || (flags(offset) & HAS_LEVEL) == 0) {
+            return null;
+        }
+        if (buffer.getLong(fieldsOffset(offset)) != lastModified) {
+            return null;
+        }
+
+        return readLevel(offset);
+    }
+
+    /**
+     * Получение объектов директории.
+     *
+     * @param realPath     реальный путь директории
+     * @param lastModified текущее время изменения директории
+     * @return объекты директории или <code>null</code>, если их нет или они устарели
+     */
+    public synchronized EntryStore listing(String realPath, long lastModified) {
+        int offset = find(realPath);
+        if (offset == EMPTY || (flags(offset) & HAS_LISTING) == 0) {
+            return null;
+        }
+
+        if (buffer.getLong(fieldsOffset(offset) + 24) != lastModified) {
+            return null;
+        }
+
+        return EntryStore.readFrom(buffer.duplicate().position(entriesOffset(offset)));
+    }
+
+    /**
+     * Проверка наличия объектов директории без учета их актуальности.
+     *
+     * @param realPath реальный путь директории
+     * @return <code>true</code> если объекты есть
+     */
+    public synchronized boolean hasListing(String realPath) {
+        int offset = find(realPath);
+
+        return offset != EMPTY && (flags(offset) & HAS_LISTING) != 0;
+    }
+
+    /**
+     * Отбрасывание записи директории, данные которой
+     * больше не актуальны, даже если время ее изменения прежнее.
+     *
+     * @param realPath реальный путь директории
+     */
+    public synchronized void discard(String realPath) {
+        int slot = slot(realPath);
+        if (slot >= 0) {
+            discarded.set(slot);
+        }
+    }
+
+    /** Отбрасывание всех записей. */
+    public synchronized void discardAll() {
+        discardedAll = true;
+    }
+
+    /**
+     * Поиск актуальной записи директории.
+     *
+     * @param realPath реальный путь директории
+     * @return смещение записи или <code>EMPTY</code>, если ее нет
+     */
+    private int find(String realPath) {
+        int slot = slot(realPath);
+
+        return slot < 0 || discarded.get(slot)
+                ? EMPTY
+                : offset(slot);
+    }
+
+    /**
+     * Поиск ячейки таблицы с записью директории.
+     *
+     * @param realPath реальный путь директории
+     * @return номер ячейки или -1, если записи нет
+     */
+    private int slot(String realPath) {
+        if (discardedAll) {
+            return -1;
+        }
+
+        byte[] path = realPath.getBytes(UTF_8);
+        ByteBuffer key = ByteBuffer.wrap(path);
+        int slot = hash(path) & (slots - 1);
+        // в поврежденной таблице может не быть пустых ячеек
+        for (int probe = 0; probe < slots; probe++, slot = (slot + 1) & (slots - 1)) {
+            int offset = offset(slot);
+            if (offset == EMPTY) {
+                return -1;
+            }
+            if (offset != CORRUPT
+                    && buffer.getInt(offset + 4) == path.length
+                    && buffer.slice(offset + 8, path.length).equals(key)) {
+                return slot;
+            }
+        }
+
+        return -1;
+    }
+
+    /**
+     * Смещение записи ячейки с проверкой границ записи при первом
+     * обращении. Поврежденная запись отбрасывается.
+     *
+     * @param slot номер ячейки
+     * @return смещение записи, <code>EMPTY</code> для пустой ячейки
+     * или <code>CORRUPT</code>, если запись повреждена
+     */
+    private int offset(int slot) {
+        int offset = buffer.getInt(tableOffset + 4 * slot);
+        if (offset == EMPTY || verified.get(slot)) {
+            return offset;
+        }
+        if (discarded.get(slot) || !isValid(offset)) {
+            discarded.set(slot);
+            return CORRUPT;
+        }
+        verified.set(slot);
+
+        return offset;
+    }
+
+    /**
+     * Проверка того, что все части записи лежат внутри нее,
+     * а сама запись лежит между заголовком и таблицей.
+     *
+     * @param offset смещение записи
+     * @return <code>true</code> если запись можно разбирать
+     */
+    private boolean isValid(int offset) {
+        if (offset < HEADER_SIZE || offset > tableOffset - RECORD_OVERHEAD) {
+            return false;
+        }
+        int length = buffer.getInt(offset);
+        int pathLength = buffer.getInt(offset + 4);
+        if (length < RECORD_OVERHEAD
+                || length > tableOffset - offset
+                || pathLength < 0
+                || pathLength > length - RECORD_OVERHEAD) {
+            return false;
+        }
+
+        int end = offset + length;
+        int position = fieldsOffset(offset) + 32;
+        int namesLength = buffer.getInt(position);
+        if (namesLength < 0 || namesLength > end - position - 4) {
+            return false;
+        }
+        int flags = flags(offset);
+        if ((flags & HAS_LEVEL) != 0 && !isValidNames(position + 4, position + 4 + namesLength)) {
+            return false;
+        }
+
+        return (flags & HAS_LISTING) == 0
+                || EntryStore.isValid(buffer, position + 4 + namesLength, end);
+    }
+
+    /**
+     * Проверка списка имен поддиректорий.
+     *
+     * @param from начало списка
+     * @param to   конец списка
+     * @return <code>true</code> если все имена лежат внутри списка
+     */
+    private boolean isValidNames(int from, int to) {
+        if (to - from < 4) {
+            return false;
+        }
+        int count = buffer.getInt(from);
+        if (count < 0) {
+            return false;
+        }
+
+        int position = from + 4;
+        for (int i = 0; i < count; i++) {
+            if (to - position < 4) {
+                return false;
+            }
+            int length = buffer.getInt(position);
+            if (length < 0 || length > to - position - 4) {
+                return false;
+            }
+            position += 4 + length;
+        }
+
+        return true;
+    }
+
+    private int flags(int offset) {
+        return buffer.get(offset + 8 + buffer.getInt(offset + 4));
+    }
+
+    /**
+     * Смещение полей записи после признаков.
+     *
+     * @param offset смещение записи
+     * @return смещение времени изменения
+     */
+    private int fieldsOffset(int offset) {
+        return offset + 9 + buffer.getInt(offset + 4);
+    }
+
+    /**
+     * Смещение хранилища объектов записи после имен поддиректорий.
+     *
+     * @param offset смещение записи
+     * @return смещение хранилища объектов
+     */
+    private int entriesOffset(int offset) {
+        int position = fieldsOffset(offset) + 32;
+
+        return position + 4 + buffer.getInt(position);
+    }
+
+    /**
+     * Разбор данных директории для подсчета размера.
+     *
+     * @param offset смещение записи
+     * @return данные директории
+     */
+    private DirectoryLevel readLevel(int offset) {
+        int position = fieldsOffset(offset);
+        ByteBuffer names = buffer.duplicate().position(position + 36);
+        String[] subFolders = new String[names.getInt()];
+        for (int i = 0; i < subFolders.length; i++) {
+            byte[] name = new byte[names.getInt()];
+            names.get(name);
+            subFolders[i] = new String(name, UTF_8);
+        }
+
+        return new DirectoryLevel(buffer.getLong(position + 8),
+                buffer.getLong(position + 16),
+                buffer.getLong(position),
+                subFolders);
+    }
+
+    /**
+     * Размер списка имен поддиректорий в записи.
+     *
+     * @param level данные директории или <code>null</code>
+     * @return размер в байтах
+     */
+    private static int namesSize(DirectoryLevel level) {
+        if (level == null) {
+            return 0;
+        }
+
+        int size = 4;
+        for (String name : level.getSubFolders()) {
+            size += 4 + name.getBytes(UTF_8).length;
+        }
+
+        return size;
+    }
+
+    private static int hash(byte[] path) {
+        int hash = Arrays.hashCode(path);
+
+        return hash ^ hash >>> 16;
+    }
+
+    /**
+     * Запись нового снимка. Данные собираются из файлового дерева и кэшей,
+     * а записи прежнего снимка, которые за время работы не устарели
+     * и не были прочитаны заново, переносятся из него без разбора.
+     * Если для директории добавлено несколько содержимых, сохраняется первое.
+     */
+    public static final class Writer {
+
+        /** Новые записи по реальному пути директории. */
+        private final Map<String, Record> records = new HashMap<>();
+
+        /**
+         * Добавление данных директории для подсчета размера.
+         *
+         * @param realPath реальный путь директории
+         * @param level    данные директории
+         */
+        public void addLevel(String realPath, DirectoryLevel level) {
+            records.computeIfAbsent(realPath, path -> new Record()).level = level;
+        }
+
+        /**
+         * Добавление объектов директории. Хранилище не должно
+         * изменяться до окончания записи.
+         *
+         * @param realPath     реальный путь директории
+         * @param lastModified время изменения директории при чтении объектов
+         * @param entries      объекты директории с посчитанными размерами
+         */
+        public void addListing(String realPath, long lastModified, EntryStore entries) {
+            Record record = records.computeIfAbsent(realPath, path -> new Record());
+            if (record.entries == null) {
+                record.listingModified = lastModified;
+                record.entries = entries;
+            }
+        }
+
+        /**
+         * Запись снимка во временный файл и его атомарная замена.
+         * Записи директорий, которых больше нет, не записываются.
+         * Прежний снимок остается отображенным в память и доступным.
+         *
+         * @param file     файл снимка
+         * @param previous прежний снимок или <code>null</code>
+         * @throws IOException если произошла ошибка записи
+         */
+        public void write(Path file, TreeSnapshot previous) throws IOException {
+            records.keySet().removeIf(realPath -> currentModified(realPath) == MISSING);
+            if (previous != null) {
+                synchronized (previous) {
+                    mergePrevious(previous);
+                }
+            }
+
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+
+            int slots = Integer.highestOneBit(Math.max(records.size(), 1) * 2 - 1) * 2;
+            int[] table = new int[slots];
+            long limit = Integer.MAX_VALUE - HEADER_SIZE - 4L * slots;
+            int tableOffset;
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16))) {
+
+                // заголовок дописывается после таблицы
+                out.write(new byte[HEADER_SIZE]);
+                for (Map.Entry<String, Record> entry : records.entrySet()) {
+                    byte[] path = entry.getKey().getBytes(UTF_8);
+                    Record record = entry.getValue();
+                    int length = record.raw != null
+                            ? record.raw.length
+                            : RECORD_OVERHEAD + path.length + namesSize(record.level)
+                            + (record.entries == null ? 0 : record.entries.serializedSize());
+                    if (out.size() + (long) length > limit) {
+                        // снимок не может быть больше одного отображения в память
+                        continue;
+                    }
+
+                    int slot = hash(path) & (slots - 1);
+                    while (table[slot] != EMPTY) {
+                        slot = (slot + 1) & (slots - 1);
+                    }
+                    table[slot] = out.size();
+
+                    if (record.raw != null) {
+                        out.write(record.raw);
+                    } else {
+                        writeRecord(out, length, path, record);
+                    }
+                }
+
+                tableOffset = out.size();
+                for (int offset : table) {
+                    out.writeInt(offset);
+                }
+            }
+
+            try (FileChannel channel = FileChannel.open(temporary, WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE)
+                        .putInt(MAGIC)
+                        .putInt(VERSION)
+                        .putInt(slots)
+                        .putInt(tableOffset)
+                        .flip();
+                channel.write(header, 0);
+                channel.force(true);
+            }
+            Files.move(temporary, file, ATOMIC_MOVE, REPLACE_EXISTING);
+        }
+
+        /**
+         * Перенос актуальных записей прежнего снимка. Запись, для директории
+         * которой уже есть новые данные, дополняется недостающими частями,
+         * остальные записи копируются как есть. Запись не переносится,
+         * если директории больше нет или обе части записи устарели.
+         *
+         * @param previous прежний снимок
+         */
+        private void mergePrevious(TreeSnapshot previous) {
+            if (previous.discardedAll) {
+                return;
+            }
+
+            MappedByteBuffer buffer = previous.buffer;
+            for (int slot = 0; slot < previous.slots; slot++) {
+                int offset = previous.offset(slot);
+                if (offset == EMPTY || offset == CORRUPT || previous.discarded.get(slot)) {
+                    continue;
+                }
+
+                byte[] path = new byte[buffer.getInt(offset + 4)];
+                buffer.get(offset + 8, path);
+                String realPath = new String(path, UTF_8);
+                long lastModified = currentModified(realPath);
+                int flags = previous.flags(offset);
+                int position = previous.fieldsOffset(offset);
+                boolean levelActual = (flags & HAS_LEVEL) != 0 && buffer.getLong(position) == lastModified;
+                boolean listingActual = (flags & HAS_LISTING) != 0 && buffer.getLong(position + 24) == lastModified;
+                if (lastModified == MISSING || !levelActual && !listingActual) {
+                    continue;
+                }
+
+                Record record = records.get(realPath);
+                if (record == null) {
+                    record = new Record();
+                    record.raw = new byte[buffer.getInt(offset)];
+                    buffer.get(offset, record.raw);
+                    records.put(realPath, record);
+                    continue;
+                }
+
+                if (record.level == null && levelActual) {
+                    record.level = previous.readLevel(offset);
+                }
+                if (record.entries == null && listingActual) {
+                    record.listingModified = buffer.getLong(position + 24);
+                    record.entries = EntryStore.readFrom(buffer.duplicate().position(previous.entriesOffset(offset)));
+                }
+            }
+        }
+
+        /**
+         * Текущее время изменения директории.
+         *
+         * @param realPath реальный путь директории
+         * @return время изменения в наносекундах или <code>MISSING</code>,
+         * если директории больше нет или путь в поврежденной записи недопустим
+         */
+        private static long currentModified(String realPath) {
+            try {
+                BasicFileAttributes attributes = Files.readAttributes(Path.of(realPath),
+                        BasicFileAttributes.class, NOFOLLOW_LINKS);
+
+                return attributes.isDirectory()
+                        ? attributes.lastModifiedTime().to(NANOSECONDS)
+                        : MISSING;
+            } catch (IOException | InvalidPathException e) {
+                return MISSING;
+            }
+        }
+
+        private static void writeRecord(DataOutputStream out, int length, byte[] path, Record record)
+                throws IOException {
+
+            out.writeInt(length);
+            out.writeInt(path.length);
+            out.write(path);
+            out.writeByte((record.level == null ? 0 : HAS_LEVEL) | (record.entries == null ? 0 : HAS_LISTING));
+            out.writeLong(record.level == null ? 0L : record.level.getLastModified());
+            out.writeLong(record.level == null ? 0L : record.level.getSize());
+            out.writeLong(record.level == null ? 0L : record.level.getObjects());
+            out.writeLong(record.listingModified);
+            out.writeInt(namesSize(record.level));
+            if (record.level != null) {
+                out.writeInt(record.level.getSubFolders().length);
+                for (String name : record.level.getSubFolders()) {
+                    byte[] bytes = name.getBytes(UTF_8);
+                    out.writeInt(bytes.length);
+                    out.write(bytes);
+                }
+            }
+            if (record.entries != null) {
+                record.entries.writeTo(out);
+            }
+        }
+    }
+
+    /**
+     * Данные одной директории для записи снимка.
+     */
+    private static final class Record {
+        private DirectoryLevel level;
+        private long listingModified;
+        private EntryStore entries;
+
+        /** Запись прежнего снимка, которая копируется как есть. */
+        private byte[] raw;
+    }
+}
@@ -0,0 +1,20 @@
+package ru.develonica.model;
+
+import java.nio.file.Path;
+
+/**
+ * Определение типа файла. Тип определяется один раз при заполнении
+ * директории и хранится вместе с объектом.
+ */
+public interface TypeClassifier {
+
+    /**
+     * Определение типа файла, который не является директорией.
+     *
+     * @param path        путь файла
+     * @param name        имя файла
+     * @param regularFile признак обычного файла, содержимое которого можно прочитать
+     * @return тип файла или <code>OTHER_FILE</code>, если тип неизвестен
+     */
+    FileType classify(Path path, String name, boolean regularFile);
+}
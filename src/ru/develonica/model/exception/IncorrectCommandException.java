@@ -5,6 +5,9 @@ package ru.develonica.model.exception;
  */
 public class IncorrectCommandException extends Exception {
 
+    /** Версия сериализации. */
+    private static final long serialVersionUID = 1L;
+
     /** Сообщение об ошибке ввода команды. */
     private static final String INCORRECT_COMMAND = "Не корректная команда. Попробуйте еще раз.\n";
 
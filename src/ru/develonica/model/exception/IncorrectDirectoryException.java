@@ -5,6 +5,9 @@ package ru.develonica.model.exception;
  */
 public class IncorrectDirectoryException extends Exception {
 
+    /** Версия сериализации. */
+    private static final long serialVersionUID = 1L;
+
     /** Сообщение об ошибке выбора директории. */
     private static final String INCORRECT_DIRECTORY = "Такой директории не существует. Попробуйте еще раз.\n";
 
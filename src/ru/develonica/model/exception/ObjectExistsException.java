@@ -0,0 +1,17 @@
+package ru.develonica.model.exception;
+
+/**
+ * Отображение ошибки копирования или перемещения в существующий объект.
+ */
+public class ObjectExistsException extends Exception {
+
+    /** Версия сериализации. */
+    private static final long serialVersionUID = 1L;
+
+    /** Сообщение об ошибке существующего объекта. */
+    private static final String OBJECT_EXISTS = "Объект с таким именем уже существует. Попробуйте еще раз.\n";
+
+    public ObjectExistsException() {
+        super(OBJECT_EXISTS);
+    }
+}
@@ -5,6 +5,9 @@ package ru.develonica.model.exception;
  */
 public class PermissionsException extends Exception {
 
+    /** Версия сериализации. */
+    private static final long serialVersionUID = 1L;
+
     /** Сообщение об ошибке работы нд файлом. */
     private static final String PERMISSION_DENIED = "Произошла ошибка ввода/вывода.\n" +
             "Возможно такого файла не существует или нет прав на создание или удаление файла\n";
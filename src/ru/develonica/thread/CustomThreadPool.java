@@ -1,22 +1,37 @@
 package ru.develonica.thread;
 
 import java.util.ArrayList;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Supplier;
 
+import static java.lang.System.nanoTime;
 import static java.util.stream.Stream.generate;
 
 /**
  * Пул потоков, который повторно использует фиксированное количество
- * потоков, работающих с общей неограниченной очередью. В любой момент
+ * потоков, работающих с общей ограниченной очередью. В любой момент
  * не более n потоков будут активно выполнять задачи. Если дополнительные
  * задачи отправляются, когда все потоки активны, они будут ждать в очереди,
- * пока поток не станет доступным. Потоки в пуле будут существовать
- * до тех пор, пока он не будет явно отключен.
+ * пока поток не станет доступным. Если очередь заполнена, отправитель
+ * блокируется, пока в ней не освободится место, поэтому задачи нельзя
+ * отправлять, удерживая блокировки, которые нужны выполняющимся задачам.
+ * Свободные потоки не расходуют процессор, а ждут новых задач на очереди.
+ * Потоки в пуле будут существовать до тех пор, пока он не будет явно отключен.
  */
-public class CustomThreadPool {
+public class CustomThreadPool implements ScanExecutor {
+
+    /** Размер очереди задач по умолчанию. */
+    private static final int DEFAULT_QUEUE_CAPACITY = 1024;
+
+    /** Задача-маркер, получив которую поток завершает работу. */
+    private static final Runnable POISON = () -> { };
 
     /** Максимальное количество потоков, разрешенных в пуле. */
     private final int maxPoolSize;
@@ -25,7 +40,14 @@ public class CustomThreadPool {
     private final AtomicBoolean run;
 
     /** Очередь задач. */
-    private final LinkedList<Runnable> taskList;
+    private final BlockingQueue<Runnable> taskList;
+
+    /**
+     * Блокировка отключения: отправители занимают ее на чтение, пока ждут
+     * места в очереди, поэтому маркеры отключения попадают в очередь
+     * только после всех принятых задач.
+     */
+    private final ReadWriteLock shutdownLock;
 
     /** Список потоков. */
     private final List<Thread> threadList;
@@ -34,19 +56,23 @@ public class CustomThreadPool {
     private final Supplier<Thread> threadSupplier;
 
     public CustomThreadPool(int maxPoolSize) {
+        this(maxPoolSize, DEFAULT_QUEUE_CAPACITY);
+    }
+
+    public CustomThreadPool(int maxPoolSize, int queueCapacity) {
         this.maxPoolSize = maxPoolSize;
         this.run = new AtomicBoolean(true);
-        this.taskList = new LinkedList<>();
+        this.taskList = new LinkedBlockingQueue<>(queueCapacity);
+        this.shutdownLock = new ReentrantReadWriteLock();
         this.threadList = new ArrayList<>(maxPoolSize);
-        this.threadSupplier = () -> new CustomThread(this.taskList, this.run);
+        this.threadSupplier = () -> new CustomThread(this.taskList);
 
         init();
     }
 
     /**
      * Инициализация потоков в <code>threadList</code>,
-     * чтобы они могли начать отслеживать <code>taskList</code>
-     * на наличие новых задач.
+     * чтобы они могли начать ожидать задачи из <code>taskList</code>.
      */
     private void init() {
         generate(threadSupplier).limit(maxPoolSize).forEach(thread -> {
@@ -59,59 +85,112 @@ public class CustomThreadPool {
      * Упорядоченное отключение, при котором ранее отправленные
      * задачи выполняются, но новые задачи не принимаются.
      */
+    @Override
     public void shutdown() {
-        this.run.set(false);
+        shutdownLock.writeLock().lock();
+        try {
+            if (!run.compareAndSet(true, false)) {
+                return;
+            }
+        } finally {
+            shutdownLock.writeLock().unlock();
+        }
+
+        // каждый поток завершится, дойдя до своего маркера в конце очереди
+        boolean interrupted = false;
+        for (int i = 0; i < threadList.size(); ) {
+            try {
+                taskList.put(POISON);
+                i++;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Ожидание завершения всех потоков после отключения пула.
+     *
+     * @param timeout максимальное время ожидания
+     * @param unit    единица измерения времени ожидания
+     * @return <code>true</code> если все потоки завершились
+     * @throws InterruptedException если ожидание было прервано
+     */
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = nanoTime() + unit.toNanos(timeout);
+
+        for (Thread thread : threadList) {
+            long remaining = deadline - nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedJoin(thread, remaining);
+            if (thread.isAlive()) {
+                return false;
+            }
+        }
+
+        return true;
     }
 
     /**
-     * Отправляет на выполнение задачу Runnable.
+     * Отправляет на выполнение задачу Runnable. Если очередь заполнена,
+     * ждет, пока в ней не освободится место.
      *
      * @param task задача на отправку.
+     * @throws RejectedExecutionException если пул отключен или ожидание
+     *                                    места в очереди было прервано
      */
+    @Override
     public void submit(Runnable task) {
-        synchronized (taskList) {
-            if (run.get()) {
-                if (taskList.size() < maxPoolSize) {
-                    // создать новый поток для threadList
-                    CustomThread customThread = new CustomThread(taskList, run);
-                    threadList.add(customThread);
-                    customThread.start();
-
-                    // отправить задачу
-                    taskList.add(task);
-                } else {
-                    // размер maxPoolSize уже достигнут
-                    // просто отправить задачу
-                    taskList.add(task);
-                }
+        shutdownLock.readLock().lock();
+        try {
+            if (!run.get()) {
+                throw new RejectedExecutionException();
             }
+            taskList.put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RejectedExecutionException(e);
+        } finally {
+            shutdownLock.readLock().unlock();
         }
     }
 
     /**
      * Статический вложенный класс, который наследует класс
-     * <code>Thread</code>, с возможностью отслеживать <code>taskList</code>
-     * на наличие новых задач.
+     * <code>Thread</code>, с возможностью ожидать новые задачи
+     * из <code>taskList</code>.
      */
     private static final class CustomThread extends Thread {
-        private final LinkedList<Runnable> taskList;
-        private final AtomicBoolean run;
+        private final BlockingQueue<Runnable> taskList;
 
-        private CustomThread(LinkedList<Runnable> taskList, AtomicBoolean run) {
+        private CustomThread(BlockingQueue<Runnable> taskList) {
             this.taskList = taskList;
-            this.run = run;
+            setDaemon(true);
         }
 
         @Override
         public void run() {
-            while (run.get()) {
+            while (true) {
                 Runnable task;
-                synchronized (taskList) {
+                try {
                     // ожидает, пока нет задач для выполнения
-                    task = taskList.poll();
+                    task = taskList.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (task == POISON) {
+                    return;
                 }
-                if (task != null) {
+                try {
                     task.run();
+                } catch (RuntimeException e) {
+                    // ошибка одной задачи не должна останавливать поток
                 }
             }
         }
@@ -0,0 +1,135 @@
+package ru.develonica.thread;
+
+import ru.develonica.model.CancellationToken;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.LongConsumer;
+
+import static java.nio.file.Files.newDirectoryStream;
+import static java.nio.file.Files.readAttributes;
+import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
+
+/**
+ * Рекурсивное удаление директорий. Каждая поддиректория удаляется
+ * отдельной задачей в пуле <code>ForkJoinPool</code> с ограниченным
+ * количеством потоков: файлы удаляются сразу по мере чтения директории,
+ * а сама директория удаляется после всех своих поддиректорий. Поэтому
+ * в памяти хранятся только пути еще не удаленных поддиректорий,
+ * а не список всех объектов поддерева. Символические ссылки удаляются
+ * как файлы, директории по ним не обходятся.
+ */
+public class DirectoryDeleter {
+
+    /** Пул потоков удаления. */
+    private final ForkJoinPool pool;
+
+    public DirectoryDeleter(int parallelism) {
+        this.pool = new ForkJoinPool(parallelism);
+    }
+
+    /**
+     * Удаление директории со всем содержимым. Вызывающий поток ждет
+     * удаления и периодически передает количество байт, удаленных
+     * с прошлой передачи, чтобы размеры в файловом дереве уменьшались
+     * по ходу удаления. Прерывание вызывающего потока отменяет удаление,
+     * уже удаленные объекты при этом не восстанавливаются.
+     *
+     * @param folder   директория
+     * @param progress ход удаления
+     * @param removed  получатель удаленных байт
+     * @return <code>true</code> если удаление не было отменено
+     */
+    public boolean delete(Path folder, Progress progress, LongConsumer removed) {
+        CancellationToken token = new CancellationToken();
+
+        return TreeTasks.await(pool.submit(new DeleteTask(folder, progress, token)), token, progress, removed);
+    }
+
+    /**
+     * Задача удаления одной директории.
+     */
+    private static final class DeleteTask extends RecursiveAction {
+
+        /** Версия сериализации. */
+        private static final long serialVersionUID = 1L;
+
+        /** Директория. */
+        private final Path folder;
+
+        /** Ход удаления. */
+        private final Progress progress;
+
+        /** Признак отмены удаления. */
+        private final CancellationToken token;
+
+        private DeleteTask(Path folder, Progress progress, CancellationToken token) {
+            this.folder = folder;
+            this.progress = progress;
+            this.token = token;
+        }
+
+        @Override
+        protected void compute() {
+            List<DeleteTask> subTasks = new ArrayList<>();
+            try (DirectoryStream<Path> stream = newDirectoryStream(folder)) {
+                for (Path path : stream) {
+                    if (token.isCancelled()) {
+                        break;
+                    }
+                    deleteEntry(path, subTasks);
+                }
+            } catch (IOException | DirectoryIteratorException e) {
+                // директория уже удалена или нет доступа
+                progress.fail();
+            }
+
+            // задачи, созданные последними, скорее всего еще не забраны другими потоками
+            for (int i = subTasks.size() - 1; i >= 0; i--) {
+                subTasks.get(i).join();
+            }
+            if (token.isCancelled()) {
+                return;
+            }
+
+            try {
+                Files.delete(folder);
+                progress.add(0L);
+            } catch (IOException e) {
+                // в директории остались объекты, которые не удалось удалить
+                progress.fail();
+            }
+        }
+
+        /**
+         * Удаление файла или передача поддиректории отдельной задаче.
+         *
+         * @param path     путь объекта
+         * @param subTasks задачи поддиректорий
+         */
+        private void deleteEntry(Path path, List<DeleteTask> subTasks) {
+            try {
+                BasicFileAttributes attributes = readAttributes(path, BasicFileAttributes.class, NOFOLLOW_LINKS);
+                if (attributes.isDirectory()) {
+                    DeleteTask subTask = new DeleteTask(path, progress, token);
+                    subTask.fork();
+                    subTasks.add(subTask);
+                    return;
+                }
+
+                Files.delete(path);
+                progress.add(attributes.size());
+            } catch (IOException e) {
+                progress.fail();
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package ru.develonica.thread;
+
+import ru.develonica.model.Node;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+
+import static java.nio.file.FileSystems.getDefault;
+import static java.nio.file.Path.of;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+
+/**
+ * Отслеживание изменений в директориях файлового дерева
+ * через <code>WatchService</code>. Один фоновый поток только забирает
+ * уведомления, а обработка изменений, которая может ждать заполнения
+ * директории и считать размеры, выполняется в другом потоке по порядку
+ * получения, поэтому очередь уведомлений не переполняется из-за долгой
+ * обработки. Несколько изменений одного объекта, полученных вместе,
+ * обрабатываются один раз по последнему изменению.
+ */
+public class DirectoryWatcher {
+
+    /** Имя фонового потока. */
+    private static final String THREAD_NAME = "directory-watcher";
+
+    /** Имя потока обработки изменений. */
+    private static final String LISTENER_THREAD_NAME = "directory-changes";
+
+    /** Служба уведомлений файловой системы. */
+    private final WatchService watchService;
+
+    /** Отслеживаемые директории по ключу регистрации. */
+    private final Map<WatchKey, Node> nodes;
+
+    /** Обработка изменений. */
+    private final WatchListener listener;
+
+    /** Поток, в котором обрабатываются изменения. */
+    private final ExecutorService listenerExecutor;
+
+    public DirectoryWatcher(WatchListener listener) throws IOException {
+        this.watchService = getDefault().newWatchService();
+        this.nodes = new ConcurrentHashMap<>();
+        this.listener = listener;
+        this.listenerExecutor = newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, LISTENER_THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Thread thread = new Thread(this::processEvents, THREAD_NAME);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Начало отслеживания директории. Повторная регистрация той же
+     * директории заменяет ранее зарегистрированную. Регистрации,
+     * отмененные при удалении директорий из дерева, забываются.
+     *
+     * @param node директория файлового дерева
+     */
+    public void watch(Node node) {
+        nodes.keySet().removeIf(key -> !key.isValid());
+        try {
+            WatchKey key = of(node.getRealPath()).register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+            nodes.put(key, node);
+            node.setWatchKey(key);
+        } catch (IOException | UnsupportedOperationException e) {
+            // директория недоступна или превышен лимит, она обновляется только командой refresh
+        }
+    }
+
+    /**
+     * Получение изменений, пока служба уведомлений не закрыта.
+     */
+    private void processEvents() {
+        while (true) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+
+            Node node = nodes.get(key);
+            if (node != null) {
+                dispatch(node, key);
+            }
+            if (!key.reset()) {
+                // директория удалена или недоступна
+                nodes.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Передача изменений директории на обработку.
+     *
+     * @param node директория файлового дерева
+     * @param key  ключ регистрации директории
+     */
+    private void dispatch(Node node, WatchKey key) {
+        Map<Path, WatchEvent.Kind<?>> changes = new LinkedHashMap<>();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                // часть изменений потеряна, директория сверяется целиком
+                changes.clear();
+                notify(node, OVERFLOW, null);
+                continue;
+            }
+
+            Path entry = of(node.getRealPath()).resolve((Path) event.context());
+            changes.remove(entry);
+            changes.put(entry, event.kind());
+        }
+
+        changes.forEach((entry, kind) -> notify(node, kind, entry));
+    }
+
+    private void notify(Node node, WatchEvent.Kind<?> kind, Path entry) {
+        listenerExecutor.execute(() -> {
+            try {
+                listener.onEvent(node, kind, entry);
+            } catch (RuntimeException e) {
+                // ошибка одного изменения не останавливает отслеживание
+            }
+        });
+    }
+}
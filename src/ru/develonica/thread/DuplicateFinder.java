@@ -0,0 +1,353 @@
+package ru.develonica.thread;
+
+import ru.develonica.model.DuplicateGroup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.file.Files.readAttributes;
+import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.util.Comparator.comparingLong;
+import static java.util.concurrent.Executors.newFixedThreadPool;
+
+/**
+ * Поиск файлов с одинаковым содержимым. Кандидаты, сгруппированные по
+ * размеру, проходят несколько этапов, и каждый следующий этап читает
+ * больше данных, но только у файлов, которые остались в группах после
+ * предыдущего:
+ * <ol>
+ *     <li>повторные ссылки на один и тот же файл (жесткие ссылки)
+ *     и объекты, которые больше не являются файлами этого размера, исключаются;</li>
+ *     <li>хэш XXH64 первых и последних 64 Кб файла;</li>
+ *     <li>хэш XXH64 всего файла, отображенного в память частями;</li>
+ *     <li>по запросу проверка SHA-256 всего файла.</li>
+ * </ol>
+ * Файлы каждого этапа обрабатываются параллельно фиксированным
+ * количеством потоков, поэтому одновременных чтений с диска не больше
+ * этого количества. Файлы, которые не удалось прочитать, исключаются.
+ */
+public class DuplicateFinder {
+
+    /** Количество байт в начале и в конце файла для частичного хэша. */
+    private static final int PARTIAL_BYTES = 64 * 1024;
+
+    /** Размер части файла, которая отображается в память за один раз. */
+    private static final long MAP_WINDOW = 64L * 1024 * 1024;
+
+    /** Алгоритм проверки содержимого. */
+    private static final String VERIFY_ALGORITHM = "SHA-256";
+
+    /** Имя потоков чтения. */
+    private static final String THREAD_NAME = "dupes";
+
+    /** Потоки, которые читают файлы. */
+    private final ExecutorService executor;
+
+    /** Буфер частичного чтения для каждого потока. */
+    private final ThreadLocal<ByteBuffer> partialBuffer =
+            ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(PARTIAL_BYTES));
+
+    public DuplicateFinder(int maxConcurrentIo) {
+        this.executor = newFixedThreadPool(maxConcurrentIo, task -> {
+            Thread thread = new Thread(task, THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Поиск групп одинаковых файлов среди файлов одного размера.
+     *
+     * @param bySize   файлы по размеру
+     * @param verify   проверять совпадение SHA-256
+     * @param progress ход поиска: прочитанные файлы и байты всех этапов
+     * @return группы от большего лишнего места к меньшему
+     * @throws InterruptedException если поиск прерван
+     */
+    public List<DuplicateGroup> find(Map<Long, List<Path>> bySize, boolean verify, Progress progress)
+            throws InterruptedException {
+
+        List<DuplicateGroup> groups = new ArrayList<>();
+        bySize.forEach((size, paths) -> {
+            if (size > 0 && paths.size() > 1) {
+                groups.add(new DuplicateGroup(size, paths));
+            }
+        });
+
+        List<DuplicateGroup> distinct = distinctFiles(groups);
+        List<DuplicateGroup> result = regroup(distinct, (path, size) -> partialHash(path, size, progress));
+
+        // частичный хэш файла не больше двух частей уже покрывает все содержимое
+        List<DuplicateGroup> small = new ArrayList<>();
+        List<DuplicateGroup> large = new ArrayList<>();
+        result.forEach(group -> (group.getSize() <= 2L * PARTIAL_BYTES ? small : large).add(group));
+        result = new ArrayList<>(small);
+        result.addAll(regroup(large, (path, size) -> fullHash(path, size, progress)));
+
+        if (verify) {
+            result = regroup(result, (path, size) -> digest(path, size, progress));
+        }
+
+        result.sort(comparingLong(DuplicateGroup::getWasted).reversed());
+        return result;
+    }
+
+    /**
+     * Исключение повторных ссылок на один файл и объектов,
+     * которые больше не являются обычными файлами этого размера.
+     * Атрибуты файлов читаются параллельно, как и на остальных этапах.
+     *
+     * @param groups файлы по размеру
+     * @return группы разных файлов, в которых их не меньше двух
+     * @throws InterruptedException если ожидание прервано
+     */
+    private List<DuplicateGroup> distinctFiles(List<DuplicateGroup> groups) throws InterruptedException {
+        List<List<Future<Object>>> attributes = submit(groups,
+                (path, size) -> readAttributes(path, BasicFileAttributes.class, NOFOLLOW_LINKS));
+
+        List<DuplicateGroup> result = new ArrayList<>();
+        try {
+            for (int i = 0; i < groups.size(); i++) {
+                DuplicateGroup group = groups.get(i);
+                Set<Object> keys = new HashSet<>();
+                List<Path> paths = new ArrayList<>();
+                for (int j = 0; j < group.getPaths().size(); j++) {
+                    BasicFileAttributes fileAttributes;
+                    try {
+                        fileAttributes = (BasicFileAttributes) attributes.get(i).get(j).get();
+                    } catch (ExecutionException e) {
+                        // файл удален или недоступен
+                        continue;
+                    }
+                    if (!fileAttributes.isRegularFile() || fileAttributes.size() != group.getSize()) {
+                        continue;
+                    }
+
+                    Object key = fileAttributes.fileKey();
+                    if (key == null || keys.add(key)) {
+                        paths.add(group.getPaths().get(j));
+                    }
+                }
+                if (paths.size() > 1) {
+                    result.add(new DuplicateGroup(group.getSize(), paths));
+                }
+            }
+        } catch (InterruptedException e) {
+            cancel(attributes);
+            throw e;
+        }
+
+        return result;
+    }
+
+    /**
+     * Разделение групп по ключу, который параллельно считается для каждого
+     * файла. Группы, в которых осталось меньше двух файлов, отбрасываются.
+     *
+     * @param groups группы
+     * @param hash   подсчет ключа файла
+     * @return новые группы
+     * @throws InterruptedException если ожидание прервано
+     */
+    private List<DuplicateGroup> regroup(List<DuplicateGroup> groups, FileHash hash)
+            throws InterruptedException {
+
+        List<List<Future<Object>>> keys = submit(groups, hash);
+
+        List<DuplicateGroup> result = new ArrayList<>();
+        try {
+            for (int i = 0; i < groups.size(); i++) {
+                DuplicateGroup group = groups.get(i);
+                Map<Object, List<Path>> byKey = new HashMap<>();
+                for (int j = 0; j < group.getPaths().size(); j++) {
+                    try {
+                        Object key = keys.get(i).get(j).get();
+                        byKey.computeIfAbsent(key, k -> new ArrayList<>()).add(group.getPaths().get(j));
+                    } catch (ExecutionException e) {
+                        // файл удален или недоступен
+                    }
+                }
+                byKey.values().stream()
+                        .filter(paths -> paths.size() > 1)
+                        .forEach(paths -> result.add(new DuplicateGroup(group.getSize(), paths)));
+            }
+        } catch (InterruptedException e) {
+            cancel(keys);
+            throw e;
+        }
+
+        return result;
+    }
+
+    /**
+     * Передача подсчета ключа каждого файла потокам чтения.
+     *
+     * @param groups группы
+     * @param hash   подсчет ключа файла
+     * @return ключи файлов в порядке групп и файлов в них
+     */
+    private List<List<Future<Object>>> submit(List<DuplicateGroup> groups, FileHash hash) {
+        List<List<Future<Object>>> keys = new ArrayList<>(groups.size());
+        for (DuplicateGroup group : groups) {
+            List<Future<Object>> groupKeys = new ArrayList<>(group.getPaths().size());
+            for (Path path : group.getPaths()) {
+                groupKeys.add(executor.submit(() -> hash.apply(path, group.getSize())));
+            }
+            keys.add(groupKeys);
+        }
+
+        return keys;
+    }
+
+    /**
+     * Отмена подсчета ключей, которые еще не посчитаны.
+     *
+     * @param keys ключи файлов
+     */
+    private static void cancel(List<List<Future<Object>>> keys) {
+        keys.forEach(groupKeys -> groupKeys.forEach(key -> key.cancel(true)));
+    }
+
+    /**
+     * Хэш первых и последних 64 Кб файла.
+     *
+     * @param path     файл
+     * @param size     размер файла
+     * @param progress ход поиска
+     * @return хэш
+     * @throws IOException если файл не удалось прочитать
+     */
+    private Long partialHash(Path path, long size, Progress progress) throws IOException {
+        ByteBuffer buffer = partialBuffer.get();
+        XxHash64 hash = new XxHash64();
+        try (FileChannel channel = FileChannel.open(path, READ)) {
+            long read = readFully(channel, buffer, 0L, Math.min(size, PARTIAL_BYTES));
+            hash.update(buffer);
+            if (size > PARTIAL_BYTES) {
+                long from = Math.max(PARTIAL_BYTES, size - PARTIAL_BYTES);
+                read += readFully(channel, buffer, from, size - from);
+                hash.update(buffer);
+            }
+            progress.add(read);
+        }
+
+        return hash.digest();
+    }
+
+    /**
+     * Хэш всего файла, который отображается в память частями.
+     *
+     * @param path     файл
+     * @param size     размер файла
+     * @param progress ход поиска
+     * @return хэш
+     * @throws IOException если файл не удалось прочитать
+     */
+    private Long fullHash(Path path, long size, Progress progress) throws IOException {
+        XxHash64 hash = new XxHash64();
+        try (FileChannel channel = FileChannel.open(path, READ)) {
+            for (long position = 0L; position < size; position += MAP_WINDOW) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new IOException("interrupted");
+                }
+                MappedByteBuffer window = channel.map(READ_ONLY, position, Math.min(MAP_WINDOW, size - position));
+                hash.update(window);
+                progress.addBytes(window.capacity());
+            }
+        }
+        progress.add(0L);
+
+        return hash.digest();
+    }
+
+    /**
+     * Проверочная сумма SHA-256 всего файла.
+     *
+     * @param path     файл
+     * @param size     размер файла
+     * @param progress ход поиска
+     * @return сумма
+     * @throws IOException если файл не удалось прочитать
+     */
+    private ByteBuffer digest(Path path, long size, Progress progress) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(VERIFY_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+
+        try (FileChannel channel = FileChannel.open(path, READ)) {
+            for (long position = 0L; position < size; position += MAP_WINDOW) {
+                if (Thread.currentThread().isInterrupted()) {
+                    throw new IOException("interrupted");
+                }
+                MappedByteBuffer window = channel.map(READ_ONLY, position, Math.min(MAP_WINDOW, size - position));
+                digest.update(window);
+                progress.addBytes(window.capacity());
+            }
+        }
+        progress.add(0L);
+
+        return ByteBuffer.wrap(digest.digest());
+    }
+
+    /**
+     * Чтение части файла в буфер.
+     *
+     * @param channel  файл
+     * @param buffer   буфер, после чтения готов к чтению из него
+     * @param position позиция в файле
+     * @param length   количество байт, не больше размера буфера
+     * @return количество прочитанных байт
+     * @throws IOException если файл не удалось прочитать
+     */
+    private static long readFully(FileChannel channel, ByteBuffer buffer, long position, long length)
+            throws IOException {
+
+        buffer.clear().limit((int) length);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                // файл уменьшился после группировки по размеру
+                throw new IOException(position + buffer.position() + " < " + length);
+            }
+        }
+        buffer.flip();
+
+        return length;
+    }
+
+    /**
+     * Подсчет ключа группировки файла.
+     */
+    private interface FileHash {
+
+        /**
+         * Подсчет ключа.
+         *
+         * @param path файл
+         * @param size размер файла
+         * @return ключ, одинаковый для файлов с одинаковым содержимым
+         * @throws IOException если файл не удалось прочитать
+         */
+        Object apply(Path path, long size) throws IOException;
+    }
+}
@@ -0,0 +1,220 @@
+package ru.develonica.thread;
+
+import ru.develonica.model.CancellationToken;
+import ru.develonica.model.FileInfo;
+import ru.develonica.model.FileType;
+import ru.develonica.model.FindQuery;
+import ru.develonica.model.FindResults;
+import ru.develonica.model.ListingCache;
+import ru.develonica.model.TypeClassifier;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+
+import static java.nio.file.Files.newDirectoryStream;
+import static java.nio.file.Files.readAttributes;
+import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static ru.develonica.model.FileInfo.UNKNOWN_SIZE;
+import static ru.develonica.model.FileType.DIR;
+
+/**
+ * Поиск объектов в поддеревьях, которых нет в файловом дереве.
+ * Каждая директория обходится отдельной задачей в пуле
+ * <code>ForkJoinPool</code>. Если содержимое директории есть
+ * в <code>ListingCache</code>, она не читается с диска. Найденные
+ * объекты передаются в <code>FindResults</code> сразу, а вызывающий
+ * поток выводит их, пока поиск продолжается. Символические ссылки
+ * на директории не обходятся.
+ */
+public class FileSearcher {
+
+    /** Интервал проверки завершения поиска в миллисекундах. */
+    private static final long POLL_INTERVAL_MILLIS = 50L;
+
+    /** Пул потоков поиска. */
+    private final ForkJoinPool pool;
+
+    /** Кэш содержимого директорий или <code>null</code>, если содержимое не сохраняется. */
+    private final ListingCache listingCache;
+
+    /** Определение типа найденных файлов. */
+    private final TypeClassifier typeClassifier;
+
+    public FileSearcher(int parallelism, ListingCache listingCache, TypeClassifier typeClassifier) {
+        this.pool = new ForkJoinPool(parallelism);
+        this.listingCache = listingCache;
+        this.typeClassifier = typeClassifier;
+    }
+
+    /**
+     * Поиск в директориях и вывод результатов в вызывающем потоке
+     * по мере нахождения, включая результаты, найденные до вызова.
+     * Поиск завершается, когда директории обойдены, достигнуто
+     * ограничение результатов или истек срок признака отмены.
+     *
+     * @param folders директории
+     * @param query   условия поиска
+     * @param results результаты поиска
+     * @param printer вывод найденного объекта
+     */
+    public void search(List<Path> folders, FindQuery query, FindResults results,
+                       Consumer<FindResults.Found> printer) {
+
+        CancellationToken token = results.getToken();
+        List<SearchTask> tasks = new ArrayList<>(folders.size());
+        if (!token.isCancelled()) {
+            folders.forEach(folder -> tasks.add(new SearchTask(folder, query, results)));
+        }
+        ForkJoinTask<?> search = pool.submit(() -> ForkJoinTask.invokeAll(tasks));
+
+        try {
+            while (true) {
+                boolean done = search.isDone();
+                FindResults.Found found = results.poll(POLL_INTERVAL_MILLIS, MILLISECONDS);
+                if (found != null) {
+                    printer.accept(found);
+                } else if (done) {
+                    return;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            token.cancel();
+        }
+    }
+
+    /**
+     * Задача поиска в одной директории.
+     */
+    private final class SearchTask extends RecursiveAction {
+
+        /** Версия сериализации. */
+        private static final long serialVersionUID = 1L;
+
+        /** Директория. */
+        private final Path folder;
+
+        /** Условия поиска. */
+        private final FindQuery query;
+
+        /** Результаты поиска. */
+        private final FindResults results;
+
+        private SearchTask(Path folder, FindQuery query, FindResults results) {
+            this.folder = folder;
+            this.query = query;
+            this.results = results;
+        }
+
+        @Override
+        protected void compute() {
+            CancellationToken token = results.getToken();
+            if (token.isCancelled()) {
+                return;
+            }
+
+            BasicFileAttributes attributes;
+            try {
+                attributes = readAttributes(folder, BasicFileAttributes.class, NOFOLLOW_LINKS);
+            } catch (IOException e) {
+                return;
+            }
+            if (!attributes.isDirectory()) {
+                return;
+            }
+
+            List<SearchTask> subTasks = new ArrayList<>();
+            FindQuery.EntryMatcher matcher = query.matcher();
+            boolean cached = listingCache != null && listingCache.find(folder.toString(),
+                    attributes.lastModifiedTime().to(NANOSECONDS),
+                    matcher,
+                    fileInfo -> results.add(folder.resolve(fileInfo.getName()), fileInfo),
+                    name -> subTasks.add(new SearchTask(folder.resolve(name), query, results)));
+            if (!cached) {
+                list(matcher, subTasks, token);
+            }
+
+            if (!token.isCancelled()) {
+                invokeAll(subTasks);
+            }
+        }
+
+        /**
+         * Чтение директории с диска и проверка ее объектов.
+         *
+         * @param matcher  проверка объектов
+         * @param subTasks задачи поддиректорий
+         * @param token    признак отмены
+         */
+        private void list(FindQuery.EntryMatcher matcher, List<SearchTask> subTasks, CancellationToken token) {
+            try (DirectoryStream<Path> stream = newDirectoryStream(folder)) {
+                for (Path path : stream) {
+                    if (token.isCancelled()) {
+                        return;
+                    }
+
+                    BasicFileAttributes attributes;
+                    try {
+                        attributes = readAttributes(path, BasicFileAttributes.class, NOFOLLOW_LINKS);
+                    } catch (IOException e) {
+                        continue;
+                    }
+                    boolean directory = attributes.isDirectory();
+                    if (directory) {
+                        subTasks.add(new SearchTask(path, query, results));
+                    }
+                    check(path, attributes, directory, matcher);
+                }
+            } catch (IOException | DirectoryIteratorException e) {
+                // директория удалена во время поиска или нет доступа
+            }
+        }
+
+        /**
+         * Проверка объекта, прочитанного с диска. Тип файла определяется,
+         * только если остальные условия выполнены.
+         *
+         * @param path       путь объекта
+         * @param attributes аттрибуты объекта
+         * @param directory  объект является директорией
+         * @param matcher    проверка объектов
+         */
+        private void check(Path path, BasicFileAttributes attributes, boolean directory,
+                           FindQuery.EntryMatcher matcher) {
+
+            long size = directory ? UNKNOWN_SIZE : attributes.size();
+            long lastModified = attributes.lastModifiedTime().to(NANOSECONDS);
+            if (!matcher.matchesAttributes(null, directory, size, lastModified)) {
+                return;
+            }
+            String name = path.getFileName().toString();
+            if (!matcher.matchesName(name)) {
+                return;
+            }
+            FileType type = directory
+                    ? DIR
+                    : typeClassifier.classify(path, name, attributes.isRegularFile());
+            if (!matcher.matchesAttributes(type, directory, size, lastModified)) {
+                return;
+            }
+
+            FileInfo fileInfo = new FileInfo();
+            fileInfo.setName(name);
+            fileInfo.setType(type);
+            fileInfo.setFileSize(size);
+            fileInfo.setLastModified(lastModified);
+            results.add(path, fileInfo);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package ru.develonica.thread;
+
+import java.util.concurrent.Semaphore;
+
+/**
+ * Общее ограничение одновременных обращений к файловой системе
+ * виртуальными потоками обхода директорий и подсчета размеров.
+ * Задача обхода сама считает размеры поддиректорий, поэтому поток,
+ * который уже держит разрешение, второе не берет, а на время ожидания
+ * подзадач отдает свое: иначе подзадачи ждали бы разрешений,
+ * которые держат ожидающие их потоки.
+ */
+public class IoPermits {
+
+    /** Разрешения на обращения к файловой системе. */
+    private final Semaphore semaphore;
+
+    /** Признак того, что текущий поток держит разрешение. */
+    private final ThreadLocal<Boolean> held = ThreadLocal.withInitial(() -> false);
+
+    public IoPermits(int maxConcurrentIo) {
+        this.semaphore = new Semaphore(maxConcurrentIo);
+    }
+
+    /**
+     * Получение разрешения, если текущий поток его еще не держит.
+     *
+     * @return <code>true</code> если разрешение получено и его нужно вернуть
+     * @throws InterruptedException если ожидание прервано
+     */
+    public boolean acquire() throws InterruptedException {
+        if (held.get()) {
+            return false;
+        }
+        semaphore.acquire();
+        held.set(true);
+
+        return true;
+    }
+
+    /**
+     * Получение разрешения без прерывания ожидания,
+     * если текущий поток его еще не держит.
+     *
+     * @return <code>true</code> если разрешение получено и его нужно вернуть
+     */
+    public boolean acquireUninterruptibly() {
+        if (held.get()) {
+            return false;
+        }
+        semaphore.acquireUninterruptibly();
+        held.set(true);
+
+        return true;
+    }
+
+    /**
+     * Возврат разрешения текущего потока.
+     */
+    public void release() {
+        held.set(false);
+        semaphore.release();
+    }
+
+    /**
+     * Возврат разрешения на время ожидания подзадач.
+     *
+     * @return <code>true</code> если разрешение возвращено
+     * и после ожидания его нужно получить снова
+     */
+    public boolean suspend() {
+        if (!held.get()) {
+            return false;
+        }
+        release();
+
+        return true;
+    }
+
+    /**
+     * Повторное получение разрешения после ожидания подзадач.
+     *
+     * @param suspended результат <code>suspend</code>
+     */
+    public void resume(boolean suspended) {
+        if (suspended) {
+            acquireUninterruptibly();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package ru.develonica.thread;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Долгая команда пользователя, которая выполняется в фоне.
+ * Результатом задачи является действие, которое выводит ее результат
+ * пользователю; выводить его или нет, решает тот, кто передал задачу.
+ */
+public final class Job {
+
+    /** Номер задачи, по которому ее можно отменить. */
+    private final int id;
+
+    /** Команда, которую выполняет задача. */
+    private final String description;
+
+    /** Директория, в которой пользователь ввел команду. */
+    private final String directory;
+
+    /** Время запуска задачи в наносекундах. */
+    private final long started;
+
+    /** Вывод результата задачи. */
+    final CompletableFuture<Runnable> result;
+
+    /** Выполнение задачи в пуле, через него прерывается поток задачи. */
+    Future<?> future;
+
+    /** Признак запущенного потока задачи. */
+    volatile boolean running;
+
+    /** Ход задачи или <code>null</code>, если задача его не сообщает. */
+    private volatile Progress progress;
+
+    Job(int id, String description, String directory) {
+        this.id = id;
+        this.description = description;
+        this.directory = directory;
+        this.started = nanoTime();
+        this.result = new CompletableFuture<>();
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public String getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Время выполнения задачи.
+     *
+     * @return время с запуска в миллисекундах
+     */
+    public long getElapsedMillis() {
+        return NANOSECONDS.toMillis(nanoTime() - started);
+    }
+
+    public Progress getProgress() {
+        return progress;
+    }
+
+    public void setProgress(Progress progress) {
+        this.progress = progress;
+    }
+
+    /**
+     * Признак отмененной задачи, которая еще не остановилась.
+     *
+     * @return <code>true</code> если задача отменена
+     */
+    public boolean isCancelled() {
+        return result.isCancelled();
+    }
+
+    /**
+     * Завершение задачи.
+     *
+     * @return завершается действием, которое выводит результат, или ошибкой задачи
+     */
+    public CompletableFuture<Runnable> getResult() {
+        return result;
+    }
+}
@@ -0,0 +1,134 @@
+package ru.develonica.thread;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Выполнение долгих команд пользователя в фоне, чтобы пользователь
+ * мог вводить следующие команды, пока выполняются предыдущие.
+ * Задача остается в списке задач, пока ее поток не завершится,
+ * даже если она уже отменена. Отмена прерывает поток задачи,
+ * а задача проверяет прерывание между отдельными объектами.
+ */
+public class JobManager {
+
+    /** Время ожидания остановки задач при выходе в секундах. */
+    private static final long SHUTDOWN_TIMEOUT_SECONDS = 5L;
+
+    /** Имя потоков задач. */
+    private static final String THREAD_NAME = "job";
+
+    /** Потоки задач. */
+    private final ExecutorService executor;
+
+    /** Выполняющиеся задачи по номеру. */
+    private final Map<Integer, Job> jobs;
+
+    /** Номер следующей задачи. */
+    private final AtomicInteger ids;
+
+    public JobManager() {
+        this.ids = new AtomicInteger();
+        this.jobs = new ConcurrentSkipListMap<>();
+        this.executor = newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Запуск задачи.
+     *
+     * @param description команда, которую выполняет задача
+     * @param directory   директория, в которой пользователь ввел команду
+     * @param task        задача
+     * @return запущенная задача
+     */
+    public Job submit(String description, String directory, JobTask task) {
+        Job job = new Job(ids.incrementAndGet(), description, directory);
+        FutureTask<Void> future = new FutureTask<>(() -> {
+            job.running = true;
+            try {
+                job.result.complete(task.run());
+            } catch (Exception | Error e) {
+                job.result.completeExceptionally(e);
+            } finally {
+                jobs.remove(job.getId());
+            }
+        }, null);
+
+        // задача видна в списке и может быть отменена до запуска потока
+        job.future = future;
+        jobs.put(job.getId(), job);
+        executor.execute(future);
+
+        return job;
+    }
+
+    /**
+     * Выполняющиеся задачи.
+     *
+     * @return задачи по возрастанию номера
+     */
+    public List<Job> jobs() {
+        return new ArrayList<>(jobs.values());
+    }
+
+    /**
+     * Отмена задачи. Результат отмененной задачи не выводится.
+     *
+     * @param id номер задачи
+     * @return отмененная задача или <code>null</code>, если такой задачи нет
+     */
+    public Job cancel(int id) {
+        Job job = jobs.get(id);
+        if (job == null) {
+            return null;
+        }
+
+        job.result.cancel(false);
+        job.future.cancel(true);
+        if (!job.running) {
+            // задача не успела запуститься и уже не запустится
+            jobs.remove(id);
+        }
+
+        return job;
+    }
+
+    /**
+     * Отмена всех задач и ожидание их остановки при выходе из программы.
+     */
+    public void shutdown() {
+        jobs.keySet().forEach(this::cancel);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(SHUTDOWN_TIMEOUT_SECONDS, SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Задача пользователя.
+     */
+    public interface JobTask {
+
+        /**
+         * Выполнение задачи.
+         *
+         * @return действие, которое выводит результат задачи пользователю
+         * @throws Exception если задача завершилась ошибкой
+         */
+        Runnable run() throws Exception;
+    }
+}
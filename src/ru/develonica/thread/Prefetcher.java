@@ -0,0 +1,99 @@
+package ru.develonica.thread;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Исполнитель фоновых задач предварительного чтения директорий.
+ * Задачи выполняются в нескольких потоках с низким приоритетом,
+ * а при переполнении очереди вытесняются самые старые задачи,
+ * поэтому предварительное чтение никогда не задерживает команды пользователя.
+ * Каждая задача получает поколение; после отмены все задачи
+ * прошлых поколений должны прекратить работу.
+ */
+public class Prefetcher {
+
+    /** Количество задач, которые могут ждать выполнения. */
+    private static final int QUEUE_CAPACITY = 16;
+
+    /** Время жизни простаивающего потока в секундах. */
+    private static final long KEEP_ALIVE_SECONDS = 30L;
+
+    /** Имя фоновых потоков. */
+    private static final String THREAD_NAME = "prefetcher";
+
+    /** Пул фоновых потоков. */
+    private final ThreadPoolExecutor executor;
+
+    /** Текущее поколение задач. */
+    private final AtomicLong generation;
+
+    public Prefetcher(int threads) {
+        this.executor = new ThreadPoolExecutor(threads, threads, KEEP_ALIVE_SECONDS, SECONDS,
+                new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+                task -> {
+                    Thread thread = new Thread(task, THREAD_NAME);
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                },
+                new ThreadPoolExecutor.DiscardOldestPolicy());
+        this.executor.allowCoreThreadTimeOut(true);
+        this.generation = new AtomicLong();
+    }
+
+    /**
+     * Получение текущего поколения. Задача, переданная с этим поколением
+     * позже, будет отменена, если отмена произошла после получения поколения.
+     *
+     * @return текущее поколение
+     */
+    public long generation() {
+        return generation.get();
+    }
+
+    /**
+     * Передача задачи.
+     *
+     * @param taskGeneration поколение задачи
+     * @param task           задача, которая получает свое поколение
+     */
+    public void submit(long taskGeneration, PrefetchTask task) {
+        executor.execute(() -> {
+            if (!isCancelled(taskGeneration)) {
+                task.run(taskGeneration);
+            }
+        });
+    }
+
+    /** Отмена всех переданных задач. */
+    public void cancel() {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Проверка отмены задачи.
+     *
+     * @param taskGeneration поколение задачи
+     * @return <code>true</code> если задача отменена
+     */
+    public boolean isCancelled(long taskGeneration) {
+        return generation.get() != taskGeneration;
+    }
+
+    /**
+     * Задача предварительного чтения.
+     */
+    public interface PrefetchTask {
+
+        /**
+         * Выполнение задачи.
+         *
+         * @param generation поколение задачи для проверки отмены
+         */
+        void run(long generation);
+    }
+}
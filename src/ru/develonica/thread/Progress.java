@@ -0,0 +1,96 @@
+package ru.develonica.thread;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Ход долгой операции над поддеревом: количество обработанных объектов
+ * и байт. Счетчики увеличиваются из многих потоков одновременно,
+ * поэтому используются <code>LongAdder</code>.
+ */
+public final class Progress {
+
+    /** Обработанные объекты. */
+    private final LongAdder objects = new LongAdder();
+
+    /** Обработанные байты. */
+    private final LongAdder bytes = new LongAdder();
+
+    /** Объекты, которые не удалось обработать. */
+    private final LongAdder failed = new LongAdder();
+
+    /** Время начала операции в наносекундах. */
+    private final long started = nanoTime();
+
+    /**
+     * Учет обработанного объекта.
+     *
+     * @param size размер объекта в байтах
+     */
+    public void add(long size) {
+        objects.increment();
+        bytes.add(size);
+    }
+
+    /**
+     * Учет части объекта, который еще обрабатывается.
+     *
+     * @param size обработанные байты
+     */
+    public void addBytes(long size) {
+        bytes.add(size);
+    }
+
+    /** Учет объекта, который не удалось обработать. */
+    public void fail() {
+        failed.increment();
+    }
+
+    public long getObjects() {
+        return objects.sum();
+    }
+
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    public long getFailed() {
+        return failed.sum();
+    }
+
+    /**
+     * Время выполнения операции.
+     *
+     * @return время с начала в миллисекундах
+     */
+    public long getElapsedMillis() {
+        return NANOSECONDS.toMillis(nanoTime() - started);
+    }
+
+    /**
+     * Средняя скорость обработки объектов.
+     *
+     * @return объектов в секунду
+     */
+    public long getObjectsPerSecond() {
+        return perSecond(getObjects());
+    }
+
+    /**
+     * Средняя скорость обработки байт.
+     *
+     * @return байт в секунду
+     */
+    public long getBytesPerSecond() {
+        return perSecond(getBytes());
+    }
+
+    private long perSecond(long value) {
+        long elapsed = Math.max(nanoTime() - started, 1L);
+
+        return (long) (value * (double) SECONDS.toNanos(1) / elapsed);
+    }
+}
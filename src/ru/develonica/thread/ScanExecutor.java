@@ -0,0 +1,35 @@
+package ru.develonica.thread;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Исполнитель задач обработки объектов директории.
+ */
+public interface ScanExecutor {
+
+    /**
+     * Отправляет на выполнение задачу Runnable. Принятая задача
+     * обязательно будет выполнена.
+     *
+     * @param task задача на отправку.
+     * @throws RejectedExecutionException если задача не принята
+     */
+    void submit(Runnable task);
+
+    /**
+     * Упорядоченное отключение, при котором ранее отправленные
+     * задачи выполняются, но новые задачи не принимаются.
+     */
+    void shutdown();
+
+    /**
+     * Ожидание завершения всех задач после отключения.
+     *
+     * @param timeout максимальное время ожидания
+     * @param unit    единица измерения времени ожидания
+     * @return <code>true</code> если все задачи завершились
+     * @throws InterruptedException если ожидание было прервано
+     */
+    boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException;
+}
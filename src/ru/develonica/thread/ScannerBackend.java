@@ -0,0 +1,13 @@
+package ru.develonica.thread;
+
+/**
+ * Способы выполнения обхода директорий.
+ */
+public enum ScannerBackend {
+
+    /** Фиксированный пул потоков и пул fork/join для размеров. */
+    POOL,
+
+    /** Виртуальный поток на каждый объект и каждую поддиректорию. */
+    VIRTUAL
+}
@@ -0,0 +1,559 @@
+package ru.develonica.thread;
+
+import ru.develonica.model.CancellationToken;
+import ru.develonica.model.DirectoryLevel;
+import ru.develonica.model.DirectorySize;
+import ru.develonica.model.EntryAttributes;
+import ru.develonica.model.EntryStore;
+import ru.develonica.model.FileInfo;
+import ru.develonica.model.ListingCache;
+import ru.develonica.model.SizeCache;
+import ru.develonica.model.TypeClassifier;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeoutException;
+
+import static java.nio.file.Files.newDirectoryStream;
+import static java.nio.file.Files.readAttributes;
+import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Подсчет размера директорий. По умолчанию используется пул
+ * <code>ForkJoinPool</code>: каждая поддиректория обрабатывается отдельной
+ * задачей, поэтому одно большое поддерево распределяется между всеми
+ * потоками пула, а свободные потоки забирают задачи у занятых.
+ * Вместо пула каждую поддиректорию можно обходить в отдельном виртуальном
+ * потоке, тогда количество одновременных чтений директорий ограничено
+ * семафором. Прочитанные директории сохраняются в <code>SizeCache</code>:
+ * пока время изменения директории прежнее, она не читается заново,
+ * а читаются только атрибуты ее поддиректорий, поэтому файл, добавленный
+ * или удаленный на любой глубине, учитывается без чтения всего поддерева.
+ * Изменение размера файла, при котором время изменения его директории
+ * не меняется, так не обнаруживается. Если задан
+ * <code>ListingCache</code>, то объекты каждой прочитанной директории
+ * вместе с размерами ее поддиректорий сохраняются в нем.
+ * Подсчет можно отменить признаком отмены: задачи перестают читать
+ * директории, а недосчитанные поддеревья не попадают в кэши.
+ * Точка монтирования сетевой файловой системы внутри поддерева читается
+ * с ограничением времени, и если она не отвечает, подсчет поддерева
+ * считается прерванным.
+ */
+public class SizeCalculator {
+
+    /** Результат отмененного подсчета, который не сохраняется в кэш. */
+    private static final DirectorySize CANCELLED = new DirectorySize(0L, 0L, 0L);
+
+    /** Пул потоков с перехватом задач, если обход идет в пуле. */
+    private final ForkJoinPool pool;
+
+    /** Исполнитель с виртуальным потоком на задачу, если обход идет в нем. */
+    private final ExecutorService virtualExecutor;
+
+    /** Ограничение одновременных чтений директорий, общее с обходом директорий. */
+    private final IoPermits ioPermits;
+
+    /** Кэш данных директорий. */
+    private final SizeCache sizeCache;
+
+    /** Кэш содержимого директорий или <code>null</code>, если содержимое не сохраняется. */
+    private final ListingCache listingCache;
+
+    /** Определение типа файлов для сохраняемого содержимого. */
+    private final TypeClassifier typeClassifier;
+
+    /** Чтение точек монтирования с ограничением времени или <code>null</code>, если оно не нужно. */
+    private final TimedAttributeReader timedReader;
+
+    public SizeCalculator(int parallelism, SizeCache sizeCache, ListingCache listingCache,
+                          TypeClassifier typeClassifier, TimedAttributeReader timedReader) {
+        this.pool = new ForkJoinPool(parallelism);
+        this.virtualExecutor = null;
+        this.ioPermits = null;
+        this.sizeCache = sizeCache;
+        this.listingCache = listingCache;
+        this.typeClassifier = typeClassifier;
+        this.timedReader = timedReader;
+    }
+
+    public SizeCalculator(ExecutorService virtualExecutor, IoPermits ioPermits, SizeCache sizeCache,
+                          ListingCache listingCache, TypeClassifier typeClassifier,
+                          TimedAttributeReader timedReader) {
+        this.pool = null;
+        this.virtualExecutor = virtualExecutor;
+        this.ioPermits = ioPermits;
+        this.sizeCache = sizeCache;
+        this.listingCache = listingCache;
+        this.typeClassifier = typeClassifier;
+        this.timedReader = timedReader;
+    }
+
+    /**
+     * Подсчет размера директории рекурсивно.
+     *
+     * @param folder директория
+     * @return данные поддерева директории
+     */
+    public DirectorySize calculate(Path folder) {
+        DirectorySize size = calculate(folder, new CancellationToken());
+
+        return size != null ? size : new DirectorySize(0L, 0L, 0L);
+    }
+
+    /**
+     * Подсчет размера директории рекурсивно с возможностью отмены.
+     * Если истекает срок признака отмены, подсчет отменяется,
+     * даже если потоки пула ждут системных вызовов.
+     *
+     * @param folder директория
+     * @param token  признак отмены
+     * @return данные поддерева директории или <code>null</code>, если подсчет отменен
+     * или директория на сетевой файловой системе не отвечает
+     */
+    public DirectorySize calculate(Path folder, CancellationToken token) {
+        Path realPath;
+        BasicFileAttributes attributes;
+        try {
+            // сама директория может быть точкой монтирования
+            stat(folder.toAbsolutePath());
+            realPath = folder.toRealPath();
+            attributes = readAttributes(realPath, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return new DirectorySize(0L, 0L, 0L);
+        } catch (TimeoutException e) {
+            return null;
+        }
+
+        DirectorySize size = pool != null
+                ? await(pool.submit(new SizeTask(realPath, lastModified(attributes), token)), token)
+                : computeVirtual(realPath, lastModified(attributes), token);
+
+        return size == CANCELLED ? null : size;
+    }
+
+    /**
+     * Ожидание подсчета в пуле не дольше срока признака отмены.
+     *
+     * @param task  задача подсчета
+     * @param token признак отмены
+     * @return данные поддерева или <code>CANCELLED</code>
+     */
+    private static DirectorySize await(ForkJoinTask<DirectorySize> task, CancellationToken token) {
+        try {
+            return task.get(token.remainingNanos(), NANOSECONDS);
+        } catch (TimeoutException e) {
+            token.cancel();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            token.cancel();
+        } catch (ExecutionException e) {
+            // поддерево не удалось посчитать
+        }
+
+        return CANCELLED;
+    }
+
+    /**
+     * Подсчет размера директории, где каждая поддиректория
+     * обходится в отдельном виртуальном потоке.
+     *
+     * @param folder       директория
+     * @param lastModified время изменения директории
+     * @param token        признак отмены
+     * @return данные поддерева директории или <code>CANCELLED</code>
+     */
+    private DirectorySize computeVirtual(Path folder, long lastModified, CancellationToken token) {
+        if (token.isCancelled()) {
+            return CANCELLED;
+        }
+
+        Listing listing;
+        boolean acquired;
+        try {
+            acquired = ioPermits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CANCELLED;
+        }
+        try {
+            listing = read(folder, lastModified, token);
+        } finally {
+            if (acquired) {
+                ioPermits.release();
+            }
+        }
+
+        List<Future<DirectorySize>> subTasks = new ArrayList<>(listing.subFolders.size());
+        for (int i = 0; i < listing.subFolders.size(); i++) {
+            Path subFolder = listing.subFolders.get(i);
+            long subModified = listing.subModified.get(i);
+            subTasks.add(virtualExecutor.submit(() -> computeVirtual(subFolder, subModified, token)));
+        }
+
+        long size = listing.size;
+        long objects = listing.objects;
+        // задача обхода, которая считает размер, не держит разрешение во время ожидания
+        boolean suspended = ioPermits.suspend();
+        for (int i = 0; i < subTasks.size(); i++) {
+            try {
+                DirectorySize subSize = subTasks.get(i).get();
+                if (subSize == CANCELLED) {
+                    listing.cancelled = true;
+                    continue;
+                }
+                size += subSize.getSize();
+                objects += subSize.getObjects();
+                listing.setSubFolderSize(i, subSize.getSize());
+            } catch (ExecutionException e) {
+                // поддерево не удалось посчитать, учитываем остальные
+                listing.entries = null;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                token.cancel();
+                listing.cancelled = true;
+                break;
+            }
+        }
+        ioPermits.resume(suspended);
+        if (listing.cancelled) {
+            // недосчитанное поддерево не сохраняется
+            return CANCELLED;
+        }
+
+        saveListing(folder.toString(), lastModified, listing);
+
+        return new DirectorySize(size, objects, lastModified);
+    }
+
+    /**
+     * Получение содержимого директории для подсчета. Если данные директории
+     * в кэше не устарели, читаются только атрибуты ее поддиректорий,
+     * чтобы проверить их время изменения, иначе директория читается заново
+     * и ее данные сохраняются в кэш.
+     *
+     * @param folder       директория
+     * @param lastModified время изменения директории
+     * @param token        признак отмены
+     * @return содержимое директории
+     */
+    private Listing read(Path folder, long lastModified, CancellationToken token) {
+        String key = folder.toString();
+        DirectoryLevel level = sizeCache.get(key, lastModified);
+        if (level != null) {
+            Listing listing = cachedListing(folder, level);
+            if (listing != null) {
+                return listing;
+            }
+            sizeCache.remove(key);
+        }
+
+        Listing listing = list(folder, token);
+        if (!listing.cancelled) {
+            sizeCache.put(key, listing.toLevel(lastModified));
+        }
+
+        return listing;
+    }
+
+    /**
+     * Сохранение объектов директории, если все размеры поддиректорий посчитаны.
+     *
+     * @param key          реальный путь директории
+     * @param lastModified время изменения директории
+     * @param listing      содержимое директории
+     */
+    private void saveListing(String key, long lastModified, Listing listing) {
+        if (listing.entries != null) {
+            listingCache.put(key, lastModified, listing.entries);
+        }
+    }
+
+    /**
+     * Чтение одной директории: файлы суммируются на месте,
+     * а поддиректории возвращаются для отдельного обхода.
+     * Символьные ссылки не раскрываются, чтобы не зациклиться.
+     *
+     * @param folder директория
+     * @param token  признак отмены
+     * @return содержимое директории
+     */
+    private Listing list(Path folder, CancellationToken token) {
+        return listingCache != null
+                ? listEntries(folder, token)
+                : listSizes(folder, token);
+    }
+
+    /**
+     * Чтение одной директории только для подсчета размера.
+     *
+     * @param folder директория
+     * @param token  признак отмены
+     * @return содержимое директории
+     */
+    private Listing listSizes(Path folder, CancellationToken token) {
+        Listing listing = new Listing();
+
+        try (DirectoryStream<Path> stream = newDirectoryStream(folder)) {
+            for (Path path : stream) {
+                if (token.isCancelled()) {
+                    listing.cancelled = true;
+                    break;
+                }
+                BasicFileAttributes attributes;
+                try {
+                    attributes = stat(path);
+                } catch (IOException e) {
+                    // объект удален во время обхода или нет доступа
+                    continue;
+                } catch (TimeoutException e) {
+                    // точка монтирования не отвечает, поддерево не досчитать
+                    listing.cancelled = true;
+                    continue;
+                }
+
+                listing.objects++;
+                if (attributes.isDirectory()) {
+                    listing.subFolders.add(path);
+                    listing.subModified.add(lastModified(attributes));
+                } else {
+                    listing.size += attributes.size();
+                }
+            }
+        } catch (IOException | DirectoryIteratorException e) {
+            // нет прав на чтение директории, учитываем то, что успели прочитать
+        }
+
+        return listing;
+    }
+
+    /**
+     * Чтение одной директории с сохранением ее объектов в том же виде,
+     * в каком их сохраняет заполнение директории. Если в директории
+     * есть символьная ссылка на директорию, ее объекты не сохраняются:
+     * размер по ссылке при подсчете не учитывается, а при заполнении учитывается.
+     *
+     * @param folder директория
+     * @param token  признак отмены
+     * @return содержимое директории
+     */
+    private Listing listEntries(Path folder, CancellationToken token) {
+        Listing listing = new Listing();
+        listing.entries = new EntryStore();
+
+        try (DirectoryStream<Path> stream = newDirectoryStream(folder)) {
+            for (Path path : stream) {
+                if (token.isCancelled()) {
+                    listing.cancelled = true;
+                    break;
+                }
+                EntryAttributes attributes;
+                try {
+                    attributes = timedReader != null && timedReader.isRemoteMount(path)
+                            ? timedReader.read(path)
+                            : EntryAttributes.read(path);
+                } catch (IOException e) {
+                    // объект удален во время обхода или нет доступа
+                    continue;
+                } catch (TimeoutException e) {
+                    // точка монтирования не отвечает, поддерево не досчитать
+                    listing.cancelled = true;
+                    continue;
+                }
+
+                listing.objects++;
+                if (attributes.isDirectory() && !attributes.isSymbolicLink()) {
+                    listing.subFolders.add(path);
+                    listing.subModified.add(attributes.getLastModified());
+                } else {
+                    listing.size += attributes.getSize();
+                    if (attributes.isDirectory()) {
+                        listing.entries = null;
+                    }
+                }
+
+                if (listing.entries != null) {
+                    int index = listing.entries.append(
+                            FileInfo.of(path, path.getFileName().toString(), attributes, typeClassifier));
+                    if (attributes.isDirectory()) {
+                        listing.subIndexes.add(index);
+                    }
+                }
+            }
+        } catch (IOException | DirectoryIteratorException e) {
+            // нет прав на чтение директории, учитываем то, что успели прочитать
+            listing.entries = null;
+        }
+
+        return listing;
+    }
+
+    /**
+     * Содержимое директории по ее данным из кэша. Читаются
+     * только атрибуты поддиректорий.
+     *
+     * @param folder директория
+     * @param level  данные директории
+     * @return содержимое директории или <code>null</code>, если поддиректория
+     * пропала, хотя время изменения директории прежнее
+     */
+    private Listing cachedListing(Path folder, DirectoryLevel level) {
+        Listing listing = new Listing();
+        listing.size = level.getSize();
+        listing.objects = level.getObjects();
+        for (String name : level.getSubFolders()) {
+            Path subFolder = folder.resolve(name);
+            BasicFileAttributes attributes;
+            try {
+                attributes = stat(subFolder);
+            } catch (IOException e) {
+                return null;
+            } catch (TimeoutException e) {
+                // точка монтирования не отвечает, поддерево не досчитать
+                listing.cancelled = true;
+                continue;
+            }
+            if (!attributes.isDirectory()) {
+                return null;
+            }
+            listing.subFolders.add(subFolder);
+            listing.subModified.add(lastModified(attributes));
+        }
+
+        return listing;
+    }
+
+    /**
+     * Чтение аттрибутов объекта директории без раскрытия символьной ссылки.
+     * Точка монтирования сетевой файловой системы читается с ограничением времени.
+     *
+     * @param path путь объекта
+     * @return аттрибуты объекта
+     * @throws IOException      если объект недоступен
+     * @throws TimeoutException если точка монтирования не ответила вовремя
+     */
+    private BasicFileAttributes stat(Path path) throws IOException, TimeoutException {
+        return timedReader != null && timedReader.isRemoteMount(path)
+                ? timedReader.readBasic(path)
+                : readAttributes(path, BasicFileAttributes.class, NOFOLLOW_LINKS);
+    }
+
+    /**
+     * Время изменения объекта.
+     *
+     * @param attributes аттрибуты объекта
+     * @return время изменения в наносекундах
+     */
+    private static long lastModified(BasicFileAttributes attributes) {
+        return attributes.lastModifiedTime().to(NANOSECONDS);
+    }
+
+    /**
+     * Содержимое одной директории.
+     */
+    private static final class Listing {
+        private final List<Path> subFolders = new ArrayList<>();
+        private final List<Long> subModified = new ArrayList<>();
+        private final List<Integer> subIndexes = new ArrayList<>();
+        private long size;
+        private long objects;
+
+        /** Признак отмененного чтения директории или ее поддерева. */
+        private boolean cancelled;
+
+        /** Объекты директории или <code>null</code>, если они не сохраняются. */
+        private EntryStore entries;
+
+        /**
+         * Данные директории для кэша.
+         *
+         * @param lastModified время изменения директории
+         * @return данные директории
+         */
+        private DirectoryLevel toLevel(long lastModified) {
+            String[] names = new String[subFolders.size()];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = subFolders.get(i).getFileName().toString();
+            }
+
+            return new DirectoryLevel(size, objects, lastModified, names);
+        }
+
+        /**
+         * Запись размера поддиректории в ее объект.
+         *
+         * @param i    номер поддиректории
+         * @param size размер поддиректории
+         */
+        private void setSubFolderSize(int i, long size) {
+            if (entries != null) {
+                entries.setFileSize(subIndexes.get(i), size);
+            }
+        }
+    }
+
+    /**
+     * Задача подсчета размера одной директории в пуле fork/join.
+     * Для каждой поддиректории создается отдельная задача.
+     */
+    private final class SizeTask extends RecursiveTask<DirectorySize> {
+        private static final long serialVersionUID = 1L;
+        private final Path folder;
+        private final long lastModified;
+        private final CancellationToken token;
+
+        private SizeTask(Path folder, long lastModified, CancellationToken token) {
+            this.folder = folder;
+            this.lastModified = lastModified;
+            this.token = token;
+        }
+
+        @Override
+        protected DirectorySize compute() {
+            if (token.isCancelled()) {
+                return CANCELLED;
+            }
+
+            Listing listing = read(folder, lastModified, token);
+
+            List<SizeTask> subTasks = new ArrayList<>(listing.subFolders.size());
+            for (int i = 0; i < listing.subFolders.size(); i++) {
+                SizeTask subTask = new SizeTask(listing.subFolders.get(i), listing.subModified.get(i), token);
+                subTask.fork();
+                subTasks.add(subTask);
+            }
+
+            long size = listing.size;
+            long objects = listing.objects;
+            for (int i = 0; i < subTasks.size(); i++) {
+                DirectorySize subSize = subTasks.get(i).join();
+                if (subSize == CANCELLED) {
+                    listing.cancelled = true;
+                    continue;
+                }
+                size += subSize.getSize();
+                objects += subSize.getObjects();
+                listing.setSubFolderSize(i, subSize.getSize());
+            }
+            if (listing.cancelled) {
+                // недосчитанное поддерево не сохраняется
+                return CANCELLED;
+            }
+
+            saveListing(folder.toString(), lastModified, listing);
+
+            return new DirectorySize(size, objects, lastModified);
+        }
+    }
+}
@@ -0,0 +1,214 @@
+package ru.develonica.thread;
+
+import ru.develonica.model.EntryAttributes;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeoutException;
+
+import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
+import static java.util.concurrent.Executors.newCachedThreadPool;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Чтение аттрибутов объектов с ограничением времени. Системный вызов
+ * на недоступной сетевой файловой системе может не вернуться никогда,
+ * поэтому он выполняется в отдельном потоке, а вызывающий поток ждет
+ * его не дольше заданного времени. Поток, который завис в системном
+ * вызове, остается зависшим, поэтому после первого превышения времени
+ * заполнение не должно читать аттрибуты этой директории дальше.
+ * <p>
+ * Сетевая файловая система может быть смонтирована и внутри локальной
+ * директории, поэтому точки монтирования сетевых файловых систем берутся
+ * из таблицы монтирования, которая читается без обращения к самим
+ * точкам монтирования и перечитывается не чаще раза в секунду.
+ */
+public class TimedAttributeReader {
+
+    /** Типы сетевых файловых систем, на которых чтение ограничивается по времени. */
+    private static final Set<String> REMOTE_FILE_SYSTEMS = Set.of(
+            "nfs", "nfs4", "cifs", "smb", "smb3", "smbfs", "9p", "afs", "ceph",
+            "glusterfs", "fuse.glusterfs", "fuse.sshfs", "fuse.rclone", "davfs", "lustre");
+
+    /** Имя потоков чтения. */
+    private static final String THREAD_NAME = "stat";
+
+    /** Таблица монтирования текущего процесса. */
+    private static final Path MOUNTS = Path.of("/proc/self/mounts");
+
+    /** Время, в течение которого прочитанная таблица монтирования считается актуальной. */
+    private static final long MOUNTS_TTL_MILLIS = 1000L;
+
+    /** Потоки, в которых выполняются системные вызовы. */
+    private final ExecutorService executor;
+
+    /** Максимальное время чтения в миллисекундах. */
+    private final long timeoutMillis;
+
+    /** Точки монтирования сетевых файловых систем. */
+    private volatile Set<String> remoteMounts = Set.of();
+
+    /** Время чтения таблицы монтирования в миллисекундах, 0 если она не читалась. */
+    private volatile long mountsReadAt;
+
+    public TimedAttributeReader(long timeoutMillis) {
+        this.timeoutMillis = timeoutMillis;
+        this.executor = newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, THREAD_NAME);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Чтение аттрибутов объекта.
+     *
+     * @param path путь объекта
+     * @return аттрибуты объекта
+     * @throws IOException      если объект недоступен
+     * @throws TimeoutException если чтение не уложилось в срок
+     */
+    public EntryAttributes read(Path path) throws IOException, TimeoutException {
+        return await(executor.submit(() -> EntryAttributes.read(path)));
+    }
+
+    /**
+     * Чтение базовых аттрибутов объекта без раскрытия символьной ссылки.
+     *
+     * @param path путь объекта
+     * @return аттрибуты объекта
+     * @throws IOException      если объект недоступен
+     * @throws TimeoutException если чтение не уложилось в срок
+     */
+    public BasicFileAttributes readBasic(Path path) throws IOException, TimeoutException {
+        return await(executor.submit(() -> Files.readAttributes(path, BasicFileAttributes.class, NOFOLLOW_LINKS)));
+    }
+
+    /**
+     * Чтение списка объектов директории.
+     *
+     * @param folder директория
+     * @return объекты директории или <code>null</code>, если директория недоступна
+     * @throws TimeoutException если чтение не уложилось в срок
+     */
+    public File[] list(File folder) throws TimeoutException {
+        try {
+            return await(executor.submit(() -> folder.listFiles()));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Проверка, нужно ли ограничивать чтение в директории по времени.
+     * Директория, для которой не удалось определить файловую систему
+     * за отведенное время, тоже считается сетевой.
+     *
+     * @param folder директория
+     * @return <code>true</code> если директория на сетевой файловой системе
+     */
+    public boolean isRemote(Path folder) {
+        try {
+            return REMOTE_FILE_SYSTEMS.contains(await(executor.submit(() -> Files.getFileStore(folder).type())));
+        } catch (TimeoutException e) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Проверка, является ли объект точкой монтирования сетевой
+     * файловой системы. Сам объект при этом не читается.
+     *
+     * @param path реальный путь объекта
+     * @return <code>true</code> если чтение объекта нужно ограничивать по времени
+     */
+    public boolean isRemoteMount(Path path) {
+        return remoteMounts().contains(path.toString());
+    }
+
+    /**
+     * Точки монтирования сетевых файловых систем. Если таблицы
+     * монтирования нет, например, не в Linux, их нет и здесь.
+     *
+     * @return пути точек монтирования
+     */
+    private Set<String> remoteMounts() {
+        long now = System.currentTimeMillis();
+        if (now - mountsReadAt < MOUNTS_TTL_MILLIS) {
+            return remoteMounts;
+        }
+
+        Set<String> mounts = new HashSet<>();
+        try {
+            List<String> lines = Files.readAllLines(MOUNTS);
+            for (String line : lines) {
+                // устройство, точка монтирования, тип, параметры
+                String[] fields = line.split(" ");
+                if (fields.length > 2 && REMOTE_FILE_SYSTEMS.contains(fields[2])) {
+                    mounts.add(unescape(fields[1]));
+                }
+            }
+        } catch (IOException e) {
+            // таблицы монтирования нет
+        }
+        remoteMounts = mounts;
+        mountsReadAt = now;
+
+        return mounts;
+    }
+
+    /**
+     * Раскрытие восьмеричных последовательностей, которыми в таблице
+     * монтирования записаны пробелы и другие служебные символы.
+     *
+     * @param field поле таблицы монтирования
+     * @return путь
+     */
+    private static String unescape(String field) {
+        if (field.indexOf('\\') < 0) {
+            return field;
+        }
+
+        StringBuilder result = new StringBuilder(field.length());
+        for (int i = 0; i < field.length(); i++) {
+            char c = field.charAt(i);
+            if (c == '\\' && i + 3 < field.length()) {
+                result.append((char) Integer.parseInt(field.substring(i + 1, i + 4), 8));
+                i += 3;
+            } else {
+                result.append(c);
+            }
+        }
+
+        return result.toString();
+    }
+
+    private <T> T await(Future<T> future) throws IOException, TimeoutException {
+        try {
+            return future.get(timeoutMillis, MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            throw new TimeoutException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package ru.develonica.thread;
+
+import ru.develonica.model.CancellationToken;
+import ru.develonica.model.FindQuery;
+import ru.develonica.model.ListingCache;
+import ru.develonica.model.TopEntries;
+
+import java.io.IOException;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+import static java.nio.file.Files.newDirectoryStream;
+import static java.nio.file.Files.readAttributes;
+import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Поиск самых больших файлов и директорий в поддеревьях, которых нет
+ * в файловом дереве. Каждая директория обходится отдельной задачей
+ * в пуле <code>ForkJoinPool</code> и возвращает размер своего
+ * содержимого, поэтому размеры директорий считаются за тот же обход.
+ * Каждый поток пула учитывает объекты в своем <code>TopEntries</code>,
+ * а после обхода они объединяются, поэтому потоки не синхронизируются
+ * на каждом объекте. Если содержимое директории есть
+ * в <code>ListingCache</code>, она не читается с диска. Символические
+ * ссылки на директории не обходятся.
+ */
+public class TopCollector {
+
+    /** Условия отбора файлов из кэша содержимого: все файлы. */
+    private static final FindQuery ALL_FILES = FindQuery.files(0L);
+
+    /** Пул потоков обхода. */
+    private final ForkJoinPool pool;
+
+    /** Кэш содержимого директорий или <code>null</code>, если содержимое не сохраняется. */
+    private final ListingCache listingCache;
+
+    public TopCollector(int parallelism, ListingCache listingCache) {
+        this.pool = new ForkJoinPool(parallelism);
+        this.listingCache = listingCache;
+    }
+
+    /**
+     * Обход директорий и учет их объектов. Сами директории, кроме
+     * корня, учитываются вместе с размером всего содержимого.
+     *
+     * @param root     корень, для которого ищутся объекты
+     * @param folders  директории
+     * @param top      самые большие объекты, к которым добавляются найденные
+     * @param token    признак отмены и срока обхода
+     * @param progress ход обхода
+     * @return <code>false</code> если обход прерван и размеры неполные
+     */
+    public boolean collect(Path root, List<Path> folders, TopEntries top,
+                           CancellationToken token, Progress progress) {
+
+        Map<Thread, TopEntries> local = new ConcurrentHashMap<>();
+        Walk walk = new Walk(root, top.getLimit(), token, progress, local);
+        List<CollectTask> tasks = new ArrayList<>(folders.size());
+        folders.forEach(folder -> tasks.add(new CollectTask(folder, walk)));
+
+        boolean completed = TreeTasks.await(pool.submit(() -> ForkJoinTask.invokeAll(tasks)),
+                token, progress, bytes -> {
+                });
+        local.values().forEach(top::merge);
+
+        return completed && !token.isCancelled();
+    }
+
+    /**
+     * Общие параметры одного обхода.
+     */
+    private static final class Walk {
+
+        /** Корень, который не учитывается как директория. */
+        private final Path root;
+
+        /** Максимальное количество объектов каждого вида. */
+        private final int limit;
+
+        /** Признак отмены. */
+        private final CancellationToken token;
+
+        /** Ход обхода. */
+        private final Progress progress;
+
+        /** Самые большие объекты, найденные каждым потоком. */
+        private final Map<Thread, TopEntries> local;
+
+        private Walk(Path root, int limit, CancellationToken token, Progress progress,
+                     Map<Thread, TopEntries> local) {
+            this.root = root;
+            this.limit = limit;
+            this.token = token;
+            this.progress = progress;
+            this.local = local;
+        }
+
+        /**
+         * Самые большие объекты текущего потока.
+         *
+         * @return объекты, которые заполняет только текущий поток
+         */
+        private TopEntries current() {
+            return local.computeIfAbsent(Thread.currentThread(), thread -> new TopEntries(limit));
+        }
+    }
+
+    /**
+     * Задача обхода одной директории, которая возвращает размер ее содержимого.
+     */
+    private final class CollectTask extends RecursiveTask<Long> {
+
+        /** Версия сериализации. */
+        private static final long serialVersionUID = 1L;
+
+        /** Директория. */
+        private final Path folder;
+
+        /** Параметры обхода. */
+        private final Walk walk;
+
+        private CollectTask(Path folder, Walk walk) {
+            this.folder = folder;
+            this.walk = walk;
+        }
+
+        @Override
+        protected Long compute() {
+            if (walk.token.isCancelled()) {
+                return 0L;
+            }
+
+            BasicFileAttributes attributes;
+            try {
+                attributes = readAttributes(folder, BasicFileAttributes.class, NOFOLLOW_LINKS);
+            } catch (IOException e) {
+                return 0L;
+            }
+            if (!attributes.isDirectory()) {
+                return 0L;
+            }
+
+            List<CollectTask> subTasks = new ArrayList<>();
+            long[] size = {0L};
+            TopEntries top = walk.current();
+            boolean cached = listingCache != null && listingCache.find(folder.toString(),
+                    attributes.lastModifiedTime().to(NANOSECONDS),
+                    ALL_FILES.matcher(),
+                    fileInfo -> {
+                        offerFile(top, folder.resolve(fileInfo.getName()), fileInfo.getFileSize());
+                        size[0] += fileInfo.getFileSize();
+                        return true;
+                    },
+                    name -> subTasks.add(new CollectTask(folder.resolve(name), walk)));
+            if (!cached) {
+                size[0] = list(top, subTasks);
+            }
+
+            if (!walk.token.isCancelled()) {
+                for (CollectTask subTask : invokeAll(subTasks)) {
+                    size[0] += subTask.join();
+                }
+            }
+            if (!folder.equals(walk.root)) {
+                top.offerDirectory(folder, size[0]);
+            }
+
+            return size[0];
+        }
+
+        /**
+         * Чтение директории с диска и учет ее файлов.
+         *
+         * @param top      самые большие объекты текущего потока
+         * @param subTasks задачи поддиректорий
+         * @return размер файлов директории
+         */
+        private long list(TopEntries top, List<CollectTask> subTasks) {
+            long size = 0L;
+            try (DirectoryStream<Path> stream = newDirectoryStream(folder)) {
+                for (Path path : stream) {
+                    if (walk.token.isCancelled()) {
+                        break;
+                    }
+
+                    BasicFileAttributes attributes;
+                    try {
+                        attributes = readAttributes(path, BasicFileAttributes.class, NOFOLLOW_LINKS);
+                    } catch (IOException e) {
+                        continue;
+                    }
+                    if (attributes.isDirectory()) {
+                        subTasks.add(new CollectTask(path, walk));
+                    } else {
+                        offerFile(top, path, attributes.size());
+                        size += attributes.size();
+                    }
+                }
+            } catch (IOException | DirectoryIteratorException e) {
+                // директория удалена во время обхода или нет доступа
+            }
+
+            return size;
+        }
+
+        private void offerFile(TopEntries top, Path path, long size) {
+            walk.progress.add(size);
+            if (top.acceptsFile(size)) {
+                top.offerFile(path, size, null);
+            }
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package ru.develonica.thread;
+
+import ru.develonica.model.CancellationToken;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryIteratorException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.LongConsumer;
+
+import static java.nio.file.Files.getFileAttributeView;
+import static java.nio.file.Files.newDirectoryStream;
+import static java.nio.file.Files.readAttributes;
+import static java.nio.file.LinkOption.NOFOLLOW_LINKS;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Копирование файлов и директорий. Содержимое файла передается
+ * через <code>FileChannel.transferTo</code>, поэтому на Linux данные
+ * копируются ядром (<code>copy_file_range</code>/<code>sendfile</code>)
+ * без буфера в куче. Файл передается частями заданного размера, чтобы
+ * между частями учитывать ход копирования и проверять отмену.
+ * Каждая поддиректория и каждый большой файл копируются отдельной
+ * задачей в пуле <code>ForkJoinPool</code> с ограниченным количеством
+ * потоков. Файл сначала записывается во временный файл рядом с целевым
+ * и затем атомарно переименовывается, поэтому под целевым именем никогда
+ * не виден недописанный файл. Символические ссылки копируются как ссылки.
+ */
+public class TreeCopier {
+
+    /** Префикс временных файлов, которые еще копируются. */
+    private static final String PART_PREFIX = ".part-";
+
+    /** Пул потоков копирования. */
+    private final ForkJoinPool pool;
+
+    /** Максимальный размер одной передачи, и размер, начиная с которого файл копируется отдельной задачей. */
+    private final long chunkBytes;
+
+    public TreeCopier(int parallelism, long chunkBytes) {
+        this.pool = new ForkJoinPool(parallelism);
+        this.chunkBytes = chunkBytes;
+    }
+
+    /**
+     * Копирование файла или директории со всем содержимым. Целевой
+     * объект не должен существовать. Вызывающий поток ждет копирования
+     * и периодически передает количество байт, скопированных с прошлой
+     * передачи. Прерывание вызывающего потока отменяет копирование,
+     * уже скопированные объекты при этом не удаляются.
+     *
+     * @param source   копируемый объект
+     * @param target   путь копии
+     * @param progress ход копирования
+     * @param copied   получатель скопированных байт
+     * @return <code>true</code> если копирование не было отменено
+     */
+    public boolean copy(Path source, Path target, Progress progress, LongConsumer copied) {
+        CancellationToken token = new CancellationToken();
+
+        return TreeTasks.await(pool.submit(new CopyTask(source, target, progress, token)), token, progress, copied);
+    }
+
+    /**
+     * Задача копирования одного объекта. Директория копируется
+     * рекурсивно, маленькие файлы в ней копируются этой же задачей.
+     */
+    private final class CopyTask extends RecursiveAction {
+
+        /** Версия сериализации. */
+        private static final long serialVersionUID = 1L;
+
+        /** Копируемый объект. */
+        private final Path source;
+
+        /** Путь копии. */
+        private final Path target;
+
+        /** Ход копирования. */
+        private final Progress progress;
+
+        /** Признак отмены копирования. */
+        private final CancellationToken token;
+
+        private CopyTask(Path source, Path target, Progress progress, CancellationToken token) {
+            this.source = source;
+            this.target = target;
+            this.progress = progress;
+            this.token = token;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                BasicFileAttributes attributes = readAttributes(source, BasicFileAttributes.class, NOFOLLOW_LINKS);
+                if (attributes.isDirectory()) {
+                    copyDirectory();
+                } else {
+                    copyEntry(source, target, attributes);
+                }
+            } catch (IOException e) {
+                progress.fail();
+            }
+        }
+
+        /**
+         * Копирование директории. Поддиректории и большие файлы
+         * передаются отдельным задачам.
+         *
+         * @throws IOException если не удалось создать директорию
+         */
+        private void copyDirectory() throws IOException {
+            Files.createDirectory(target);
+            progress.add(0L);
+
+            List<CopyTask> subTasks = new ArrayList<>();
+            try (DirectoryStream<Path> stream = newDirectoryStream(source)) {
+                for (Path path : stream) {
+                    if (token.isCancelled()) {
+                        break;
+                    }
+
+                    Path copy = target.resolve(path.getFileName().toString());
+                    try {
+                        BasicFileAttributes attributes = readAttributes(path, BasicFileAttributes.class, NOFOLLOW_LINKS);
+                        if (attributes.isDirectory() || attributes.size() >= chunkBytes) {
+                            CopyTask subTask = new CopyTask(path, copy, progress, token);
+                            subTask.fork();
+                            subTasks.add(subTask);
+                        } else {
+                            copyEntry(path, copy, attributes);
+                        }
+                    } catch (IOException e) {
+                        progress.fail();
+                    }
+                }
+            } catch (IOException | DirectoryIteratorException e) {
+                progress.fail();
+            }
+
+            // задачи, созданные последними, скорее всего еще не забраны другими потоками
+            for (int i = subTasks.size() - 1; i >= 0; i--) {
+                subTasks.get(i).join();
+            }
+
+            // права устанавливаются в конце, т.к. в директорию без права записи нельзя копировать
+            copyPermissions(source, target);
+        }
+
+        /**
+         * Копирование объекта, который не является директорией.
+         *
+         * @param from       копируемый объект
+         * @param to         путь копии
+         * @param attributes аттрибуты копируемого объекта
+         * @throws IOException если объект не удалось скопировать
+         */
+        private void copyEntry(Path from, Path to, BasicFileAttributes attributes) throws IOException {
+            if (attributes.isSymbolicLink()) {
+                Files.copy(from, to, NOFOLLOW_LINKS);
+                progress.add(0L);
+            } else if (attributes.isRegularFile()) {
+                copyFile(from, to);
+            } else {
+                // устройства, каналы и сокеты не копируются
+                progress.fail();
+            }
+        }
+
+        /**
+         * Копирование файла во временный файл частями и атомарное
+         * переименование временного файла в целевой.
+         *
+         * @param from копируемый файл
+         * @param to   путь копии
+         * @throws IOException если файл не удалось скопировать
+         */
+        private void copyFile(Path from, Path to) throws IOException {
+            Path part = to.resolveSibling(PART_PREFIX + to.getFileName());
+            try {
+                try (FileChannel in = FileChannel.open(from, READ);
+                     FileChannel out = FileChannel.open(part, CREATE_NEW, WRITE)) {
+
+                    long size = in.size();
+                    long position = 0L;
+                    while (position < size) {
+                        if (token.isCancelled()) {
+                            Files.deleteIfExists(part);
+                            return;
+                        }
+
+                        long count = in.transferTo(position, Math.min(chunkBytes, size - position), out);
+                        if (count <= 0) {
+                            // файл уменьшился во время копирования
+                            break;
+                        }
+                        position += count;
+                        progress.addBytes(count);
+                    }
+                }
+
+                copyPermissions(from, part);
+                Files.move(part, to, ATOMIC_MOVE);
+                progress.add(0L);
+            } catch (IOException e) {
+                Files.deleteIfExists(part);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Копирование прав доступа, если файловая система их поддерживает.
+     *
+     * @param from копируемый объект
+     * @param to   копия
+     * @throws IOException если права не удалось прочитать или установить
+     */
+    private static void copyPermissions(Path from, Path to) throws IOException {
+        PosixFileAttributeView view = getFileAttributeView(from, PosixFileAttributeView.class);
+        if (view == null) {
+            return;
+        }
+
+        Set<PosixFilePermission> permissions = view.readAttributes().permissions();
+        Files.setPosixFilePermissions(to, permissions);
+    }
+}
@@ -0,0 +1,66 @@
+package ru.develonica.thread;
+
+import ru.develonica.model.CancellationToken;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.TimeoutException;
+import java.util.function.LongConsumer;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Ожидание операций над поддеревом, которые выполняются в пуле
+ * <code>ForkJoinPool</code>, из потока фоновой задачи пользователя.
+ */
+final class TreeTasks {
+
+    /** Интервал передачи обработанных байт в миллисекундах. */
+    private static final long REPORT_INTERVAL_MILLIS = 200L;
+
+    private TreeTasks() {
+    }
+
+    /**
+     * Ожидание операции с периодической передачей количества байт,
+     * обработанных с прошлой передачи, чтобы размеры в файловом дереве
+     * изменялись по ходу операции. Прерывание вызывающего потока отменяет
+     * операцию; ожидание продолжается, пока потоки пула не остановятся,
+     * а признак прерывания затем восстанавливается.
+     *
+     * @param task     операция в пуле
+     * @param token    признак отмены, который проверяют задачи операции
+     * @param progress ход операции
+     * @param reported получатель обработанных байт
+     * @return <code>true</code> если операция не была отменена
+     */
+    static boolean await(ForkJoinTask<?> task, CancellationToken token,
+                         Progress progress, LongConsumer reported) {
+
+        long bytes = 0L;
+        boolean interrupted = false;
+        while (!task.isDone()) {
+            try {
+                task.get(REPORT_INTERVAL_MILLIS, MILLISECONDS);
+            } catch (TimeoutException | ExecutionException e) {
+                // следующая передача или завершение
+            } catch (InterruptedException e) {
+                // потоки пула остановятся после текущего объекта
+                token.cancel();
+                interrupted = true;
+                task.quietlyJoin();
+            }
+
+            long processed = progress.getBytes();
+            reported.accept(processed - bytes);
+            bytes = processed;
+        }
+        reported.accept(progress.getBytes() - bytes);
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        return !interrupted;
+    }
+}
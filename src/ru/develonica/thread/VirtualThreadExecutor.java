@@ -0,0 +1,70 @@
+package ru.develonica.thread;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Исполнитель, который запускает каждую задачу в отдельном виртуальном
+ * потоке. Обход директорий в основном ждет системных вызовов, поэтому
+ * виртуальные потоки позволяют держать в работе гораздо больше запросов,
+ * чем есть ядер. Количество одновременно выполняемых задач ограничено
+ * разрешениями, общими с подсчетом размеров, чтобы не перегружать
+ * файловую систему.
+ */
+public class VirtualThreadExecutor implements ScanExecutor {
+
+    /** Исполнитель с виртуальным потоком на задачу. */
+    private final ExecutorService executor;
+
+    /** Ограничение одновременных обращений к файловой системе. */
+    private final IoPermits permits;
+
+    public VirtualThreadExecutor(ExecutorService executor, IoPermits permits) {
+        this.executor = executor;
+        this.permits = permits;
+    }
+
+    @Override
+    public void submit(Runnable task) {
+        executor.execute(() -> {
+            // принятая задача выполняется всегда, даже если поток прерван
+            boolean acquired = permits.acquireUninterruptibly();
+            try {
+                task.run();
+            } finally {
+                if (acquired) {
+                    permits.release();
+                }
+            }
+        });
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * Создание исполнителя с виртуальным потоком на каждую задачу.
+     * Обычные потоки вместо виртуальных не создаются: на каждую
+     * поддиректорию появлялся бы поток операционной системы.
+     *
+     * @return исполнитель или <code>null</code>, если JVM
+     * не поддерживает виртуальные потоки
+     */
+    public static ExecutorService newVirtualExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor")
+                    .invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package ru.develonica.thread;
+
+import ru.develonica.model.Node;
+
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+
+/**
+ * Обработка изменений в отслеживаемых директориях.
+ */
+public interface WatchListener {
+
+    /**
+     * Обработка изменения объекта директории.
+     *
+     * @param node  директория файлового дерева
+     * @param kind  вид изменения: создание, удаление, изменение
+     *              или <code>OVERFLOW</code>, если часть изменений потеряна
+     * @param entry путь измененного объекта или <code>null</code> для <code>OVERFLOW</code>
+     */
+    void onEvent(Node node, WatchEvent.Kind<?> kind, Path entry);
+}
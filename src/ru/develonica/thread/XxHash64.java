@@ -0,0 +1,123 @@
+package ru.develonica.thread;
+
+import java.nio.ByteBuffer;
+
+import static java.nio.ByteOrder.LITTLE_ENDIAN;
+
+/**
+ * Потоковый подсчет некриптографического хэша XXH64. Данные передаются
+ * частями через <code>ByteBuffer</code>, в том числе отображенными
+ * в память, и читаются по 8 байт без копирования.
+ */
+final class XxHash64 {
+
+    // простые числа алгоритма
+    private static final long PRIME_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME_3 = 0x165667B19E3779F9L;
+    private static final long PRIME_4 = 0x85EBCA77C2B2AE63L;
+    private static final long PRIME_5 = 0x27D4EB2F165667C5L;
+
+    /** Размер блока, который обрабатывается за один шаг. */
+    private static final int STRIPE = 32;
+
+    // состояние четырех независимых линий
+    private long v1 = PRIME_1 + PRIME_2;
+    private long v2 = PRIME_2;
+    private long v3 = 0L;
+    private long v4 = -PRIME_1;
+
+    /** Количество переданных байт. */
+    private long total;
+
+    /** Байты неполного блока. */
+    private final ByteBuffer pending = ByteBuffer.allocate(STRIPE).order(LITTLE_ENDIAN);
+
+    /**
+     * Передача очередной части данных. Позиция буфера сдвигается в конец.
+     *
+     * @param buffer данные от позиции до предела
+     */
+    void update(ByteBuffer buffer) {
+        buffer.order(LITTLE_ENDIAN);
+        int position = buffer.position();
+        int limit = buffer.limit();
+        total += limit - position;
+
+        if (pending.position() > 0) {
+            while (pending.hasRemaining() && position < limit) {
+                pending.put(buffer.get(position++));
+            }
+            if (pending.hasRemaining()) {
+                buffer.position(limit);
+                return;
+            }
+            stripe(pending, 0);
+            pending.clear();
+        }
+
+        for (; limit - position >= STRIPE; position += STRIPE) {
+            stripe(buffer, position);
+        }
+        while (position < limit) {
+            pending.put(buffer.get(position++));
+        }
+        buffer.position(limit);
+    }
+
+    /**
+     * Получение хэша переданных данных.
+     *
+     * @return хэш
+     */
+    long digest() {
+        long hash = total >= STRIPE
+                ? merge(merge(merge(merge(
+                        Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7)
+                                + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18),
+                        v1), v2), v3), v4)
+                : PRIME_5;
+        hash += total;
+
+        int length = pending.position();
+        int i = 0;
+        for (; i + 8 <= length; i += 8) {
+            hash ^= round(0L, pending.getLong(i));
+            hash = Long.rotateLeft(hash, 27) * PRIME_1 + PRIME_4;
+        }
+        if (i + 4 <= length) {
+            hash ^= (pending.getInt(i) & 0xFFFFFFFFL) * PRIME_1;
+            hash = Long.rotateLeft(hash, 23) * PRIME_2 + PRIME_3;
+            i += 4;
+        }
+        for (; i < length; i++) {
+            hash ^= (pending.get(i) & 0xFFL) * PRIME_5;
+            hash = Long.rotateLeft(hash, 11) * PRIME_1;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= PRIME_2;
+        hash ^= hash >>> 29;
+        hash *= PRIME_3;
+        hash ^= hash >>> 32;
+        return hash;
+    }
+
+    private void stripe(ByteBuffer buffer, int position) {
+        v1 = round(v1, buffer.getLong(position));
+        v2 = round(v2, buffer.getLong(position + 8));
+        v3 = round(v3, buffer.getLong(position + 16));
+        v4 = round(v4, buffer.getLong(position + 24));
+    }
+
+    private static long round(long accumulator, long input) {
+        accumulator += input * PRIME_2;
+        accumulator = Long.rotateLeft(accumulator, 31);
+        return accumulator * PRIME_1;
+    }
+
+    private static long merge(long hash, long value) {
+        hash ^= round(0L, value);
+        return hash * PRIME_1 + PRIME_4;
+    }
+}
@@ -0,0 +1,57 @@
+package ru.develonica.view;
+
+import ru.develonica.model.DuplicateGroup;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static java.lang.System.out;
+
+/**
+ * Отображение групп файлов с одинаковым содержимым.
+ */
+public class DupesView {
+
+    // отображение групп
+    private static final String GROUP = "%s x %d, лишние %s%n";
+    private static final String PATH = "    %s%n";
+    private static final String TOTAL = "Групп: %d, лишние копии занимают %s%n";
+    private static final String NOT_FOUND = "Одинаковых файлов не найдено";
+    private static final String INCOMPLETE = "Обход прерван, группы неполные";
+
+    /**
+     * Отображение групп с путями относительно директории поиска.
+     *
+     * @param root      директория поиска
+     * @param groups    группы от большего лишнего места к меньшему
+     * @param completed обход не был прерван
+     */
+    public void showGroups(Path root, List<DuplicateGroup> groups, boolean completed) {
+        if (groups.isEmpty()) {
+            out.println(NOT_FOUND);
+            if (!completed) {
+                out.println(INCOMPLETE);
+            }
+            out.println();
+            return;
+        }
+
+        long wasted = 0L;
+        for (DuplicateGroup group : groups) {
+            out.printf(GROUP,
+                    ProgressFormat.formatSize(group.getSize()),
+                    group.getPaths().size(),
+                    ProgressFormat.formatSize(group.getWasted()));
+            group.getPaths().stream()
+                    .map(root::relativize)
+                    .sorted()
+                    .forEach(path -> out.printf(PATH, path));
+            wasted += group.getWasted();
+        }
+        out.printf(TOTAL, groups.size(), ProgressFormat.formatSize(wasted));
+        if (!completed) {
+            out.println(INCOMPLETE);
+        }
+        out.println();
+    }
+}
@@ -1,5 +1,10 @@
 package ru.develonica.view;
 
+import ru.develonica.model.ChangeReport;
+import ru.develonica.thread.Progress;
+
+import java.util.List;
+
 import static java.lang.System.out;
 
 /**
@@ -17,6 +22,21 @@ public class FileChangeView {
     private static final String FILE_NOT_DELETED = "Такого файла не существует\n";
     private static final String DIRECTORY_DELETED = "Папка удалена\n";
     private static final String DIRECTORY_NOT_DELETED = "Такой папки не существует\n";
+    private static final String DIRECTORY_DELETED_PARTLY = "Папка удалена не полностью";
+
+    // отображение результата копирования/перемещения файлов и директорий
+    private static final String COPIED = "Объект скопирован";
+    private static final String COPIED_PARTLY = "Объект скопирован не полностью";
+    private static final String MOVED = "Объект перемещен\n";
+    private static final String MOVED_PARTLY = "Объект скопирован не полностью, исходный объект не удален";
+    private static final String WITH_PROGRESS = "%s: %s%n%n";
+
+    // отображение результата обновления директории
+    private static final String NOT_CHANGED = "Изменений нет\n";
+    private static final String CHANGES = "Добавлено: %d, удалено: %d, изменено: %d%n";
+    private static final String ADDED = "+ ";
+    private static final String REMOVED = "- ";
+    private static final String CHANGED = "* ";
 
     /**
      * Отображение информации о попытке создания нового файла.
@@ -51,6 +71,36 @@ public class FileChangeView {
                 : FILE_NOT_DELETED);
     }
 
+    /**
+     * Отображение объектов, которые изменились с прошлого заполнения директории.
+     *
+     * @param report результат обновления директории
+     */
+    public void showRefresh(ChangeReport report) {
+        if (report.getAdded().isEmpty()
+                && report.getRemoved().isEmpty()
+                && report.getChanged().isEmpty()) {
+
+            out.println(NOT_CHANGED);
+            return;
+        }
+
+        showChanges(ADDED, report.getAdded());
+        showChanges(REMOVED, report.getRemoved());
+        showChanges(CHANGED, report.getChanged());
+        out.printf(CHANGES,
+                report.getAdded().size(),
+                report.getRemoved().size(),
+                report.getChanged().size());
+        out.println();
+    }
+
+    private void showChanges(String mark, List<String> names) {
+        StringBuilder lines = new StringBuilder();
+        names.forEach(name -> lines.append(mark).append(name).append(System.lineSeparator()));
+        out.print(lines);
+    }
+
     /**
      * Отображение информации о попытке удаления директории.
      *
@@ -61,4 +111,51 @@ public class FileChangeView {
                 ? DIRECTORY_DELETED
                 : DIRECTORY_NOT_DELETED);
     }
+
+    /**
+     * Отображение результата рекурсивного удаления директории.
+     *
+     * @param directory булево выражение удаления директории
+     * @param progress  ход удаления
+     */
+    public void showDeletingDirectory(boolean directory, Progress progress) {
+        out.printf(WITH_PROGRESS,
+                (directory ? DIRECTORY_DELETED : DIRECTORY_DELETED_PARTLY).strip(),
+                ProgressFormat.format(progress));
+    }
+
+    /**
+     * Отображение результата копирования файла или директории.
+     *
+     * @param copied   булево выражение полного копирования
+     * @param progress ход копирования
+     */
+    public void showCopying(boolean copied, Progress progress) {
+        out.printf(WITH_PROGRESS,
+                copied ? COPIED : COPIED_PARTLY,
+                ProgressFormat.format(progress));
+    }
+
+    /**
+     * Отображение результата перемещения переименованием.
+     *
+     * @param moved булево выражение перемещения
+     */
+    public void showMoving(boolean moved) {
+        out.println(moved
+                ? MOVED
+                : MOVED_PARTLY);
+    }
+
+    /**
+     * Отображение результата перемещения копированием на другую файловую систему.
+     *
+     * @param moved    булево выражение перемещения
+     * @param progress ход копирования
+     */
+    public void showMoving(boolean moved, Progress progress) {
+        out.printf(WITH_PROGRESS,
+                moved ? MOVED.strip() : MOVED_PARTLY,
+                ProgressFormat.format(progress));
+    }
 }
@@ -1,24 +1,19 @@
 package ru.develonica.view;
 
+import ru.develonica.model.EntryStore;
 import ru.develonica.model.FileInfo;
 import ru.develonica.model.FileType;
+import ru.develonica.model.ScanChannel;
 
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
 
 import static java.lang.String.format;
 import static java.lang.System.out;
-import static java.util.Set.of;
-import static ru.develonica.model.FileType.ARCHIVE;
-import static ru.develonica.model.FileType.DIR;
-import static ru.develonica.model.FileType.DOCUMENT;
-import static ru.develonica.model.FileType.JAVA_FILE;
-import static ru.develonica.model.FileType.MUSIC;
-import static ru.develonica.model.FileType.PICTURE;
-import static ru.develonica.model.FileType.TEXT;
-import static ru.develonica.model.FileType.VIDEO;
+import static ru.develonica.model.EntryStore.attributeBits;
+import static ru.develonica.model.FileInfo.UNKNOWN_SIZE;
 
 /**
  * Отображение пользователю таблицы со списком
@@ -30,34 +25,19 @@ public class FileInfoView {
     public static final int DIVIDER = 1024;
 
     /** Список измерений размеров. */
-    private static final String[] UNIT = {"bytes", "Kb", "Mb", "Gb", "Tb"};
+    static final String[] UNIT = {"bytes", "Kb", "Mb", "Gb", "Tb"};
 
-    /** Список аттрибутов. */
-    private static final String[] ATTRIBUTES = {"r", "w", "x"};
+    /** Размер директории, который еще считается. */
+    private static final String COMPUTING = "computing";
 
-    /** Словарь типов объектов. */
-    private static final Map<String, FileType> FILE_TYPES;
+    /** Размер, который не удалось узнать из-за отмены или недоступного объекта. */
+    private static final String UNKNOWN = "unknown";
 
-    /** Типы изображений. */
-    private static final Set<String> PICTURE_EXTENSIONS = of("bmp,png,jpeg");
+    /** Строка под таблицей с системными вызовами, сэкономленными при чтении атрибутов. */
+    private static final String SYSCALLS_SAVED = "Сэкономлено системных вызовов: %d%n";
 
-    /** Типы текстовых файлов. */
-    private static final Set<String> TEXT_EXTENSIONS = of("txt,text,log");
-
-    /** Типы документов. */
-    private static final Set<String> DOCUMENT_EXTENSIONS = of("doc,docs,xls,pdf");
-
-    /** Типы архивированных файлов. */
-    private static final Set<String> ARCHIVE_EXTENSIONS = of("zip,rar,7z");
-
-    /** Тип музыки. */
-    private static final Set<String> MUSIC_EXTENSIONS = of("mp3");
-
-    /** Типы файлов видео. */
-    private static final Set<String> VIDEO_EXTENSIONS = of("avi,mov,mp4,mpg");
-
-    /** Типы java файлов. */
-    private static final Set<String> JAVA_EXTENSIONS = of("mpg,java,jar");
+    /** Строки аттрибутов для всех сочетаний битов прав. */
+    private static final String[] ATTRIBUTE_LINES = {"", "x", "w", "wx", "r", "rx", "rw", "rwx"};
 
     // Имена заголовков таблицы
     private static final String NAME = "Name";
@@ -92,23 +72,22 @@ public class FileInfoView {
     private static final String TABLE_TITLE_TOP_LINE;
     private static final String TABLE_TITLE;
     private static final String TABLE_TITLE_BOTTOM_LINE;
-    private static final String COLUMN;
     private static final String LINE_AFTER_COLUMN;
     private static final String LAST_LINE_AFTER_COLUMN;
-    private static final String TOTAL_COLUMN;
     private static final String LINE_AFTER_TOTAL_COLUMN;
 
-    static {
-        // инициализация типов объектов
-        FILE_TYPES = new HashMap<>();
-        PICTURE_EXTENSIONS.forEach(extension -> FILE_TYPES.put(extension, PICTURE));
-        TEXT_EXTENSIONS.forEach(extension -> FILE_TYPES.put(extension, TEXT));
-        DOCUMENT_EXTENSIONS.forEach(extension -> FILE_TYPES.put(extension, DOCUMENT));
-        ARCHIVE_EXTENSIONS.forEach(extension -> FILE_TYPES.put(extension, ARCHIVE));
-        MUSIC_EXTENSIONS.forEach(extension -> FILE_TYPES.put(extension, MUSIC));
-        VIDEO_EXTENSIONS.forEach(extension -> FILE_TYPES.put(extension, VIDEO));
-        JAVA_EXTENSIONS.forEach(extension -> FILE_TYPES.put(extension, JAVA_FILE));
+    // Готовые неизменные части таблицы, вычисляются один раз
+    private static final String TOP_LINE;
+    private static final String TITLE_LINE;
+    private static final String TITLE_BOTTOM_LINE;
+    private static final String ROW_SEPARATOR_LINE;
+    private static final String LAST_ROW_LINE;
+    private static final String ROW_TAIL;
+    private static final String TOTAL_PREFIX;
+    private static final String TOTAL_SUFFIX;
+    private static final String TOTAL_BOTTOM_LINE;
 
+    static {
         // formatters для отображения таблицы и его данных
         TABLE_TITLE_TOP_LINE = format("%s%%1$.%ds%9$s%%1$.%ds%9$s%%1$.%ds%9$s%%1$.%ds%9$s%%1$.%ds%9$s%%1$.%ds%s%n",
                 TOP_LEFT_EDGE_TABLE,
@@ -139,16 +118,6 @@ public class FileInfoView {
                 TOTAL_OBJECTS_COLUMN_LENGTH,
                 TOTAL_SIZE_COLUMN_LENGTH);
 
-        COLUMN = format("%s%%-%d.%ds%1$s%%-%ds%1$s%%-%ds%1$s%%-%ds%1$s%%5$%ds%1$s%%5$%ds%1$s%n",
-                COLUMN_SEPARATOR,
-                NAME_COLUMN_LENGTH,
-                MAX_SIZE_COLUMN,
-                TYPE_COLUMN_LENGTH,
-                SIZE_COLUMN_LENGTH,
-                ATTRIBUTE_COLUMN_LENGTH,
-                TOTAL_OBJECTS_COLUMN_LENGTH,
-                TOTAL_SIZE_COLUMN_LENGTH);
-
         LINE_AFTER_COLUMN = format("%s%%1$.%ds%1$s%%1$.%ds%1$s%%1$.%ds%1$s%%1$.%ds%1$s%%2$%ds%1$s%%2$%ds%1$s%n",
                 COLUMN_SEPARATOR,
                 NAME_COLUMN_LENGTH,
@@ -168,12 +137,6 @@ public class FileInfoView {
                 TOTAL_SIZE_COLUMN_LENGTH,
                 BOTTOM_COLUMNS_SEPARATOR);
 
-        TOTAL_COLUMN = format("%s%%%ds%1$s%%-%d.%3$ds%1$s%%-%d.%4$ds%1$s%n",
-                COLUMN_SEPARATOR,
-                MAX_SIZE_TOTAL_COLUM,
-                TOTAL_OBJECTS_COLUMN_LENGTH,
-                TOTAL_SIZE_COLUMN_LENGTH);
-
         LINE_AFTER_TOTAL_COLUMN = format("%s%%1$.%ds%s%%1$.%ds%3$s%%1$.%ds%s%n",
                 BOTTOM_LEFT_EDGE_TABLE,
                 MAX_SIZE_TOTAL_COLUM,
@@ -181,115 +144,167 @@ public class FileInfoView {
                 TOTAL_OBJECTS_COLUMN_LENGTH,
                 TOTAL_SIZE_COLUMN_LENGTH,
                 BOTTOM_RIGHT_EDGE_TABLE);
+
+        TOP_LINE = format(TABLE_TITLE_TOP_LINE, LINE_SEPARATOR.repeat(MAX_SIZE_COLUMN));
+        TITLE_LINE = format(TABLE_TITLE, NAME, FILE_TYPE, FILE_SIZE, ATTRIBUTE, TOTAL_OBJECTS, TOTAL_SIZE);
+        TITLE_BOTTOM_LINE = format(TABLE_TITLE_BOTTOM_LINE, LINE_SEPARATOR.repeat(MAX_SIZE_COLUMN));
+        ROW_SEPARATOR_LINE = format(LINE_AFTER_COLUMN, LINE_SEPARATOR.repeat(MAX_SIZE_COLUMN), SPACE);
+        LAST_ROW_LINE = format(LAST_LINE_AFTER_COLUMN, LINE_SEPARATOR.repeat(MAX_SIZE_COLUMN));
+        ROW_TAIL = format("%s%s%s%2$s%n",
+                SPACE.repeat(TOTAL_OBJECTS_COLUMN_LENGTH),
+                COLUMN_SEPARATOR,
+                SPACE.repeat(TOTAL_SIZE_COLUMN_LENGTH));
+        TOTAL_PREFIX = format("%s%s%1$s", COLUMN_SEPARATOR, SPACE.repeat(MAX_SIZE_TOTAL_COLUM));
+        TOTAL_SUFFIX = format("%s%n", COLUMN_SEPARATOR);
+        TOTAL_BOTTOM_LINE = format(LINE_AFTER_TOTAL_COLUMN, LINE_SEPARATOR.repeat(MAX_SIZE_TOTAL_COLUM));
     }
 
+    /** Буферизованный вывод таблицы. */
+    private final TableRenderer renderer = new TableRenderer(out, DIVIDER, UNIT);
+
     /**
      * Отображение пользователю таблицы со списком
      * файлов и директорий в текущей позиции.
      *
-     * @param child  список объектов
-     * @param length длина всего списка объектов
+     * @param entries хранилище объектов директории
      */
-    public void displayAllDocuments(List<FileInfo> child, int length) {
-        out.printf(TABLE_TITLE_TOP_LINE, LINE_SEPARATOR.repeat(MAX_SIZE_COLUMN));
-        out.printf(TABLE_TITLE, NAME, FILE_TYPE, FILE_SIZE, ATTRIBUTE, TOTAL_OBJECTS, TOTAL_SIZE);
-        out.printf(TABLE_TITLE_BOTTOM_LINE, LINE_SEPARATOR.repeat(MAX_SIZE_COLUMN));
+    public void displayAllDocuments(EntryStore entries) {
+        renderer.append(TOP_LINE).append(TITLE_LINE).append(TITLE_BOTTOM_LINE);
 
         // выводить список объектов построчно
-        for (int i = 0; i < length; i++) {
-            FileInfo info;
-            try {
-                info = child.get(i);
-
-                out.printf(COLUMN,
-                        info.getName(),
-                        convertType(info.getType(), info.getName()),
-                        convertSize(info.getFileSize()),
-                        convertAttribute(info.getAttribute()),
-                        SPACE);
-                if (i != length - 1) {
-                    out.printf(LINE_AFTER_COLUMN, LINE_SEPARATOR.repeat(MAX_SIZE_COLUMN), SPACE);
-                } else {
-                    out.printf(LAST_LINE_AFTER_COLUMN, LINE_SEPARATOR.repeat(MAX_SIZE_COLUMN));
-                }
-            } catch (IndexOutOfBoundsException e) {
-                // если пул потоков еще не заполнил файловое дерево всеми объектами в текущей директории
-                i--;
+        EntryStore.Cursor cursor = entries.cursor();
+        while (cursor.next()) {
+            appendRow(cursor.getName(),
+                    cursor.getType(),
+                    cursor.getFileSize(),
+                    cursor.getAttribute(),
+                    UNKNOWN);
+            renderer.append(cursor.isLast()
+                    ? LAST_ROW_LINE
+                    : ROW_SEPARATOR_LINE);
+        }
+
+        renderer.flush();
+    }
+
+    /**
+     * Отображение пользователю таблицы по мере заполнения директории.
+     * Каждый объект выводится, как только о нем что-то известно.
+     * Директории, размер которых еще считается, выводятся с отметкой
+     * <code>computing</code> и выводятся повторно, когда размер посчитан.
+     *
+     * @param channel канал объектов директории
+     */
+    public void displayStreaming(ScanChannel channel) {
+        renderer.append(TOP_LINE).append(TITLE_LINE).append(TITLE_BOTTOM_LINE);
+
+        // объекты, выведенные без размера
+        Set<FileInfo> computing = Collections.newSetFromMap(new IdentityHashMap<>());
+        boolean first = true;
+
+        for (ScanChannel.Event event = next(channel); !event.isEnd(); event = next(channel)) {
+            FileInfo info = event.getFileInfo();
+            long size = info.getFileSize();
+
+            if (event.isUpdate() && !computing.remove(info)) {
+                // размер уже был выведен вместе с объектом
+                continue;
+            }
+            if (size == UNKNOWN_SIZE) {
+                computing.add(info);
+            }
+
+            // разделитель перед строкой, т.к. последняя строка заранее неизвестна
+            if (!first) {
+                renderer.append(ROW_SEPARATOR_LINE);
             }
+            first = false;
+
+            appendRow(info.getName(),
+                    info.getType(),
+                    size,
+                    attributeBits(info.getAttribute()),
+                    COMPUTING);
         }
+
+        if (!first) {
+            renderer.append(LAST_ROW_LINE);
+        }
+        renderer.flush();
     }
 
     /**
      * Отображение пользователю конечного результата
      * с общими данными текущей директории.
      *
-     * @param totalInfo список всех объектов и общего размера
-     *                  текущей директории файлового дерева.
+     * @param totalInfo список всех объектов, общего размера и сэкономленных
+     *                  системных вызовов текущей директории файлового дерева.
      */
     public void displayTotalSizeAndObjects(List<Long> totalInfo) {
-        out.printf(TOTAL_COLUMN, SPACE, totalInfo.get(0), convertSize(totalInfo.get(1)));
-        out.printf(LINE_AFTER_TOTAL_COLUMN, LINE_SEPARATOR.repeat(MAX_SIZE_TOTAL_COLUM));
+        renderer.append(TOTAL_PREFIX)
+                .appendLeft(totalInfo.get(0), TOTAL_OBJECTS_COLUMN_LENGTH, TOTAL_OBJECTS_COLUMN_LENGTH)
+                .append(COLUMN_SEPARATOR)
+                .appendSize(totalInfo.get(1), TOTAL_SIZE_COLUMN_LENGTH, TOTAL_SIZE_COLUMN_LENGTH)
+                .append(TOTAL_SUFFIX)
+                .append(TOTAL_BOTTOM_LINE);
+        // директория, заполненная из кэша или снимка, не читала атрибуты
+        if (totalInfo.get(2) > 0) {
+            renderer.append(format(SYSCALLS_SAVED, totalInfo.get(2)));
+        }
+        renderer.flush();
     }
 
     /**
-     * Конвертация размера объекта.
+     * Вывод одной строки таблицы без разделителя после нее.
      *
-     * @param convertSize размер объекта
-     * @return строку с подходящим размером и измерением.
+     * @param name          имя объекта
+     * @param fileType      тип объекта
+     * @param fileSize      размер объекта
+     * @param attributeBits биты прав, чтение в старшем бите
+     * @param unknownSize   отметка для размера, который неизвестен
      */
-    private String convertSize(long convertSize) {
-        int count = 0;
-        while (convertSize >= DIVIDER) {
-            convertSize /= DIVIDER;
-            count++;
+    private void appendRow(CharSequence name, FileType fileType, long fileSize, int attributeBits,
+                           String unknownSize) {
+        renderer.append(COLUMN_SEPARATOR)
+                .appendLeft(name, NAME_COLUMN_LENGTH, MAX_SIZE_COLUMN)
+                .append(COLUMN_SEPARATOR)
+                .appendLeft(fileType.name(), TYPE_COLUMN_LENGTH, -1)
+                .append(COLUMN_SEPARATOR);
+        if (fileSize == UNKNOWN_SIZE) {
+            renderer.appendLeft(unknownSize, SIZE_COLUMN_LENGTH, -1);
+        } else {
+            renderer.appendSize(fileSize, SIZE_COLUMN_LENGTH, -1);
         }
-        return convertSize + " " + UNIT[count];
+        renderer.append(COLUMN_SEPARATOR)
+                .appendLeft(convertAttribute(attributeBits), ATTRIBUTE_COLUMN_LENGTH, -1)
+                .append(COLUMN_SEPARATOR)
+                .append(ROW_TAIL);
     }
 
     /**
-     * Получение аттрибут объекта.
+     * Получение следующего события канала. Пока новых событий нет,
+     * уже подготовленные строки выводятся пользователю.
      *
-     * @param fileAttributes аттрибуты
-     * @return строку с действующими аттрибутами
+     * @param channel канал объектов директории
+     * @return событие
      */
-    private String convertAttribute(Boolean[] fileAttributes) {
-        StringBuilder attribute = new StringBuilder();
-
-        for (int i = 0; i < fileAttributes.length; i++) {
-            if (fileAttributes[i]) {
-                attribute.append(ATTRIBUTES[i]);
-            }
+    private ScanChannel.Event next(ScanChannel channel) {
+        ScanChannel.Event event = channel.poll();
+        if (event == null) {
+            renderer.flush();
+            event = channel.take();
         }
 
-        return attribute.toString();
+        return event;
     }
 
     /**
-     * Получение конкретного типа объекта
-     * из словаря типов <code>TYPE_TYPES</code>.
+     * Получение аттрибут объекта.
      *
-     * @param fileType тип файла
-     * @param file имя файла
-     * @return конкретный тип файла
+     * @param attributeBits биты прав, чтение в старшем бите
+     * @return строку с действующими аттрибутами
      */
-    private FileType convertType(FileType fileType, String file) {
-        if (!fileType.equals(DIR)) {
-            // получить расширение объекта
-            String extension = "";
-            if (file.lastIndexOf(".") != -1
-                    && file.lastIndexOf(".") != 0) {
-
-                extension = file.substring(file.lastIndexOf(".") + 1);
-            }
-            // определить конкретный его тих
-            for (Map.Entry<String, FileType> map : FILE_TYPES.entrySet()) {
-                if (extension.equals(map.getKey())) {
-                    fileType = map.getValue();
-                    return fileType;
-                }
-            }
-        }
-
-        return fileType;
+    private String convertAttribute(int attributeBits) {
+        return ATTRIBUTE_LINES[attributeBits];
     }
 }
@@ -0,0 +1,51 @@
+package ru.develonica.view;
+
+import ru.develonica.model.FileInfo;
+import ru.develonica.model.FindResults;
+
+import java.nio.file.Path;
+
+import static java.lang.System.out;
+import static ru.develonica.model.FileInfo.UNKNOWN_SIZE;
+
+/**
+ * Отображение результатов поиска по мере нахождения.
+ */
+public class FindView {
+
+    // отображение найденных объектов
+    private static final String FOUND = "%-10s %-10s %s%n";
+    private static final String NO_SIZE = "-";
+    private static final String TOTAL = "Найдено: %d%n";
+    private static final String LIMITED = "Найдено: %d, показаны первые результаты%n";
+    private static final String TIMED_OUT = "Найдено: %d, поиск прерван по сроку%n";
+
+    /**
+     * Отображение найденного объекта с путем относительно директории поиска.
+     *
+     * @param root  директория поиска
+     * @param found найденный объект
+     */
+    public void showFound(Path root, FindResults.Found found) {
+        FileInfo fileInfo = found.getFileInfo();
+        out.printf(FOUND,
+                fileInfo.getType(),
+                fileInfo.getFileSize() == UNKNOWN_SIZE
+                        ? NO_SIZE
+                        : ProgressFormat.formatSize(fileInfo.getFileSize()),
+                root.relativize(found.getPath()));
+    }
+
+    /**
+     * Отображение итога поиска.
+     *
+     * @param results результаты поиска
+     */
+    public void showTotal(FindResults results) {
+        String total = results.isLimitReached()
+                ? LIMITED
+                : results.getToken().isCancelled() ? TIMED_OUT : TOTAL;
+        out.printf(total, results.getCount());
+        out.println();
+    }
+}
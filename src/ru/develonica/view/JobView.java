@@ -0,0 +1,93 @@
+package ru.develonica.view;
+
+import ru.develonica.thread.Job;
+
+import java.util.List;
+
+import static java.lang.System.out;
+
+/**
+ * Отображение фоновых задач пользователя.
+ */
+public class JobView {
+
+    // отображение состояния задач
+    private static final String STARTED = "[%d] %s: выполняется в фоне%n";
+    private static final String FINISHED = "[%d] %s: завершено%n";
+    private static final String FAILED = "[%d] %s: %s%n";
+    private static final String CANCELLED = "[%d] %s: отменено%n";
+    private static final String NOT_FOUND = "Задача не найдена\n";
+    private static final String NO_JOBS = "Фоновых задач нет\n";
+    private static final String JOB = "[%d] %-16s %-10s %d мс  %s%s%n";
+    private static final String PROGRESS = "  ";
+    private static final String RUNNING = "работает";
+    private static final String CANCELLING = "отменяется";
+
+    /**
+     * Отображение запуска задачи.
+     *
+     * @param job задача
+     */
+    public void showStarted(Job job) {
+        out.printf(STARTED, job.getId(), job.getDescription());
+    }
+
+    /**
+     * Отображение завершения задачи.
+     *
+     * @param job задача
+     */
+    public void showFinished(Job job) {
+        out.printf(FINISHED, job.getId(), job.getDescription());
+    }
+
+    /**
+     * Отображение ошибки задачи.
+     *
+     * @param job     задача
+     * @param message текст ошибки
+     */
+    public void showFailed(Job job, String message) {
+        out.printf(FAILED, job.getId(), job.getDescription(), message.strip());
+    }
+
+    /**
+     * Отображение результата отмены задачи.
+     *
+     * @param job отмененная задача или <code>null</code>, если задачи нет
+     */
+    public void showCancelled(Job job) {
+        if (job == null) {
+            out.println(NOT_FOUND);
+            return;
+        }
+
+        out.printf(CANCELLED, job.getId(), job.getDescription());
+    }
+
+    /**
+     * Отображение выполняющихся задач.
+     *
+     * @param jobs задачи
+     */
+    public void showJobs(List<Job> jobs) {
+        if (jobs.isEmpty()) {
+            out.println(NO_JOBS);
+            return;
+        }
+
+        StringBuilder lines = new StringBuilder();
+        for (Job job : jobs) {
+            lines.append(String.format(JOB,
+                    job.getId(),
+                    job.getDescription(),
+                    job.isCancelled() ? CANCELLING : RUNNING,
+                    job.getElapsedMillis(),
+                    job.getDirectory(),
+                    job.getProgress() == null
+                            ? ""
+                            : PROGRESS + ProgressFormat.format(job.getProgress())));
+        }
+        out.println(lines);
+    }
+}
@@ -12,14 +12,19 @@ public class MenuView {
     private static final String LIST_ALL = "Отобразить список файлов и директорий. Command: 'ls'";
     private static final String CREATE = "Создать файл или директорию. Commands: 'mkdir dir/'; 'touch file.txt'";
     private static final String DELETE = "Удалить файл или директорию. Commands: 'rmdir dir/'; 'rm file.txt'";
+    private static final String TRANSFER = "Копировать или переместить файл или директорию. Commands: 'cp file.txt dir/'; 'mv dir/ new/'; 'cp \"my file.txt\" dir/'";
+    private static final String FIND = "Найти файлы и директории. Commands: 'find *.txt'; 'find -size +10M -type VIDEO -mtime -7 -limit 20'";
+    private static final String DUPES = "Найти одинаковые файлы. Commands: 'dupes'; 'dupes -min 1M -verify'";
+    private static final String TOP = "Самые большие файлы и директории. Commands: 'top'; 'top 20'";
     private static final String CHANGE = "Переход по директориям. Commands: 'cd \\'; 'cd ..'; 'cd dir/'";
-    private static final String UPDATE = "Обновить список файлов и директорий. Command: 'refresh'";
+    private static final String UPDATE = "Обновить список файлов и директорий. Commands: 'refresh'; полностью 'refresh -f'";
+    private static final String JOBS = "Фоновые задачи. Commands: 'jobs'; отменить 'cancel 1'";
     private static final String EXIT = "Выход. Command: 'exit'";
     private static final String MENU;
 
     static {
-        MENU = format("%s\n%s\n%s\n%s\n%s\n%s\n%n",
-                LIST_ALL, CREATE, DELETE, CHANGE, UPDATE, EXIT);
+        MENU = format("%s\n%s\n%s\n%s\n%s\n%s\n%s\n%s\n%s\n%s\n%s\n%n",
+                LIST_ALL, CREATE, DELETE, TRANSFER, FIND, DUPES, TOP, CHANGE, UPDATE, JOBS, EXIT);
     }
 
     /**
@@ -0,0 +1,54 @@
+package ru.develonica.view;
+
+import ru.develonica.thread.Progress;
+
+import static ru.develonica.view.FileInfoView.DIVIDER;
+import static ru.develonica.view.FileInfoView.UNIT;
+
+/**
+ * Текстовое представление хода долгой операции для вывода задач.
+ */
+final class ProgressFormat {
+
+    // отображение хода операции
+    private static final String PROGRESS = "%d объектов, %s за %.1f с (%d объектов/с, %s/с)";
+    private static final String FAILED = ", ошибок: %d";
+
+    private ProgressFormat() {
+    }
+
+    /**
+     * Ход операции одной строкой.
+     *
+     * @param progress ход операции
+     * @return строка с количеством объектов, байт и скоростью
+     */
+    static String format(Progress progress) {
+        String line = String.format(PROGRESS,
+                progress.getObjects(),
+                formatSize(progress.getBytes()),
+                progress.getElapsedMillis() / 1000.0,
+                progress.getObjectsPerSecond(),
+                formatSize(progress.getBytesPerSecond()));
+
+        return progress.getFailed() == 0
+                ? line
+                : line + String.format(FAILED, progress.getFailed());
+    }
+
+    /**
+     * Размер в подходящем измерении.
+     *
+     * @param size размер в байтах
+     * @return размер с измерением
+     */
+    static String formatSize(long size) {
+        int count = 0;
+        while (size >= DIVIDER && count < UNIT.length - 1) {
+            size /= DIVIDER;
+            count++;
+        }
+
+        return size + " " + UNIT[count];
+    }
+}
@@ -0,0 +1,228 @@
+package ru.develonica.view;
+
+import java.io.PrintStream;
+
+import static java.util.Arrays.copyOf;
+
+/**
+ * Буферизованный вывод строк таблицы. Столбцы выравниваются прямо
+ * в переиспользуемом буфере символов, а в поток буфер передается
+ * большими частями, поэтому на каждую строку таблицы не разбирается
+ * строка формата и не захватывается блокировка потока вывода.
+ * Кодировка остается той же, что у потока вывода.
+ */
+final class TableRenderer {
+
+    /** Размер буфера символов. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /** Максимальная длина числа типа long. */
+    private static final int MAX_LONG_LENGTH = 20;
+
+    /** Поток вывода. */
+    private final PrintStream stream;
+
+    /** Делитель для выбора подходящего измерения размера. */
+    private final int divider;
+
+    /** Список измерений размеров. */
+    private final String[] units;
+
+    /** Буфер символов. */
+    private final char[] buffer;
+
+    /** Буфер для одного значения столбца. */
+    private final char[] scratch;
+
+    /** Количество символов в буфере. */
+    private int position;
+
+    TableRenderer(PrintStream stream, int divider, String[] units) {
+        this.stream = stream;
+        this.divider = divider;
+        this.units = units;
+        this.buffer = new char[BUFFER_SIZE];
+        this.scratch = new char[MAX_LONG_LENGTH + 1 + maxLength(units)];
+    }
+
+    /**
+     * Добавление строки как есть.
+     *
+     * @param line строка
+     * @return этот же объект
+     */
+    TableRenderer append(String line) {
+        int length = line.length();
+        int from = 0;
+        while (from < length) {
+            if (position == buffer.length) {
+                drain();
+            }
+            int count = Math.min(length - from, buffer.length - position);
+            line.getChars(from, from + count, buffer, position);
+            position += count;
+            from += count;
+        }
+
+        return this;
+    }
+
+    /**
+     * Добавление значения, выровненного по левому краю, как <code>%-w.ps</code>.
+     *
+     * @param value     значение
+     * @param width     минимальная ширина столбца
+     * @param precision максимальное количество символов или -1 без ограничения
+     * @return этот же объект
+     */
+    TableRenderer appendLeft(CharSequence value, int width, int precision) {
+        int length = precision < 0
+                ? value.length()
+                : Math.min(value.length(), precision);
+        for (int i = 0; i < length; i++) {
+            put(value.charAt(i));
+        }
+
+        return pad(width - length);
+    }
+
+    /**
+     * Добавление числа, выровненного по левому краю, как <code>%-w.ps</code>.
+     *
+     * @param value     число
+     * @param width     минимальная ширина столбца
+     * @param precision максимальное количество символов или -1 без ограничения
+     * @return этот же объект
+     */
+    TableRenderer appendLeft(long value, int width, int precision) {
+        return appendScratch(writeLong(value, 0), width, precision);
+    }
+
+    /**
+     * Добавление размера в подходящем измерении, выровненного
+     * по левому краю, как <code>%-w.ps</code>.
+     *
+     * @param size      размер в байтах
+     * @param width     минимальная ширина столбца
+     * @param precision максимальное количество символов или -1 без ограничения
+     * @return этот же объект
+     */
+    TableRenderer appendSize(long size, int width, int precision) {
+        int count = 0;
+        while (size >= divider && count < units.length - 1) {
+            size /= divider;
+            count++;
+        }
+
+        int length = writeLong(size, 0);
+        scratch[length++] = ' ';
+        String unit = units[count];
+        unit.getChars(0, unit.length(), scratch, length);
+
+        return appendScratch(length + unit.length(), width, precision);
+    }
+
+    /**
+     * Передача накопленных символов в поток вывода.
+     */
+    void flush() {
+        drain();
+        stream.flush();
+    }
+
+    /**
+     * Добавление значения из буфера одного значения.
+     *
+     * @param length    длина значения
+     * @param width     минимальная ширина столбца
+     * @param precision максимальное количество символов или -1 без ограничения
+     * @return этот же объект
+     */
+    private TableRenderer appendScratch(int length, int width, int precision) {
+        if (precision >= 0 && length > precision) {
+            length = precision;
+        }
+        for (int i = 0; i < length; i++) {
+            put(scratch[i]);
+        }
+
+        return pad(width - length);
+    }
+
+    /**
+     * Запись числа в буфер одного значения.
+     *
+     * @param value число
+     * @param from  позиция начала записи
+     * @return позиция после числа
+     */
+    private int writeLong(long value, int from) {
+        if (value == Long.MIN_VALUE) {
+            String minimum = Long.toString(value);
+            minimum.getChars(0, minimum.length(), scratch, from);
+            return from + minimum.length();
+        }
+
+        int position = from;
+        if (value < 0) {
+            scratch[position++] = '-';
+            value = -value;
+        }
+
+        int start = position;
+        do {
+            scratch[position++] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+
+        // цифры записаны в обратном порядке
+        for (int i = start, j = position - 1; i < j; i++, j--) {
+            char digit = scratch[i];
+            scratch[i] = scratch[j];
+            scratch[j] = digit;
+        }
+
+        return position;
+    }
+
+    /**
+     * Добавление пробелов до нужной ширины столбца.
+     *
+     * @param count количество пробелов
+     * @return этот же объект
+     */
+    private TableRenderer pad(int count) {
+        for (int i = 0; i < count; i++) {
+            put(' ');
+        }
+
+        return this;
+    }
+
+    private void put(char symbol) {
+        if (position == buffer.length) {
+            drain();
+        }
+        buffer[position++] = symbol;
+    }
+
+    /**
+     * Передача накопленных символов в поток вывода без сброса потока.
+     * Полный буфер передается без копирования.
+     */
+    private void drain() {
+        if (position > 0) {
+            stream.print(position == buffer.length ? buffer : copyOf(buffer, position));
+            position = 0;
+        }
+    }
+
+    private static int maxLength(String[] values) {
+        int max = 0;
+        for (String value : values) {
+            max = Math.max(max, value.length());
+        }
+
+        return max;
+    }
+}
@@ -0,0 +1,46 @@
+package ru.develonica.view;
+
+import ru.develonica.model.EntryStore;
+
+import static java.lang.System.out;
+
+/**
+ * Отображение самых больших файлов и директорий
+ * в таблице со списком файлов и директорий.
+ */
+public class TopView {
+
+    // заголовки таблиц
+    private static final String FILES = "Самые большие файлы:";
+    private static final String DIRECTORIES = "Самые большие директории:";
+    private static final String NOT_FOUND = "Файлов не найдено";
+    private static final String INCOMPLETE = "Обход прерван, размеры неполные";
+
+    /** Таблица объектов. */
+    private final FileInfoView fileInfoView = new FileInfoView();
+
+    /**
+     * Отображение самых больших объектов с путями
+     * относительно директории, для которой они найдены.
+     *
+     * @param files       файлы от большего к меньшему
+     * @param directories директории от большей к меньшей
+     * @param completed   обход не был прерван
+     */
+    public void showTop(EntryStore files, EntryStore directories, boolean completed) {
+        if (files.size() == 0) {
+            out.println(NOT_FOUND);
+        } else {
+            out.println(FILES);
+            fileInfoView.displayAllDocuments(files);
+        }
+        if (directories.size() > 0) {
+            out.println(DIRECTORIES);
+            fileInfoView.displayAllDocuments(directories);
+        }
+        if (!completed) {
+            out.println(INCOMPLETE);
+        }
+        out.println();
+    }
+}